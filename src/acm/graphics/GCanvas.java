@@ -20,8 +20,11 @@
 
 package acm.graphics;
 
+import acm.util.ErrorException;
+
 import java.awt.*;
 import java.awt.event.*;
+import java.awt.geom.*;
 import java.util.ArrayList;
 import java.util.Iterator;
 
@@ -45,6 +48,7 @@ public class GCanvas extends Container implements GContainer {
 	public GCanvas() {
 		contents = new ArrayList();
 		enabledList = new ArrayList();
+		batchLock = new Object();
 		setBackground(Color.white);
 		setOpaque(true);
 		setAutoRepaintFlag(true);
@@ -70,6 +74,7 @@ public class GCanvas extends Container implements GContainer {
 			contents.add(gobj);
 			if (gobj.areMouseListenersEnabled()) enabledList.add(gobj);
 		}
+		invalidateCollisions();
 		conditionalRepaint();
 	}
 
@@ -113,6 +118,7 @@ public class GCanvas extends Container implements GContainer {
 			enabledList.remove(gobj);
 			gobj.setParent(null);
 		}
+		invalidateCollisions();
 		conditionalRepaint();
 	}
 
@@ -127,6 +133,7 @@ public class GCanvas extends Container implements GContainer {
 			contents.clear();
 			enabledList.clear();
 		}
+		invalidateCollisions();
 		super.removeAll();
 		repaint();
 	}
@@ -223,7 +230,9 @@ public class GCanvas extends Container implements GContainer {
 /**
  * Returns the topmost graphical object that contains the point
  * (<code>x</code>, <code>y</code>), or <code>null</code> if no such
- * object exists.
+ * object exists.  If that object is a <code>GLayer</code>, the search
+ * continues among the objects in the layer, so that the result is never
+ * the layer itself.
  *
  * @usage GObject gobj = gc.getElementAt(x, y);
  * @param x The x-coordinate of the point being tested
@@ -232,7 +241,13 @@ public class GCanvas extends Container implements GContainer {
  *         if no such object exists
  */
 	public GObject getElementAt(double x, double y) {
-		return getElementAt(contents, x, y);
+		GObject gobj = getElementAt(contents, x, y);
+		while (gobj instanceof GLayer) {
+			GLayer layer = (GLayer) gobj;
+			GPoint pt = layer.getLocalPoint(x, y);
+			gobj = layer.getElementAt(pt.getX(), pt.getY());
+		}
+		return gobj;
 	}
 
 /* Method: getElementAt(pt) */
@@ -249,6 +264,91 @@ public class GCanvas extends Container implements GContainer {
 		return getElementAt(pt.getX(), pt.getY());
 	}
 
+/* Method: getLayer(name) */
+/**
+ * Returns the frontmost <code>GLayer</code> in this canvas with the specified
+ * name, or <code>null</code> if there is no such layer.
+ *
+ * @usage GLayer layer = gc.getLayer(name);
+ * @param name The name of the layer
+ * @return The layer with that name, or <code>null</code> if none exists
+ */
+	public GLayer getLayer(String name) {
+		synchronized (contents) {
+			for (int i = contents.size() - 1; i >= 0; i--) {
+				Object obj = contents.get(i);
+				if (obj instanceof GLayer && name.equals(((GLayer) obj).getName())) {
+					return (GLayer) obj;
+				}
+			}
+		}
+		return null;
+	}
+
+/* Method: getCollisions(gobj) */
+/**
+ * Returns a list of the graphical objects in this canvas that collide
+ * with <code>gobj</code>, ordered from back to front.  Two objects collide if
+ * their shapes overlap and their collision categories and masks, as set by
+ * <a href="GObject.html#setCollisionCategory(int)"><code>setCollisionCategory</code></a>
+ * and <a href="GObject.html#setCollisionMask(int)"><code>setCollisionMask</code></a>,
+ * allow them to interact.  The bounds of <code>gobj</code> are interpreted in
+ * the coordinate system of this canvas, and <code>gobj</code> itself is never
+ * part of the result.  The candidates are found using a grid over the bounding
+ * boxes that is rebuilt only after something in the canvas changes, so that
+ * testing every moving object once per frame is much faster than calling
+ * <code>getElementAt</code> at several points.
+ *
+ * @usage ArrayList list = gc.getCollisions(gobj);
+ * @param gobj The graphical object being tested
+ * @return An <code>ArrayList</code> of the objects that collide with <code>gobj</code>
+ */
+	public ArrayList getCollisions(GObject gobj) {
+		synchronized (contents) {
+			return getCollisionDetector().getCollisions(gobj);
+		}
+	}
+
+/* Method: getCollisionPairs() */
+/**
+ * Returns a list of every pair of colliding objects in this canvas.  Each
+ * element of the list is a two-element <code>GObject</code> array in which the
+ * first object is behind the second, and each pair appears exactly once.
+ *
+ * @usage ArrayList pairs = gc.getCollisionPairs();
+ * @return An <code>ArrayList</code> of <code>GObject[]</code> pairs
+ */
+	public ArrayList getCollisionPairs() {
+		synchronized (contents) {
+			return getCollisionDetector().getCollisionPairs();
+		}
+	}
+
+/* Method: setCollisionCellSize(size) */
+/**
+ * Sets the size of the grid cells used to find collision candidates.  The
+ * best value is usually close to the size of a typical moving object.  If
+ * the size is zero, which is the default, the cell size is computed from the
+ * average size of the objects in this canvas.
+ *
+ * @usage gc.setCollisionCellSize(size);
+ * @param size The width and height of a grid cell, or 0 to choose automatically
+ */
+	public void setCollisionCellSize(double size) {
+		getCollisionDetector().setCellSize(size);
+	}
+
+/* Method: getCollisionCellSize() */
+/**
+ * Returns the grid cell size set by <code>setCollisionCellSize</code>.
+ *
+ * @usage double size = gc.getCollisionCellSize();
+ * @return The grid cell size, or 0 if it is chosen automatically
+ */
+	public double getCollisionCellSize() {
+		return getCollisionDetector().getCellSize();
+	}
+
 /* Method: iterator() */
 /**
  * Returns an <code>Iterator</code> that cycles through the elements within
@@ -363,8 +463,13 @@ public class GCanvas extends Container implements GContainer {
 	public void paint(Graphics g) {
 		Graphics g0 = g;
 		if (isOpaque()) {
-			if (offscreenImage == null) initOffscreenImage();
-			if (offscreenImage != null) g = offscreenImage.getGraphics();
+			boolean newImage = (offscreenImage == null);
+			if (newImage) initOffscreenImage();
+			if (offscreenImage != null) {
+				g = offscreenImage.getGraphics();
+				Rectangle clip = g0.getClipBounds();
+				if (clip != null && !newImage) g.setClip(clip);
+			}
 			Dimension size = getSize();
 			g.setColor(getBackground());
 			g.fillRect(0, 0, size.width, size.height);
@@ -372,6 +477,7 @@ public class GCanvas extends Container implements GContainer {
 		}
         
 		Graphics2D g2 = (Graphics2D) g;
+		deviceTransform = g2.getTransform();
         g2.setRenderingHint(
             RenderingHints.KEY_ANTIALIASING,
             RenderingHints.VALUE_ANTIALIAS_ON);
@@ -381,13 +487,29 @@ public class GCanvas extends Container implements GContainer {
         
 		synchronized (contents) {
 			int nElements = contents.size();
-			for (int i = 0; i < nElements; i++) {
-				((GObject) contents.get(i)).paintObject(g);
+			if (viewTransform == null) {
+				for (int i = 0; i < nElements; i++) {
+					((GObject) contents.get(i)).paintObject(g);
+				}
+			} else {
+				AffineTransform oldTransform = g2.getTransform();
+				Rectangle clip = g2.getClipBounds();
+				if (clip == null) clip = new Rectangle(0, 0, getWidth(), getHeight());
+				Rectangle2D visible = toWorldRect(clip);
+				g2.transform(viewTransform);
+				for (int i = 0; i < nElements; i++) {
+					GObject gobj = (GObject) contents.get(i);
+					if (!intersects(gobj.getPaintBounds(), visible)) continue;
+					gobj.paintObject(g);
+				}
+				g2.setTransform(oldTransform);
 			}
 		}
 		if (isOpaque() && offscreenImage != null) {
 			g0.drawImage(offscreenImage, 0, 0, this);
 		}
+		GRepaintScheduler scheduler = repaintScheduler;
+		if (scheduler != null) scheduler.framePainted();
 		super.paint(g0);
 	}
 
@@ -465,6 +587,345 @@ public class GCanvas extends Container implements GContainer {
 		return nativeArcFlag;
 	}
 
+/* Method: setFrameRate(fps) */
+/**
+ * Limits the rate at which the canvas repaints itself to <code>fps</code>
+ * frames per second.  All the changes to graphical objects that occur within
+ * one frame interval are then drawn by a single repaint.  Setting the frame
+ * rate to 0, which is the default, removes the limit, so that each change
+ * requests a repaint immediately.
+ *
+ * @usage gc.setFrameRate(fps);
+ * @param fps The maximum number of frames per second, or 0 for no limit
+ */
+	public void setFrameRate(double fps) {
+		if (fps < 0) throw new ErrorException("setFrameRate: Frame rate must not be negative");
+		synchronized (contents) {
+			if (fps == 0) {
+				if (repaintScheduler != null) repaintScheduler.dispose();
+				repaintScheduler = null;
+			} else if (repaintScheduler == null) {
+				repaintScheduler = new GRepaintScheduler(this, fps);
+			} else {
+				repaintScheduler.setFrameRate(fps);
+			}
+		}
+	}
+
+/* Method: getFrameRate() */
+/**
+ * Returns the frame rate set by <a href="#setFrameRate(double)"><code>setFrameRate</code></a>,
+ * or 0 if the repaint rate is not limited.
+ *
+ * @usage double fps = gc.getFrameRate();
+ * @return The maximum number of frames per second, or 0 for no limit
+ */
+	public double getFrameRate() {
+		GRepaintScheduler scheduler = repaintScheduler;
+		return (scheduler == null) ? 0 : scheduler.getFrameRate();
+	}
+
+/* Method: setExternalFrameClock(flag) */
+/**
+ * Sets whether the frames of a rate-limited canvas are issued by an external
+ * loop instead of by a timer.  If <code>flag</code> is <code>true</code>,
+ * changes accumulate until the loop calls
+ * <a href="#flushFrame()"><code>flushFrame</code></a>, which allows the
+ * frames to line up with the steps of a fixed-timestep game loop.  This
+ * setting has no effect unless a frame rate has been set.
+ *
+ * @usage gc.setExternalFrameClock(flag);
+ * @param flag <code>true</code> to issue frames only from <code>flushFrame</code>
+ */
+	public void setExternalFrameClock(boolean flag) {
+		GRepaintScheduler scheduler = repaintScheduler;
+		if (scheduler != null) scheduler.setExternalClock(flag);
+	}
+
+/* Method: flushFrame() */
+/**
+ * Paints the changes accumulated since the last frame and waits until the
+ * painting is done, so that each call presents exactly one frame.  If
+ * there is no frame rate limit, this method does nothing.
+ *
+ * @usage gc.flushFrame();
+ */
+	public void flushFrame() {
+		GRepaintScheduler scheduler = repaintScheduler;
+		if (scheduler != null) scheduler.flushFrame();
+	}
+
+/* Method: getFrameCount() */
+/**
+ * Returns the number of scheduled frames that the canvas has painted since
+ * the frame rate was set or the statistics were last reset.
+ *
+ * @usage long n = gc.getFrameCount();
+ * @return The number of frames painted
+ */
+	public long getFrameCount() {
+		GRepaintScheduler scheduler = repaintScheduler;
+		return (scheduler == null) ? 0 : scheduler.getFrameCount();
+	}
+
+/* Method: getLateFrameCount() */
+/**
+ * Returns the number of frames that were painted more than half a frame
+ * interval after they were due.
+ *
+ * @usage long n = gc.getLateFrameCount();
+ * @return The number of late frames
+ */
+	public long getLateFrameCount() {
+		GRepaintScheduler scheduler = repaintScheduler;
+		return (scheduler == null) ? 0 : scheduler.getLateFrameCount();
+	}
+
+/* Method: getDroppedFrameCount() */
+/**
+ * Returns the number of whole frame intervals that passed without a frame
+ * being painted while a repaint was overdue.
+ *
+ * @usage long n = gc.getDroppedFrameCount();
+ * @return The number of dropped frames
+ */
+	public long getDroppedFrameCount() {
+		GRepaintScheduler scheduler = repaintScheduler;
+		return (scheduler == null) ? 0 : scheduler.getDroppedFrameCount();
+	}
+
+/* Method: resetFrameStatistics() */
+/**
+ * Resets the frame, late-frame, and dropped-frame counts to zero.
+ *
+ * @usage gc.resetFrameStatistics();
+ */
+	public void resetFrameStatistics() {
+		GRepaintScheduler scheduler = repaintScheduler;
+		if (scheduler != null) scheduler.resetStatistics();
+	}
+
+/* Method: setViewTransform(tx) */
+/**
+ * Sets the viewing transform, which maps the coordinates in which graphical
+ * objects are placed (world coordinates) to pixels on the canvas.  The
+ * transform is applied once when the canvas is painted, so panning, zooming,
+ * or rotating the view does not change any of the objects.  While a viewing
+ * transform is in effect, the coordinates of mouse events delivered by the
+ * canvas are converted to world coordinates, so that they can be passed
+ * directly to methods like <a href="#getElementAt(double, double)"><code>getElementAt</code></a>.
+ * Passing <code>null</code> restores the identity transform.
+ *
+ * @usage gc.setViewTransform(tx);
+ * @param tx The new viewing transform, or <code>null</code> for none
+ */
+	public void setViewTransform(AffineTransform tx) {
+		AffineTransform inverse = null;
+		if (tx != null && tx.isIdentity()) tx = null;
+		if (tx != null) {
+			tx = new AffineTransform(tx);
+			try {
+				inverse = tx.createInverse();
+			} catch (NoninvertibleTransformException ex) {
+				throw new ErrorException("setViewTransform: Transform is not invertible");
+			}
+		}
+		synchronized (contents) {
+			viewTransform = tx;
+			inverseViewTransform = inverse;
+		}
+		repaint();
+	}
+
+/* Method: getViewTransform() */
+/**
+ * Returns a copy of the current viewing transform.
+ *
+ * @usage AffineTransform tx = gc.getViewTransform();
+ * @return A copy of the transform from world coordinates to canvas pixels
+ */
+	public AffineTransform getViewTransform() {
+		AffineTransform tx = viewTransform;
+		return (tx == null) ? new AffineTransform() : new AffineTransform(tx);
+	}
+
+/* Method: resetView() */
+/**
+ * Restores the default view, in which world coordinates are canvas pixels.
+ *
+ * @usage gc.resetView();
+ */
+	public void resetView() {
+		setViewTransform(null);
+	}
+
+/* Method: panView(dx, dy) */
+/**
+ * Shifts the view so that everything on the canvas moves by the specified
+ * number of pixels.
+ *
+ * @usage gc.panView(dx, dy);
+ * @param dx The distance to move in the x direction, in pixels
+ * @param dy The distance to move in the y direction, in pixels
+ */
+	public void panView(double dx, double dy) {
+		AffineTransform tx = AffineTransform.getTranslateInstance(dx, dy);
+		tx.concatenate(getViewTransform());
+		setViewTransform(tx);
+	}
+
+/* Method: zoomView(factor) */
+/**
+ * Magnifies the view by the specified factor, keeping the point at the
+ * center of the canvas fixed.
+ *
+ * @usage gc.zoomView(factor);
+ * @param factor The magnification factor
+ */
+	public void zoomView(double factor) {
+		zoomView(factor, getWidth() / 2.0, getHeight() / 2.0);
+	}
+
+/* Method: zoomView(factor, x, y) */
+/**
+ * Magnifies the view by the specified factor, keeping the canvas pixel at
+ * (<code>x</code>, <code>y</code>) fixed.
+ *
+ * @usage gc.zoomView(factor, x, y);
+ * @param factor The magnification factor
+ * @param x The x-coordinate of the fixed point, in pixels
+ * @param y The y-coordinate of the fixed point, in pixels
+ */
+	public void zoomView(double factor, double x, double y) {
+		if (factor <= 0) throw new ErrorException("zoomView: Factor must be positive");
+		AffineTransform tx = AffineTransform.getTranslateInstance(x, y);
+		tx.scale(factor, factor);
+		tx.translate(-x, -y);
+		tx.concatenate(getViewTransform());
+		setViewTransform(tx);
+	}
+
+/* Method: rotateView(theta) */
+/**
+ * Rotates the view by <code>theta</code> degrees around the center of the
+ * canvas.  As with other angles in this package, positive values rotate
+ * counterclockwise on the screen.
+ *
+ * @usage gc.rotateView(theta);
+ * @param theta The angle of rotation in degrees
+ */
+	public void rotateView(double theta) {
+		rotateView(theta, getWidth() / 2.0, getHeight() / 2.0);
+	}
+
+/* Method: rotateView(theta, x, y) */
+/**
+ * Rotates the view by <code>theta</code> degrees around the canvas pixel at
+ * (<code>x</code>, <code>y</code>).
+ *
+ * @usage gc.rotateView(theta, x, y);
+ * @param theta The angle of rotation in degrees
+ * @param x The x-coordinate of the center of rotation, in pixels
+ * @param y The y-coordinate of the center of rotation, in pixels
+ */
+	public void rotateView(double theta, double x, double y) {
+		AffineTransform tx = AffineTransform.getRotateInstance(-GMath.toRadians(theta), x, y);
+		tx.concatenate(getViewTransform());
+		setViewTransform(tx);
+	}
+
+/* Method: setViewCenter(x, y) */
+/**
+ * Pans the view so that the world point (<code>x</code>, <code>y</code>)
+ * appears at the center of the canvas, leaving the zoom and rotation
+ * unchanged.
+ *
+ * @usage gc.setViewCenter(x, y);
+ * @param x The x-coordinate of the point in world coordinates
+ * @param y The y-coordinate of the point in world coordinates
+ */
+	public void setViewCenter(double x, double y) {
+		GPoint pt = getScreenPoint(x, y);
+		panView(getWidth() / 2.0 - pt.getX(), getHeight() / 2.0 - pt.getY());
+	}
+
+/* Method: getViewScale() */
+/**
+ * Returns the magnification of the current view, which is the number of
+ * pixels occupied by one unit of world coordinates.
+ *
+ * @usage double scale = gc.getViewScale();
+ * @return The magnification of the view
+ */
+	public double getViewScale() {
+		AffineTransform tx = viewTransform;
+		return (tx == null) ? 1 : Math.sqrt(Math.abs(tx.getDeterminant()));
+	}
+
+/* Method: getWorldPoint(x, y) */
+/**
+ * Converts the canvas pixel (<code>x</code>, <code>y</code>) into world
+ * coordinates.
+ *
+ * @usage GPoint pt = gc.getWorldPoint(x, y);
+ * @param x The x-coordinate in pixels
+ * @param y The y-coordinate in pixels
+ * @return The corresponding point in world coordinates
+ */
+	public GPoint getWorldPoint(double x, double y) {
+		AffineTransform inverse = inverseViewTransform;
+		if (inverse == null) return new GPoint(x, y);
+		Point2D pt = inverse.transform(new Point2D.Double(x, y), null);
+		return new GPoint(pt.getX(), pt.getY());
+	}
+
+/* Method: getWorldPoint(e) */
+/**
+ * Returns the location of a mouse event delivered by this canvas in world
+ * coordinates.  The coordinates returned by the <code>getX</code> and
+ * <code>getY</code> methods of the event are rounded to integers, which
+ * loses precision when the view is zoomed in; this method returns the
+ * exact point.
+ *
+ * @usage GPoint pt = gc.getWorldPoint(e);
+ * @param e A mouse event delivered by this canvas
+ * @return The location of the event in world coordinates
+ */
+	public GPoint getWorldPoint(MouseEvent e) {
+		if (e instanceof GMouseEvent) return ((GMouseEvent) e).getWorldPoint();
+		return new GPoint(e.getX(), e.getY());
+	}
+
+/* Method: getScreenPoint(x, y) */
+/**
+ * Converts the world point (<code>x</code>, <code>y</code>) into canvas
+ * pixel coordinates.
+ *
+ * @usage GPoint pt = gc.getScreenPoint(x, y);
+ * @param x The x-coordinate in world coordinates
+ * @param y The y-coordinate in world coordinates
+ * @return The corresponding canvas pixel
+ */
+	public GPoint getScreenPoint(double x, double y) {
+		AffineTransform tx = viewTransform;
+		if (tx == null) return new GPoint(x, y);
+		Point2D pt = tx.transform(new Point2D.Double(x, y), null);
+		return new GPoint(pt.getX(), pt.getY());
+	}
+
+/* Method: getVisibleBounds() */
+/**
+ * Returns the smallest rectangle in world coordinates that contains
+ * everything visible on the canvas.
+ *
+ * @usage GRectangle r = gc.getVisibleBounds();
+ * @return The visible region in world coordinates
+ */
+	public GRectangle getVisibleBounds() {
+		Rectangle2D r = toWorldRect(new Rectangle(0, 0, getWidth(), getHeight()));
+		return new GRectangle(r.getX(), r.getY(), r.getWidth(), r.getHeight());
+	}
+
 /* Protected method: sendToFront(gobj) */
 /**
  * Implements the <code>sendToFront</code> function from the <code>GContainer</code>
@@ -547,7 +1008,8 @@ public class GCanvas extends Container implements GContainer {
  * @noshow
  */
 	protected void dispatchMouseEvent(MouseEvent e) {
-		GObject gobj = getElementAt(enabledList, e.getX(), e.getY());
+		GPoint pt = getWorldPoint(e);
+		GObject gobj = getElementAt(enabledList, pt.getX(), pt.getY());
 		MouseEvent newEvent = null;
 		if (gobj != lastObject) {
 			if (lastObject != null) {
@@ -578,6 +1040,30 @@ public class GCanvas extends Container implements GContainer {
 		if (newEvent != null && newEvent.isConsumed()) e.consume();
 	}
 
+/* Protected method: processMouseEvent(e) */
+/**
+ * Converts the coordinates of the mouse event to world coordinates before
+ * passing it to the listeners.
+ *
+ * @usage gc.processMouseEvent(e);
+ * @noshow
+ */
+	protected void processMouseEvent(MouseEvent e) {
+		super.processMouseEvent(toWorldEvent(e));
+	}
+
+/* Protected method: processMouseMotionEvent(e) */
+/**
+ * Converts the coordinates of the mouse motion event to world coordinates
+ * before passing it to the listeners.
+ *
+ * @usage gc.processMouseMotionEvent(e);
+ * @noshow
+ */
+	protected void processMouseMotionEvent(MouseEvent e) {
+		super.processMouseMotionEvent(toWorldEvent(e));
+	}
+
 /* Protected method: initOffscreenImage() */
 /**
  * Initializes the offscreen memory image used for double buffering.
@@ -593,6 +1079,68 @@ public class GCanvas extends Container implements GContainer {
 		}
 	}
 
+/* Protected method: invalidateCollisions() */
+/**
+ * Signals that the collision grid must be rebuilt before the next query.
+ * This method is called whenever a contained object changes.
+ *
+ * @usage gc.invalidateCollisions();
+ * @noshow
+ */
+	protected void invalidateCollisions() {
+		if (collisionDetector != null) collisionDetector.invalidate();
+	}
+
+/* Package method: getDeviceTransform() */
+/**
+ * Returns the transform from canvas pixels to device pixels that was in
+ * effect when the canvas was last painted, or <code>null</code> if the
+ * canvas has not been painted.
+ */
+	AffineTransform getDeviceTransform() {
+		return deviceTransform;
+	}
+
+/* Package method: beginBatch() */
+/**
+ * Starts a batch of changes during which automatic repaints are deferred.
+ * Batches may be nested, and the setting of the auto-repaint flag is not
+ * changed.
+ */
+	void beginBatch() {
+		synchronized (batchLock) {
+			batchDepth++;
+		}
+	}
+
+/* Package method: endBatch() */
+/**
+ * Ends a batch of changes.  When the outermost batch ends, the canvas is
+ * repainted once if any change in the batch requested a repaint.
+ */
+	void endBatch() {
+		boolean repaint;
+		synchronized (batchLock) {
+			batchDepth--;
+			repaint = (batchDepth == 0 && batchRepaint);
+			if (batchDepth == 0) batchRepaint = false;
+		}
+		if (repaint) conditionalRepaint();
+	}
+
+/* Private method: deferRepaint() */
+/**
+ * Returns <code>true</code> if a batch is in progress, after recording that
+ * the canvas must be repainted when the batch ends.
+ */
+	private boolean deferRepaint() {
+		synchronized (batchLock) {
+			if (batchDepth == 0) return false;
+			batchRepaint = true;
+			return true;
+		}
+	}
+
 /* Protected method: conditionalRepaint() */
 /**
  * Repaints the canvas if auto-repaint is in effect.  This method is called only
@@ -603,7 +1151,47 @@ public class GCanvas extends Container implements GContainer {
  * @noshow
  */
 	protected void conditionalRepaint() {
-		if (autoRepaint) repaint();
+		if (!autoRepaint || deferRepaint()) return;
+		GRepaintScheduler scheduler = repaintScheduler;
+		if (scheduler == null) {
+			repaint();
+		} else {
+			scheduler.requestRepaint();
+		}
+	}
+
+/* Protected method: conditionalRepaint(x, y, width, height) */
+/**
+ * Repaints the specified rectangle of the canvas if auto-repaint is in effect.
+ * Because the offscreen image keeps its contents between calls to
+ * <code>paint</code>, only the pixels inside the damaged rectangle are
+ * redrawn.  The rectangle is expanded by a pixel on each side to allow
+ * for rounding.
+ *
+ * @usage gc.conditionalRepaint(x, y, width, height);
+ * @noshow
+ */
+	protected void conditionalRepaint(double x, double y, double width, double height) {
+		if (!autoRepaint || deferRepaint()) return;
+		AffineTransform tx = viewTransform;
+		if (tx != null) {
+			Rectangle2D r = tx.createTransformedShape(new Rectangle2D.Double(x, y, width, height))
+			                  .getBounds2D();
+			x = r.getX();
+			y = r.getY();
+			width = r.getWidth();
+			height = r.getHeight();
+		}
+		int x0 = (int) Math.floor(x) - 1;
+		int y0 = (int) Math.floor(y) - 1;
+		int x1 = (int) Math.ceil(x + width) + 1;
+		int y1 = (int) Math.ceil(y + height) + 1;
+		GRepaintScheduler scheduler = repaintScheduler;
+		if (scheduler == null) {
+			repaint(x0, y0, x1 - x0, y1 - y0);
+		} else {
+			scheduler.requestRepaint(x0, y0, x1 - x0, y1 - y0);
+		}
 	}
 
 /* Protected method: updateEnabledList() */
@@ -644,6 +1232,47 @@ public class GCanvas extends Container implements GContainer {
 		return null;
 	}
 
+/* Private method: toWorldEvent(e) */
+/**
+ * Returns a copy of the mouse event whose coordinates have been converted to
+ * world coordinates, or the event itself if there is no viewing transform.
+ */
+	private MouseEvent toWorldEvent(MouseEvent e) {
+		if (inverseViewTransform == null) return e;
+		return new GMouseEvent(e, getWorldPoint(e.getX(), e.getY()));
+	}
+
+/* Private method: toWorldRect(r) */
+/**
+ * Returns the bounding box in world coordinates of a rectangle of pixels.
+ */
+	private Rectangle2D toWorldRect(Rectangle r) {
+		AffineTransform inverse = inverseViewTransform;
+		if (inverse == null) return r;
+		return inverse.createTransformedShape(r).getBounds2D();
+	}
+
+/* Private static method: intersects(bounds, r) */
+/**
+ * Checks whether the object bounds overlap the rectangle, allowing a pixel
+ * of slack for lines that lie on the edge of the bounds.
+ */
+	private static boolean intersects(GRectangle bounds, Rectangle2D r) {
+		return bounds.getX() - 1 <= r.getMaxX() && bounds.getX() + bounds.getWidth() + 1 >= r.getX()
+		    && bounds.getY() - 1 <= r.getMaxY() && bounds.getY() + bounds.getHeight() + 1 >= r.getY();
+	}
+
+/* Private method: getCollisionDetector() */
+/**
+ * Returns the collision detector for this canvas, creating it if necessary.
+ */
+	private GCollisionDetector getCollisionDetector() {
+		synchronized (contents) {
+			if (collisionDetector == null) collisionDetector = new GCollisionDetector(this);
+			return collisionDetector;
+		}
+	}
+
 /* Private state */
 
 	private GCanvasListener gCanvasListener;
@@ -651,8 +1280,16 @@ public class GCanvas extends Container implements GContainer {
 	private GObject dragObject;
 	private ArrayList contents;
 	private ArrayList enabledList;
+	private GCollisionDetector collisionDetector;
 	private Image offscreenImage;
+	private GRepaintScheduler repaintScheduler;
+	private AffineTransform viewTransform;
+	private AffineTransform inverseViewTransform;
+	private AffineTransform deviceTransform;
 	private boolean autoRepaint;
+	private Object batchLock;
+	private int batchDepth;
+	private boolean batchRepaint;
 	private boolean nativeArcFlag;
 	private boolean opaque;
 }
@@ -728,6 +1365,29 @@ class GMouseEvent extends MouseEvent {
 		super(e.getComponent(), eventID, e.getWhen(), e.getModifiers(),
 			  e.getX(), e.getY(), e.getClickCount(), e.isPopupTrigger());
 		effectiveSource = gobj;
+		if (e instanceof GMouseEvent) worldPoint = ((GMouseEvent) e).worldPoint;
+	}
+
+/* Constructor: GMouseEvent(e, pt) */
+/**
+ * Creates a copy of the mouse event <code>e</code> located at the world
+ * point <code>pt</code>.  The integer coordinates of the new event are
+ * those of <code>pt</code> rounded to the nearest pixel.
+ */
+	public GMouseEvent(MouseEvent e, GPoint pt) {
+		super(e.getComponent(), e.getID(), e.getWhen(), e.getModifiers(),
+		      GMath.round(pt.getX()), GMath.round(pt.getY()), e.getXOnScreen(),
+		      e.getYOnScreen(), e.getClickCount(), e.isPopupTrigger(), e.getButton());
+		effectiveSource = e.getComponent();
+		worldPoint = pt;
+	}
+
+/* Method: getWorldPoint() */
+/**
+ * Returns the exact location of this event in world coordinates.
+ */
+	public GPoint getWorldPoint() {
+		return (worldPoint == null) ? new GPoint(getX(), getY()) : worldPoint;
 	}
 
 /* Method: getSource() */
@@ -760,5 +1420,6 @@ class GMouseEvent extends MouseEvent {
 /* Private state */
 
 	private Object effectiveSource;
+	private GPoint worldPoint;
 
 }
@@ -0,0 +1,449 @@
+/*
+ * @(#)GCollisionDetector.java   1.0 06/08/25
+ */
+
+// ************************************************************************
+// * Copyright (c) 2006 by the Association for Computing Machinery        *
+// *                                                                      *
+// * The Java Task Force seeks to impose few restrictions on the use of   *
+// * these packages so that users have as much freedom as possible to     *
+// * use this software in constructive ways and can make the benefits of  *
+// * that work available to others.  In view of the legal complexities    *
+// * of software development, however, it is essential for the ACM to     *
+// * maintain its copyright to guard against attempts by others to        *
+// * claim ownership rights.  The full text of the JTF Software License   *
+// * is available at the following URL:                                   *
+// *                                                                      *
+// *          http://www.acm.org/jtf/jtf-software-license.pdf             *
+// *                                                                      *
+// ************************************************************************
+
+package acm.graphics;
+
+import java.awt.*;
+import java.awt.geom.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/* Package class: GCollisionDetector */
+
+/**
+ * This class implements the collision service shared by <code>GCanvas</code>
+ * and <code>GCompound</code>.  The broad phase hashes the bounding box of
+ * each element into a uniform grid of cells, so that a query only looks at
+ * the elements that share a cell with it.  The grid is rebuilt lazily, and
+ * only after the container reports that one of its elements has changed.
+ * Candidate pairs that survive the bounding-box and category tests are then
+ * checked against the actual shapes of the two objects.
+ */
+class GCollisionDetector {
+
+/* Constructor: GCollisionDetector(container) */
+/**
+ * Creates a new collision detector for the elements of the specified container.
+ *
+ * @usage GCollisionDetector detector = new GCollisionDetector(container);
+ * @param container The container whose elements are tested for collisions
+ */
+	public GCollisionDetector(GContainer container) {
+		cont = container;
+		cellSize = 0;
+		valid = false;
+		nObjects = 0;
+		objects = new GObject[0];
+		bounds = new double[0];
+		stamps = new int[0];
+		oversize = new int[0];
+	}
+
+/* Method: invalidate() */
+/**
+ * Signals that the grid no longer matches the elements of the container.
+ * This method is called on every change and therefore does nothing more
+ * than clear a flag.
+ *
+ * @usage detector.invalidate();
+ */
+	public void invalidate() {
+		valid = false;
+	}
+
+/* Method: setCellSize(size) */
+/**
+ * Sets the size of the grid cells.  If <code>size</code> is zero or negative,
+ * the detector chooses the cell size automatically from the average size of
+ * the elements each time the grid is rebuilt.
+ *
+ * @usage detector.setCellSize(size);
+ * @param size The width and height of each grid cell
+ */
+	public synchronized void setCellSize(double size) {
+		cellSize = size;
+		valid = false;
+	}
+
+/* Method: getCellSize() */
+/**
+ * Returns the cell size set by <code>setCellSize</code>, which is zero if
+ * the detector chooses its cell size automatically.
+ *
+ * @usage double size = detector.getCellSize();
+ * @return The cell size for the grid
+ */
+	public synchronized double getCellSize() {
+		return cellSize;
+	}
+
+/* Method: getCollisions(gobj) */
+/**
+ * Returns a list of the elements that collide with <code>gobj</code>, ordered
+ * from back to front.  The bounds of <code>gobj</code> are interpreted in the
+ * coordinate system of the container, and <code>gobj</code> itself is never
+ * included in the result.
+ *
+ * @usage ArrayList list = detector.getCollisions(gobj);
+ * @param gobj The object being tested
+ * @return An <code>ArrayList</code> of the colliding <code>GObject</code>s
+ */
+	public synchronized ArrayList getCollisions(GObject gobj) {
+		update();
+		ArrayList result = new ArrayList();
+		if (gobj.getCollisionCategory() == 0) return result;
+		GRectangle r = gobj.getBounds();
+		double qx0 = r.getX();
+		double qy0 = r.getY();
+		double qx1 = qx0 + r.getWidth();
+		double qy1 = qy0 + r.getHeight();
+		int nCandidates = collectCandidates(qx0, qy0, qx1, qy1);
+		int[] found = new int[nCandidates];
+		int nFound = 0;
+		for (int k = 0; k < nCandidates; k++) {
+			int j = candidates[k];
+			GObject other = objects[j];
+			if (other == gobj) continue;
+			if (!overlaps(j, qx0, qy0, qx1, qy1)) continue;
+			if (!canCollide(gobj, other)) continue;
+			if (!intersects(gobj, other)) continue;
+			found[nFound++] = j;
+		}
+		Arrays.sort(found, 0, nFound);
+		for (int k = 0; k < nFound; k++) {
+			result.add(objects[found[k]]);
+		}
+		return result;
+	}
+
+/* Method: getCollisionPairs() */
+/**
+ * Returns a list of every pair of colliding elements in the container.  Each
+ * entry in the list is a two-element <code>GObject</code> array in which the
+ * first object is behind the second.  Each pair appears exactly once.
+ *
+ * @usage ArrayList pairs = detector.getCollisionPairs();
+ * @return An <code>ArrayList</code> of <code>GObject[]</code> pairs
+ */
+	public synchronized ArrayList getCollisionPairs() {
+		update();
+		ArrayList result = new ArrayList();
+		for (int i = 0; i < nObjects; i++) {
+			GObject gobj = objects[i];
+			if (gobj.getCollisionCategory() == 0) continue;
+			int b = 4 * i;
+			double qx0 = bounds[b];
+			double qy0 = bounds[b + 1];
+			double qx1 = bounds[b + 2];
+			double qy1 = bounds[b + 3];
+			int nCandidates = collectCandidates(qx0, qy0, qx1, qy1);
+			Arrays.sort(candidates, 0, nCandidates);
+			for (int k = 0; k < nCandidates; k++) {
+				int j = candidates[k];
+				if (j <= i) continue;
+				GObject other = objects[j];
+				if (!overlaps(j, qx0, qy0, qx1, qy1)) continue;
+				if (!canCollide(gobj, other)) continue;
+				if (!intersects(gobj, other)) continue;
+				GObject[] pair = { gobj, other };
+				result.add(pair);
+			}
+		}
+		return result;
+	}
+
+/* Static method: intersects(g1, g2) */
+/**
+ * Implements the narrow phase by checking whether the shapes of the two
+ * objects overlap.  Objects whose shape is unknown are treated as filling
+ * their bounding box.
+ *
+ * @usage if (GCollisionDetector.intersects(g1, g2)) . . .
+ * @param g1 The first object
+ * @param g2 The second object
+ * @return <code>true</code> if the shapes of the two objects overlap
+ */
+	public static boolean intersects(GObject g1, GObject g2) {
+		Shape s1 = getShape(g1);
+		Shape s2 = getShape(g2);
+		if (s1 instanceof Rectangle2D) {
+			return (s2 instanceof Rectangle2D) ? s1.intersects((Rectangle2D) s2)
+			                                   : s2.intersects((Rectangle2D) s1);
+		} else if (s2 instanceof Rectangle2D) {
+			return s1.intersects((Rectangle2D) s2);
+		}
+		Area area = new Area(s1);
+		area.intersect(new Area(s2));
+		return !area.isEmpty();
+	}
+
+/* Static method: getShape(gobj) */
+/**
+ * Returns a Java2D shape that covers the same points as the <code>contains</code>
+ * method of the object.
+ */
+	static Shape getShape(GObject gobj) {
+		if (gobj instanceof GCompound) {
+			GCompound gc = (GCompound) gobj;
+			Area area = new Area();
+			int nElements = gc.getElementCount();
+			for (int i = 0; i < nElements; i++) {
+				area.add(new Area(getShape(gc.getElement(i))));
+			}
+			area.transform(gc.getLocalTransform());
+			return area;
+		} else if (gobj instanceof GRoundRect) {
+			GRoundRect rr = (GRoundRect) gobj;
+			return new RoundRectangle2D.Double(rr.getX(), rr.getY(), rr.getWidth(), rr.getHeight(),
+			                                   rr.getArcWidth(), rr.getArcHeight());
+		} else if (gobj instanceof GOval) {
+			return new Ellipse2D.Double(gobj.getX(), gobj.getY(), gobj.getWidth(), gobj.getHeight());
+		} else if (gobj instanceof GArc) {
+			GArc arc = (GArc) gobj;
+			GRectangle r = arc.getFrameRectangle();
+			int type = (arc.isFilled()) ? Arc2D.PIE : Arc2D.OPEN;
+			Arc2D shape = new Arc2D.Double(r.getX(), r.getY(), r.getWidth(), r.getHeight(),
+			                               arc.getStartAngle(), arc.getSweepAngle(), type);
+			if (arc.isFilled()) return shape;
+			return new BasicStroke((float) (2 * GArc.ARC_TOLERANCE)).createStrokedShape(shape);
+		} else if (gobj instanceof GLine) {
+			GLine line = (GLine) gobj;
+			GPoint p0 = line.getStartPoint();
+			GPoint p1 = line.getEndPoint();
+			Line2D shape = new Line2D.Double(p0.getX(), p0.getY(), p1.getX(), p1.getY());
+			return new BasicStroke((float) (2 * GLine.LINE_TOLERANCE)).createStrokedShape(shape);
+		} else if (gobj instanceof GPolygon) {
+			return ((GPolygon) gobj).getPolygon();
+		}
+		GRectangle r = gobj.getBounds();
+		return new Rectangle2D.Double(r.getX(), r.getY(), r.getWidth(), r.getHeight());
+	}
+
+/* Private method: canCollide(g1, g2) */
+/**
+ * Applies the category and mask filters to a candidate pair.
+ */
+	private boolean canCollide(GObject g1, GObject g2) {
+		return (g1.getCollisionCategory() & g2.getCollisionMask()) != 0
+		    && (g2.getCollisionCategory() & g1.getCollisionMask()) != 0;
+	}
+
+/* Private method: overlaps(index, x0, y0, x1, y1) */
+/**
+ * Checks whether the stored bounds of the element at <code>index</code>
+ * overlap the specified rectangle.
+ */
+	private boolean overlaps(int index, double x0, double y0, double x1, double y1) {
+		int b = 4 * index;
+		return bounds[b] <= x1 && x0 <= bounds[b + 2] && bounds[b + 1] <= y1 && y0 <= bounds[b + 3];
+	}
+
+/* Private method: collectCandidates(x0, y0, x1, y1) */
+/**
+ * Fills the <code>candidates</code> array with the index of every element
+ * that shares a grid cell with the specified rectangle and returns the
+ * number of candidates.  Each element appears at most once.
+ */
+	private int collectCandidates(double x0, double y0, double x1, double y1) {
+		if (candidates == null || candidates.length < nObjects) candidates = new int[nObjects];
+		int cx0 = cellIndex(x0);
+		int cy0 = cellIndex(y0);
+		int cx1 = cellIndex(x1);
+		int cy1 = cellIndex(y1);
+		int nCandidates = 0;
+		if ((long) (cx1 - cx0 + 1) * (cy1 - cy0 + 1) > MAX_CELLS) {
+			for (int i = 0; i < nObjects; i++) {
+				candidates[nCandidates++] = i;
+			}
+			return nCandidates;
+		}
+		if (++stamp == 0) {
+			Arrays.fill(stamps, 0);
+			stamp = 1;
+		}
+		for (int cx = cx0; cx <= cx1; cx++) {
+			for (int cy = cy0; cy <= cy1; cy++) {
+				long key = cellKey(cx, cy);
+				for (int e = head[hash(key)]; e >= 0; e = next[e]) {
+					if (entryKey[e] != key) continue;
+					int i = entryObject[e];
+					if (stamps[i] != stamp) {
+						stamps[i] = stamp;
+						candidates[nCandidates++] = i;
+					}
+				}
+			}
+		}
+		for (int k = 0; k < nOversize; k++) {
+			int i = oversize[k];
+			if (stamps[i] != stamp) {
+				stamps[i] = stamp;
+				candidates[nCandidates++] = i;
+			}
+		}
+		return nCandidates;
+	}
+
+/* Private method: update() */
+/**
+ * Rebuilds the grid if the container has changed since the last rebuild.
+ * The grid is marked as valid before the elements are read, so that a
+ * change made while the rebuild is in progress forces another rebuild.
+ */
+	private void update() {
+		if (valid) return;
+		valid = true;
+		nObjects = cont.getElementCount();
+		if (objects.length < nObjects) {
+			objects = new GObject[nObjects];
+			bounds = new double[4 * nObjects];
+			stamps = new int[nObjects];
+			oversize = new int[nObjects];
+			stamp = 0;
+		}
+		double totalSize = 0;
+		for (int i = 0; i < nObjects; i++) {
+			GObject gobj = cont.getElement(i);
+			GRectangle r = gobj.getBounds();
+			objects[i] = gobj;
+			int b = 4 * i;
+			bounds[b] = r.getX();
+			bounds[b + 1] = r.getY();
+			bounds[b + 2] = r.getX() + r.getWidth();
+			bounds[b + 3] = r.getY() + r.getHeight();
+			totalSize += Math.max(r.getWidth(), r.getHeight());
+		}
+		for (int i = nObjects; i < objects.length; i++) {
+			objects[i] = null;
+		}
+		currentCellSize = cellSize;
+		if (currentCellSize <= 0) {
+			currentCellSize = (nObjects == 0) ? 1 : Math.max(1, totalSize / nObjects);
+		}
+		int nEntries = 0;
+		nOversize = 0;
+		for (int i = 0; i < nObjects; i++) {
+			long nCells = countCells(i);
+			if (nCells > MAX_CELLS) {
+				oversize[nOversize++] = i;
+			} else {
+				nEntries += (int) nCells;
+			}
+		}
+		int tableSize = 16;
+		while (tableSize < 2 * nEntries) {
+			tableSize *= 2;
+		}
+		if (head == null || head.length != tableSize) head = new int[tableSize];
+		Arrays.fill(head, -1);
+		if (next == null || next.length < nEntries) {
+			next = new int[nEntries];
+			entryKey = new long[nEntries];
+			entryObject = new int[nEntries];
+		}
+		int e = 0;
+		int k = 0;
+		for (int i = 0; i < nObjects; i++) {
+			if (k < nOversize && oversize[k] == i) {
+				k++;
+				continue;
+			}
+			int b = 4 * i;
+			int cx0 = cellIndex(bounds[b]);
+			int cy0 = cellIndex(bounds[b + 1]);
+			int cx1 = cellIndex(bounds[b + 2]);
+			int cy1 = cellIndex(bounds[b + 3]);
+			for (int cx = cx0; cx <= cx1; cx++) {
+				for (int cy = cy0; cy <= cy1; cy++) {
+					long key = cellKey(cx, cy);
+					int h = hash(key);
+					entryKey[e] = key;
+					entryObject[e] = i;
+					next[e] = head[h];
+					head[h] = e;
+					e++;
+				}
+			}
+		}
+	}
+
+/* Private method: countCells(index) */
+/**
+ * Returns the number of grid cells covered by the element at <code>index</code>.
+ */
+	private long countCells(int index) {
+		int b = 4 * index;
+		long nx = (long) cellIndex(bounds[b + 2]) - cellIndex(bounds[b]) + 1;
+		long ny = (long) cellIndex(bounds[b + 3]) - cellIndex(bounds[b + 1]) + 1;
+		return nx * ny;
+	}
+
+/* Private method: cellIndex(coord) */
+/**
+ * Converts a coordinate into the index of the grid cell that contains it.
+ */
+	private int cellIndex(double coord) {
+		double index = Math.floor(coord / currentCellSize);
+		if (index < -MAX_INDEX) return -MAX_INDEX;
+		if (index > MAX_INDEX) return MAX_INDEX;
+		return (int) index;
+	}
+
+/* Private method: cellKey(cx, cy) */
+/**
+ * Packs the two cell indices into a single <code>long</code> key.
+ */
+	private static long cellKey(int cx, int cy) {
+		return ((long) cx << 32) | (cy & 0xFFFFFFFFL);
+	}
+
+/* Private method: hash(key) */
+/**
+ * Returns the hash-table bucket for the specified cell key.
+ */
+	private int hash(long key) {
+		int h = (int) (key ^ (key >>> 32)) * 0x9E3779B9;
+		return (h ^ (h >>> 16)) & (head.length - 1);
+	}
+
+/* Private constants */
+
+	private static final int MAX_CELLS = 64;
+	private static final int MAX_INDEX = 1 << 30;
+
+/* Private state */
+
+	private GContainer cont;
+	private double cellSize;
+	private double currentCellSize;
+	private volatile boolean valid;
+	private int nObjects;
+	private GObject[] objects;
+	private double[] bounds;
+	private int[] oversize;
+	private int nOversize;
+	private int[] head;
+	private int[] next;
+	private long[] entryKey;
+	private int[] entryObject;
+	private int[] candidates;
+	private int[] stamps;
+	private int stamp;
+}
@@ -24,6 +24,7 @@ import acm.util.ErrorException;
 
 import java.awt.*;
 import java.awt.event.MouseEvent;
+import java.awt.geom.*;
 import java.lang.reflect.Constructor;
 import java.util.ArrayList;
 import java.util.Iterator;
@@ -46,6 +47,9 @@ public class GCompound extends GObject implements GContainer, GScalable {
 	public GCompound() {
 		contents = new ArrayList();
 		complete = false;
+		scaleX = 1;
+		scaleY = 1;
+		theta = 0;
 	}
 
 /* Method: add(gobj) */
@@ -65,6 +69,7 @@ public class GCompound extends GObject implements GContainer, GScalable {
 			gobj.setParent(this);
 			contents.add(gobj);
 		}
+		invalidateCollisions();
 		repaint();
 	}
 
@@ -111,6 +116,7 @@ public class GCompound extends GObject implements GContainer, GScalable {
 			contents.remove(gobj);
 			gobj.setParent(null);
 		}
+		invalidateCollisions();
 		repaint();
 	}
 
@@ -128,6 +134,7 @@ public class GCompound extends GObject implements GContainer, GScalable {
 		synchronized (contents) {
 			contents.clear();
 		}
+		invalidateCollisions();
 		repaint();
 	}
 
@@ -193,6 +200,66 @@ public class GCompound extends GObject implements GContainer, GScalable {
 		return getElementAt(pt.getX(), pt.getY());
 	}
 
+/* Method: getCollisions(gobj) */
+/**
+ * Returns a list of the graphical objects in this compound that collide
+ * with <code>gobj</code>, ordered from back to front.  The bounds of
+ * <code>gobj</code> are interpreted in the coordinate system of this compound.
+ * Collisions are defined as for the
+ * <a href="GCanvas.html#getCollisions(GObject)"><code>getCollisions</code></a>
+ * method in <code>GCanvas</code>.
+ *
+ * @usage ArrayList list = gcomp.getCollisions(gobj);
+ * @param gobj The graphical object being tested
+ * @return An <code>ArrayList</code> of the objects that collide with <code>gobj</code>
+ */
+	public ArrayList getCollisions(GObject gobj) {
+		synchronized (contents) {
+			return getCollisionDetector().getCollisions(gobj);
+		}
+	}
+
+/* Method: getCollisionPairs() */
+/**
+ * Returns a list of every pair of colliding objects in this compound, in the
+ * form described for the
+ * <a href="GCanvas.html#getCollisionPairs()"><code>getCollisionPairs</code></a>
+ * method in <code>GCanvas</code>.
+ *
+ * @usage ArrayList pairs = gcomp.getCollisionPairs();
+ * @return An <code>ArrayList</code> of <code>GObject[]</code> pairs
+ */
+	public ArrayList getCollisionPairs() {
+		synchronized (contents) {
+			return getCollisionDetector().getCollisionPairs();
+		}
+	}
+
+/* Method: setCollisionCellSize(size) */
+/**
+ * Sets the size of the grid cells used to find collision candidates in this
+ * compound, as described for the
+ * <a href="GCanvas.html#setCollisionCellSize(double)"><code>setCollisionCellSize</code></a>
+ * method in <code>GCanvas</code>.
+ *
+ * @usage gcomp.setCollisionCellSize(size);
+ * @param size The width and height of a grid cell, or 0 to choose automatically
+ */
+	public void setCollisionCellSize(double size) {
+		getCollisionDetector().setCellSize(size);
+	}
+
+/* Method: getCollisionCellSize() */
+/**
+ * Returns the grid cell size set by <code>setCollisionCellSize</code>.
+ *
+ * @usage double size = gcomp.getCollisionCellSize();
+ * @return The grid cell size, or 0 if it is chosen automatically
+ */
+	public double getCollisionCellSize() {
+		return getCollisionDetector().getCellSize();
+	}
+
 /* Method: iterator() */
 /**
  * Returns an <code>Iterator</code> that cycles through the elements within
@@ -249,6 +316,8 @@ public class GCompound extends GObject implements GContainer, GScalable {
 	public void paint(Graphics g) {
 		g = g.create();
 		g.translate(GMath.round(getX()), GMath.round(getY()));
+		AffineTransform tx = scaleTransform;
+		if (tx != null) ((Graphics2D) g).transform(tx);
 		synchronized (contents) {
 			int nElements = contents.size();
 			for (int i = 0; i < nElements; i++) {
@@ -259,32 +328,17 @@ public class GCompound extends GObject implements GContainer, GScalable {
 
 /* Method: scale(sx, sy) */
 /**
- * Scales every object contained in this compound by the scale factors
- * <code>sx</code> and <code>sy</code>.  Automatic repaint is turned off
- * during the scaling operation so that at most one repaint is performed.
+ * Scales the compound on the screen by the scale factors <code>sx</code>
+ * and <code>sy</code>.  The scaling is recorded in the local transform of
+ * the compound and applied when it is painted, so the objects it contains
+ * are not changed and the cost does not depend on how many there are.
  *
  * @usage gcomp.scale(sx, sy);
  * @param sx The factor used to scale all coordinates in the x direction
  * @param sy The factor used to scale all coordinates in the y direction
  */
 	public void scale(double sx, double sy) {
-		Component comp = getComponent();
-		boolean oldAutoRepaint = false;
-		if (comp instanceof GCanvas) {
-			oldAutoRepaint = ((GCanvas) comp).getAutoRepaintFlag();
-			((GCanvas) comp).setAutoRepaintFlag(false);
-		}
-		for (int i = getElementCount() - 1; i >= 0; i--) {
-			GObject gobj = getElement(i);
-			gobj.setLocation(sx * gobj.getX(), sy * gobj.getY());
-			if (gobj instanceof GScalable) {
-				((GScalable) gobj).scale(sx, sy);
-			}
-		}
-		if (comp instanceof GCanvas) {
-			((GCanvas) comp).setAutoRepaintFlag(oldAutoRepaint);
-		}
-		repaint();
+		setLocalScale(scaleX * sx, scaleY * sy);
 	}
 
 /* Method: scale(sf) */
@@ -299,6 +353,107 @@ public class GCompound extends GObject implements GContainer, GScalable {
 		scale(sf, sf);
 	}
 
+/* Method: setLocalScale(sx, sy) */
+/**
+ * Sets the scale factors in the local transform of this compound, replacing
+ * any earlier scaling.  The scale factors apply to the coordinates of the
+ * contained objects, with the location of the compound as the origin.
+ *
+ * @usage gcomp.setLocalScale(sx, sy);
+ * @param sx The scale factor in the x direction
+ * @param sy The scale factor in the y direction
+ */
+	public void setLocalScale(double sx, double sy) {
+		synchronized (contents) {
+			scaleX = sx;
+			scaleY = sy;
+			updateScaleTransform();
+		}
+		repaint();
+	}
+
+/* Method: getLocalScaleX() */
+/**
+ * Returns the scale factor in the x direction of the local transform.
+ *
+ * @usage double sx = gcomp.getLocalScaleX();
+ * @return The scale factor in the x direction
+ */
+	public double getLocalScaleX() {
+		return scaleX;
+	}
+
+/* Method: getLocalScaleY() */
+/**
+ * Returns the scale factor in the y direction of the local transform.
+ *
+ * @usage double sy = gcomp.getLocalScaleY();
+ * @return The scale factor in the y direction
+ */
+	public double getLocalScaleY() {
+		return scaleY;
+	}
+
+/* Method: rotate(theta) */
+/**
+ * Rotates the compound by <code>theta</code> radians around its location.
+ * As with scaling, the rotation is applied when the compound is painted and
+ * the contained objects are not changed.  Angles are measured in the same
+ * units and direction as in <a href="GObject.html#setRotation(double)"><code>setRotation</code></a>.
+ *
+ * @usage gcomp.rotate(theta);
+ * @param theta The angle of rotation in radians
+ */
+	public void rotate(double theta) {
+		setLocalRotation(this.theta + theta);
+	}
+
+/* Method: setLocalRotation(theta) */
+/**
+ * Sets the angle of rotation in the local transform of this compound,
+ * replacing any earlier rotation.  As in <a href="GObject.html#setRotation(double)"><code>setRotation</code></a>,
+ * the angle is measured in radians, and positive angles turn clockwise on
+ * the screen.
+ *
+ * @usage gcomp.setLocalRotation(theta);
+ * @param theta The angle of rotation in radians
+ */
+	public void setLocalRotation(double theta) {
+		synchronized (contents) {
+			this.theta = theta;
+			updateScaleTransform();
+		}
+		repaint();
+	}
+
+/* Method: getLocalRotation() */
+/**
+ * Returns the angle of rotation in the local transform, in radians.
+ *
+ * @usage double theta = gcomp.getLocalRotation();
+ * @return The angle of rotation in radians
+ */
+	public double getLocalRotation() {
+		return theta;
+	}
+
+/* Method: getLocalTransform() */
+/**
+ * Returns the transform that maps the coordinates of the contained objects
+ * to the coordinates of the container that holds this compound.  It
+ * consists of the local scaling and rotation followed by a translation to
+ * the location of the compound.
+ *
+ * @usage AffineTransform tx = gcomp.getLocalTransform();
+ * @return The local transform of this compound
+ */
+	public AffineTransform getLocalTransform() {
+		AffineTransform tx = AffineTransform.getTranslateInstance(getX(), getY());
+		AffineTransform st = scaleTransform;
+		if (st != null) tx.concatenate(st);
+		return tx;
+	}
+
 /* Method: getBounds() */
 /**
  * Returns the bounding rectangle for this compound object, which consists of
@@ -319,6 +474,12 @@ public class GCompound extends GObject implements GContainer, GScalable {
 				}
 			}
 		}
+		AffineTransform tx = scaleTransform;
+		if (tx != null) {
+			Rectangle2D r = tx.createTransformedShape(new Rectangle2D.Double(bounds.getX(),
+			                        bounds.getY(), bounds.getWidth(), bounds.getHeight())).getBounds2D();
+			bounds = new GRectangle(r.getX(), r.getY(), r.getWidth(), r.getHeight());
+		}
 		bounds.translate(getX(), getY());
 		return bounds;
 	}
@@ -335,8 +496,9 @@ public class GCompound extends GObject implements GContainer, GScalable {
  *         the compound, and <code>false</code> otherwise
  */
 	public boolean contains(double x, double y) {
-		double cx = x - getX();
-		double cy = y - getY();
+		GPoint pt = toLocal(x - getX(), y - getY());
+		double cx = pt.getX();
+		double cy = pt.getY();
 		synchronized (contents) {
 			int nElements = contents.size();
 			for (int i = 0; i < nElements; i++) {
@@ -371,13 +533,8 @@ public class GCompound extends GObject implements GContainer, GScalable {
  */
 
 	public GPoint getCanvasPoint(double x, double y) {
-		for (GContainer c = this; c instanceof GCompound; ) {
-			GCompound comp = (GCompound) c;
-			x += comp.getX();
-			y += comp.getY();
-			c = comp.getParent();
-		}
-		return new GPoint(x, y);
+		Point2D pt = getWorldTransform().transform(new Point2D.Double(x, y), null);
+		return new GPoint(pt.getX(), pt.getY());
 	}
 
 /* Method: getLocalPoint(canvasPoint) */
@@ -405,13 +562,9 @@ public class GCompound extends GObject implements GContainer, GScalable {
  */
 
 	public GPoint getLocalPoint(double x, double y) {
-		for (GContainer c = this; c instanceof GCompound; ) {
-			GCompound comp = (GCompound) c;
-			x -= comp.getX();
-			y -= comp.getY();
-			c = comp.getParent();
-		}
-		return new GPoint(x, y);
+		getWorldTransform();
+		Point2D pt = worldInverse.transform(new Point2D.Double(x, y), null);
+		return new GPoint(pt.getX(), pt.getY());
 	}
 
 /* Protected method: markAsComplete() */
@@ -637,7 +790,7 @@ public class GCompound extends GObject implements GContainer, GScalable {
 			super.fireMouseListeners(e);
 			return;
 		}
-		GPoint pt = new GPoint(e.getX() - getX(), e.getY() - getY());
+		GPoint pt = toLocal(e.getX() - getX(), e.getY() - getY());
 		GObject gobj = getElementAt(pt);
 		MouseEvent newEvent = null;
 		if (gobj != lastObject) {
@@ -688,6 +841,18 @@ public class GCompound extends GObject implements GContainer, GScalable {
 		return false;
 	}
 
+/* Protected method: invalidateCollisions() */
+/**
+ * Signals that the collision grid must be rebuilt before the next query.
+ * This method is called whenever a contained object changes.
+ *
+ * @usage gcomp.invalidateCollisions();
+ * @noshow
+ */
+	protected void invalidateCollisions() {
+		if (collisionDetector != null) collisionDetector.invalidate();
+	}
+
 /* Protected method: createIterator(container, direction) */
 /**
  * Creates a new iterator for a container.  This method is broken out
@@ -708,12 +873,107 @@ public class GCompound extends GObject implements GContainer, GScalable {
 		}
 	}
 
+/* Private method: getWorldTransform() */
+/**
+ * Returns the transform from the coordinates of this compound to those of
+ * the canvas.  The result is cached along with the parent transform and the
+ * location from which it was computed, so repeated conversions do not
+ * recompute the product of the transforms along the chain of containers
+ * unless one of them has changed.  The caller must not modify the result.
+ */
+	private AffineTransform getWorldTransform() {
+		GContainer parent = getParent();
+		AffineTransform parentTransform = null;
+		if (parent instanceof GCompound) {
+			parentTransform = ((GCompound) parent).getWorldTransform();
+		}
+		double x = getX();
+		double y = getY();
+		synchronized (contents) {
+			if (worldTransform == null || worldParent != parentTransform || worldLocal != scaleTransform
+			    || worldX != x || worldY != y) {
+				AffineTransform tx = (parentTransform == null) ? new AffineTransform()
+				                                               : new AffineTransform(parentTransform);
+				tx.translate(x, y);
+				if (scaleTransform != null) tx.concatenate(scaleTransform);
+				try {
+					worldInverse = tx.createInverse();
+				} catch (NoninvertibleTransformException ex) {
+					throw new ErrorException("GCompound: Transform is not invertible");
+				}
+				worldTransform = tx;
+				worldParent = parentTransform;
+				worldLocal = scaleTransform;
+				worldX = x;
+				worldY = y;
+			}
+			return worldTransform;
+		}
+	}
+
+/* Private method: toLocal(x, y) */
+/**
+ * Applies the inverse of the local scaling and rotation to a point that has
+ * already been translated relative to the location of the compound.
+ */
+	private GPoint toLocal(double x, double y) {
+		AffineTransform inverse = scaleInverse;
+		if (inverse == null) return new GPoint(x, y);
+		Point2D pt = inverse.transform(new Point2D.Double(x, y), null);
+		return new GPoint(pt.getX(), pt.getY());
+	}
+
+/* Private method: updateScaleTransform() */
+/**
+ * Recomputes the cached local scaling and rotation.  A new transform object
+ * is created on every change, so that cached world transforms that depend on
+ * it can tell that they are out of date.
+ */
+	private void updateScaleTransform() {
+		if (scaleX == 1 && scaleY == 1 && theta == 0) {
+			scaleTransform = null;
+			scaleInverse = null;
+			return;
+		}
+		AffineTransform tx = AffineTransform.getRotateInstance(theta);
+		tx.scale(scaleX, scaleY);
+		try {
+			scaleInverse = tx.createInverse();
+		} catch (NoninvertibleTransformException ex) {
+			throw new ErrorException("GCompound: Scale factors must be nonzero");
+		}
+		scaleTransform = tx;
+	}
+
+/* Private method: getCollisionDetector() */
+/**
+ * Returns the collision detector for this compound, creating it if necessary.
+ */
+	private GCollisionDetector getCollisionDetector() {
+		synchronized (contents) {
+			if (collisionDetector == null) collisionDetector = new GCollisionDetector(this);
+			return collisionDetector;
+		}
+	}
+
 /* Private state */
 
 	private boolean complete;
 	private ArrayList contents;
 	private GObject lastObject;
 	private GObject dragObject;
+	private GCollisionDetector collisionDetector;
+	private double scaleX;
+	private double scaleY;
+	private double theta;
+	private AffineTransform scaleTransform;
+	private AffineTransform scaleInverse;
+	private AffineTransform worldTransform;
+	private AffineTransform worldInverse;
+	private AffineTransform worldParent;
+	private AffineTransform worldLocal;
+	private double worldX;
+	private double worldY;
 }
 
 /* Package class: GIterator */
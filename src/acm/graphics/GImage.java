@@ -20,9 +20,11 @@
 
 package acm.graphics;
 
+import acm.util.ErrorException;
 import acm.util.MediaTools;
 
 import java.awt.*;
+import java.awt.image.*;
 
 /* Class: GImage */
 
@@ -110,7 +112,10 @@ public class GImage extends GObject implements GResizable, GScalable {
  */
 	public void setImage(Image image) {
 		myImage = MediaTools.loadImage(image);
+		pixelImage = null;
+		sizeDetermined = false;
 		determineSize();
+		repaint();
 	}
 
 /* Method: setImage(name) */
@@ -138,6 +143,146 @@ public class GImage extends GObject implements GResizable, GScalable {
 		return myImage;
 	}
 
+/* Method: getPixelArray() */
+/**
+ * Returns the array of pixels that backs this image.  Each element is a
+ * packed ARGB value, and the pixels are stored in row-major order, so that
+ * the pixel at (<code>x</code>,&nbsp;<code>y</code>) is at index
+ * <code>y * getPixelWidth() + x</code>.  The first call converts the image
+ * into a form that exposes its pixels directly; later calls return the same
+ * array without copying.  After changing the array, clients must call
+ * <a href="#markDirty(int, int, int, int)"><code>markDirty</code></a> so
+ * that the changes appear on the screen.
+ *
+ * @usage int[] pixels = gimage.getPixelArray();
+ * @return The array of pixels backing this image
+ */
+	public int[] getPixelArray() {
+		return ((DataBufferInt) getBufferedImage().getRaster().getDataBuffer()).getData();
+	}
+
+/* Method: setPixelArray(pixels, width, height) */
+/**
+ * Resets the contents of this <code>GImage</code> to the pixels in the array,
+ * which uses the same layout as the result of
+ * <a href="#getPixelArray()"><code>getPixelArray</code></a>.  The array is
+ * used directly rather than copied, so later changes to it affect the image.
+ * As with <code>setImage</code>, the size of the object changes to match the
+ * new pixel dimensions.
+ *
+ * @usage gimage.setPixelArray(pixels, width, height);
+ * @param pixels The array of ARGB pixels
+ * @param width The width of the image in pixels
+ * @param height The height of the image in pixels
+ */
+	public void setPixelArray(int[] pixels, int width, int height) {
+		if (width <= 0 || height <= 0 || pixels.length < width * height) {
+			throw new ErrorException("setPixelArray: Illegal image dimensions");
+		}
+		DataBufferInt buffer = new DataBufferInt(pixels, width * height);
+		DirectColorModel model = (DirectColorModel) ColorModel.getRGBdefault();
+		WritableRaster raster = Raster.createPackedRaster(buffer, width, height, width,
+		                                                  model.getMasks(), null);
+		pixelImage = new BufferedImage(model, raster, false, null);
+		myImage = pixelImage;
+		myWidth = width;
+		myHeight = height;
+		sizeDetermined = true;
+		repaint();
+	}
+
+/* Method: getPixelWidth() */
+/**
+ * Returns the width of the underlying image in pixels, which may differ from
+ * the width at which the image is displayed.
+ *
+ * @usage int width = gimage.getPixelWidth();
+ * @return The width of the image data in pixels
+ */
+	public int getPixelWidth() {
+		return getBufferedImage().getWidth();
+	}
+
+/* Method: getPixelHeight() */
+/**
+ * Returns the height of the underlying image in pixels, which may differ from
+ * the height at which the image is displayed.
+ *
+ * @usage int height = gimage.getPixelHeight();
+ * @return The height of the image data in pixels
+ */
+	public int getPixelHeight() {
+		return getBufferedImage().getHeight();
+	}
+
+/* Method: markDirty(x, y, width, height) */
+/**
+ * Indicates that the pixels in the specified rectangle have changed, which
+ * schedules a repaint of just the part of the screen they occupy.  The
+ * coordinates are given in pixels of the image data.
+ *
+ * @usage gimage.markDirty(x, y, width, height);
+ * @param x The first column that changed
+ * @param y The first row that changed
+ * @param width The number of columns that changed
+ * @param height The number of rows that changed
+ */
+	public void markDirty(int x, int y, int width, int height) {
+		BufferedImage image = getBufferedImage();
+		double sx = myWidth / image.getWidth();
+		double sy = myHeight / image.getHeight();
+		repaint(getX() + x * sx, getY() + y * sy, width * sx, height * sy);
+	}
+
+/* Method: applyFilter(filter) */
+/**
+ * Applies the filter to every pixel in this image and updates the display.
+ *
+ * @usage gimage.applyFilter(filter);
+ * @param filter The <code>GPixelFilter</code> to apply
+ */
+	public void applyFilter(GPixelFilter filter) {
+		BufferedImage image = getBufferedImage();
+		applyFilter(filter, 0, 0, image.getWidth(), image.getHeight());
+	}
+
+/* Method: applyFilter(filter, x, y, width, height) */
+/**
+ * Applies the filter to the specified rectangle of pixels and repaints only
+ * that part of the display.  The coordinates are given in pixels of the
+ * image data.
+ *
+ * @usage gimage.applyFilter(filter, x, y, width, height);
+ * @param filter The <code>GPixelFilter</code> to apply
+ * @param x The first column of the region
+ * @param y The first row of the region
+ * @param width The width of the region
+ * @param height The height of the region
+ */
+	public void applyFilter(GPixelFilter filter, int x, int y, int width, int height) {
+		BufferedImage image = getBufferedImage();
+		filter.apply(getPixelArray(), image.getWidth(), image.getHeight(), x, y, width, height);
+		markDirty(x, y, width, height);
+	}
+
+/* Method: resizePixels(width, height) */
+/**
+ * Resamples the image data to the specified size using bilinear
+ * interpolation.  Unlike <code>setSize</code>, which changes only the
+ * displayed size, this method replaces the pixel array, after which the
+ * object is displayed at the new size.
+ *
+ * @usage gimage.resizePixels(width, height);
+ * @param width The new width in pixels
+ * @param height The new height in pixels
+ */
+	public void resizePixels(int width, int height) {
+		BufferedImage image = getBufferedImage();
+		int[] pixels = GPixelFilter.resize(getPixelArray(), image.getWidth(), image.getHeight(),
+		                                   width, height);
+		setPixelArray(pixels, width, height);
+	}
+
 /* Method: paint(g) */
 /**
  * Implements the <code>paint</code> operation for this graphical object.  This method
@@ -401,6 +546,39 @@ public class GImage extends GObject implements GResizable, GScalable {
 		return new Rectangle(GMath.round(getX()), GMath.round(getY()), GMath.round(myWidth), GMath.round(myHeight));
 	}
 
+/* Private method: getBufferedImage() */
+/**
+ * Returns the <code>BufferedImage</code> that holds the pixels of this image,
+ * converting the original image the first time this method is called.  The
+ * conversion waits until the original image is fully loaded, and it throws
+ * an <code>ErrorException</code> if the image cannot be loaded.
+ */
+	private BufferedImage getBufferedImage() {
+		if (pixelImage == null && myImage instanceof BufferedImage
+		      && ((BufferedImage) myImage).getType() == BufferedImage.TYPE_INT_ARGB) {
+			pixelImage = (BufferedImage) myImage;
+		}
+		if (pixelImage == null) {
+			Component component = getComponent();
+			if (component == null) component = MediaTools.getImageObserver();
+			MediaTools.loadImage(myImage);
+			int width = myImage.getWidth(component);
+			int height = myImage.getHeight(component);
+			if (width < 0 || height < 0) {
+				throw new ErrorException("GImage: Image could not be loaded");
+			}
+			width = Math.max(1, width);
+			height = Math.max(1, height);
+			BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+			Graphics g = image.createGraphics();
+			g.drawImage(myImage, 0, 0, component);
+			g.dispose();
+			pixelImage = image;
+			myImage = image;
+		}
+		return pixelImage;
+	}
+
 /* Private method: determineSize() */
 /**
  * Computes the size of the image.
@@ -420,4 +598,5 @@ public class GImage extends GObject implements GResizable, GScalable {
 	private double myWidth;
 	private double myHeight;
 	private boolean sizeDetermined;
+	private BufferedImage pixelImage;
 }
@@ -0,0 +1,227 @@
+/*
+ * @(#)GLayer.java   1.0 06/08/25
+ */
+
+// ************************************************************************
+// * Copyright (c) 2006 by the Association for Computing Machinery        *
+// *                                                                      *
+// * The Java Task Force seeks to impose few restrictions on the use of   *
+// * these packages so that users have as much freedom as possible to     *
+// * use this software in constructive ways and can make the benefits of  *
+// * that work available to others.  In view of the legal complexities    *
+// * of software development, however, it is essential for the ACM to     *
+// * maintain its copyright to guard against attempts by others to        *
+// * claim ownership rights.  The full text of the JTF Software License   *
+// * is available at the following URL:                                   *
+// *                                                                      *
+// *          http://www.acm.org/jtf/jtf-software-license.pdf             *
+// *                                                                      *
+// ************************************************************************
+
+package acm.graphics;
+
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+
+/* Class: GLayer */
+
+/**
+ * The <code>GLayer</code> class is a <code>GCompound</code> that represents
+ * one layer of the drawing on a <code>GCanvas</code>.  A program typically
+ * adds a few layers to the canvas, such as a background, the playing field,
+ * and the moving pieces, and then adds its objects to the appropriate layer.
+ * The layers are stacked in the order in which they are added to the canvas,
+ * and like any other object, a layer can be hidden or moved forward and back.
+ *
+ * <p>A layer can be marked as <i>cached</i>, in which case its contents are
+ * drawn once into an offscreen image and that image is reused until something
+ * in the layer changes.  Caching a layer whose contents rarely change means
+ * that a change in another layer does not redraw the objects in this one.
+ * The image has the resolution of the device on which the canvas is drawn,
+ * so a cached layer looks the same as an uncached one on scaled displays.
+ * A layer can also be excluded from hit testing, so that
+ * <a href="GCanvas.html#getElementAt(double, double)"><code>getElementAt</code></a>
+ * and mouse events pass through it to the layers below.
+ */
+public class GLayer extends GCompound {
+
+/* Constructor: GLayer() */
+/**
+ * Creates a new empty layer with no name.
+ *
+ * @usage GLayer layer = new GLayer();
+ */
+	public GLayer() {
+		this(null);
+	}
+
+/* Constructor: GLayer(name) */
+/**
+ * Creates a new empty layer with the specified name, which can be used to
+ * find the layer later using
+ * <a href="GCanvas.html#getLayer(String)"><code>getLayer</code></a>.
+ *
+ * @usage GLayer layer = new GLayer(name);
+ * @param name The name of the layer
+ */
+	public GLayer(String name) {
+		layerName = name;
+		cached = false;
+		hitTestEnabled = true;
+	}
+
+/* Method: getName() */
+/**
+ * Returns the name of this layer, or <code>null</code> if it has none.
+ *
+ * @usage String name = layer.getName();
+ * @return The name of the layer
+ */
+	public String getName() {
+		return layerName;
+	}
+
+/* Method: setCached(flag) */
+/**
+ * Sets whether this layer keeps its contents in an offscreen image between
+ * repaints.
+ *
+ * @usage layer.setCached(flag);
+ * @param flag <code>true</code> to cache the contents of the layer
+ */
+	public void setCached(boolean flag) {
+		cached = flag;
+		invalidateCache();
+		if (!flag) cacheImage = null;
+		repaint();
+	}
+
+/* Method: isCached() */
+/**
+ * Returns <code>true</code> if this layer caches its contents.
+ *
+ * @usage if (layer.isCached()) . . .
+ * @return <code>true</code> if the layer is cached
+ */
+	public boolean isCached() {
+		return cached;
+	}
+
+/* Method: setHitTestEnabled(flag) */
+/**
+ * Sets whether the objects in this layer respond to hit testing.  If hit
+ * testing is disabled, <code>contains</code> always returns
+ * <code>false</code>, so the layer is invisible to <code>getElementAt</code>
+ * and to mouse events.
+ *
+ * @usage layer.setHitTestEnabled(flag);
+ * @param flag <code>true</code> to allow hit testing in this layer
+ */
+	public void setHitTestEnabled(boolean flag) {
+		hitTestEnabled = flag;
+	}
+
+/* Method: isHitTestEnabled() */
+/**
+ * Returns <code>true</code> if the objects in this layer respond to hit testing.
+ *
+ * @usage if (layer.isHitTestEnabled()) . . .
+ * @return <code>true</code> if hit testing is enabled in this layer
+ */
+	public boolean isHitTestEnabled() {
+		return hitTestEnabled;
+	}
+
+/* Method: invalidateCache() */
+/**
+ * Discards the cached image of this layer so that its contents are drawn
+ * again the next time the canvas is painted.  Changes made through the
+ * methods of the objects in the layer do this automatically.
+ *
+ * @usage layer.invalidateCache();
+ */
+	public void invalidateCache() {
+		cacheValid = false;
+	}
+
+/* Method: contains(x, y) */
+/**
+ * Checks to see whether a point is inside one of the objects in this layer.
+ * If hit testing has been disabled, this method always returns <code>false</code>.
+ *
+ * @usage if (layer.contains(x, y)) . . .
+ * @param x The x-coordinate of the point being tested
+ * @param y The y-coordinate of the point being tested
+ * @return <code>true</code> if the point is inside an object in the layer
+ */
+	public boolean contains(double x, double y) {
+		return hitTestEnabled && super.contains(x, y);
+	}
+
+/* Method: paint(g) */
+/**
+ * Implements the <code>paint</code> operation for this graphical object.  This method
+ * is not called directly by clients.
+ * @noshow
+ */
+	public void paint(Graphics g) {
+		Component comp = getComponent();
+		AffineTransform device = (comp instanceof GCanvas)
+		                         ? ((GCanvas) comp).getDeviceTransform() : null;
+		if (!cached || device == null || !(g instanceof Graphics2D)) {
+			super.paint(g);
+			return;
+		}
+		Graphics2D g2 = (Graphics2D) g;
+		AffineTransform tx = g2.getTransform();
+		Rectangle area = device.createTransformedShape(
+		                     new Rectangle(0, 0, comp.getWidth(), comp.getHeight())).getBounds();
+		if (area.width <= 0 || area.height <= 0) return;
+		BufferedImage image = cacheImage;
+		if (image == null || image.getWidth() != area.width || image.getHeight() != area.height) {
+			image = new BufferedImage(area.width, area.height, BufferedImage.TYPE_INT_ARGB);
+			cacheValid = false;
+		}
+		AffineTransform imageTransform = AffineTransform.getTranslateInstance(-area.x, -area.y);
+		imageTransform.concatenate(tx);
+		if (!cacheValid || !imageTransform.equals(cacheTransform)) {
+			cacheValid = true;
+			Graphics2D cg = image.createGraphics();
+			cg.setComposite(AlphaComposite.Clear);
+			cg.fillRect(0, 0, area.width, area.height);
+			cg.setComposite(AlphaComposite.SrcOver);
+			cg.setRenderingHints(g2.getRenderingHints());
+			cg.setColor(g2.getColor());
+			cg.setFont(g2.getFont());
+			cg.setTransform(imageTransform);
+			super.paint(cg);
+			cg.dispose();
+			cacheImage = image;
+			cacheTransform = imageTransform;
+		}
+		g2.setTransform(new AffineTransform());
+		g2.drawImage(image, area.x, area.y, null);
+		g2.setTransform(tx);
+	}
+
+/* Protected method: repaint() */
+/**
+ * Signals that the layer needs to be repainted, which also discards its
+ * cached image.
+ * @noshow
+ */
+	protected void repaint() {
+		invalidateCache();
+		super.repaint();
+	}
+
+/* Private state */
+
+	private String layerName;
+	private boolean cached;
+	private boolean hitTestEnabled;
+	private volatile boolean cacheValid;
+	private BufferedImage cacheImage;
+	private AffineTransform cacheTransform;
+}
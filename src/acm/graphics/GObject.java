@@ -25,6 +25,8 @@ import acm.util.JTFTools;
 
 import java.awt.*;
 import java.awt.event.*;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
 import java.lang.reflect.Method;
 
 /* Abstract class: GObject */
@@ -52,6 +54,8 @@ public abstract class GObject implements Cloneable {
 	protected GObject() {
 		isVisible = true;
 		mouseListenersEnabled = false;
+		collisionCategory = 1;
+		collisionMask = ~0;
 	}
 
 /* Abstract method: paint(g) */
@@ -428,6 +432,58 @@ public abstract class GObject implements Cloneable {
 		return myParent;
 	}
 
+/* Method: setCollisionCategory(category) */
+/**
+ * Sets the collision category of this object, which is a set of bits that
+ * identifies the kind of object for the collision methods in
+ * <a href="GCanvas.html"><code>GCanvas</code></a> and
+ * <a href="GCompound.html"><code>GCompound</code></a>.  Two objects can
+ * collide only if the category of each one shares a bit with the mask of
+ * the other.  An object whose category is zero never collides with anything.
+ * The default category is 1.
+ *
+ * @usage gobj.setCollisionCategory(category);
+ * @param category The category bits for this object
+ */
+	public void setCollisionCategory(int category) {
+		collisionCategory = category;
+	}
+
+/* Method: getCollisionCategory() */
+/**
+ * Returns the collision category of this object.
+ *
+ * @usage int category = gobj.getCollisionCategory();
+ * @return The category bits for this object
+ */
+	public int getCollisionCategory() {
+		return collisionCategory;
+	}
+
+/* Method: setCollisionMask(mask) */
+/**
+ * Sets the collision mask of this object, which specifies the categories of
+ * objects with which this object can collide.  By default, the mask includes
+ * every category.
+ *
+ * @usage gobj.setCollisionMask(mask);
+ * @param mask The categories with which this object can collide
+ */
+	public void setCollisionMask(int mask) {
+		collisionMask = mask;
+	}
+
+/* Method: getCollisionMask() */
+/**
+ * Returns the collision mask of this object.
+ *
+ * @usage int mask = gobj.getCollisionMask();
+ * @return The categories with which this object can collide
+ */
+	public int getCollisionMask() {
+		return collisionMask;
+	}
+
 /* Method: pause(milliseconds) */
 /**
  * Delays the calling thread for the specified time, which is expressed in
@@ -704,6 +760,21 @@ public abstract class GObject implements Cloneable {
 		if (color != null) g.setColor(oldColor);
 	}
 
+/* Package method: getPaintBounds() */
+/**
+ * Returns the bounding box of the area in which this object paints, which
+ * is the bounding box of the rotated bounds if the object is rotated.
+ */
+	GRectangle getPaintBounds() {
+		GRectangle bounds = getBounds();
+		if (rotation == 0) return bounds;
+		AffineTransform tx = AffineTransform.getRotateInstance(rotation, xc + rotationAnchorX,
+		                                                       yc + rotationAnchorY);
+		Rectangle2D r = tx.createTransformedShape(new Rectangle2D.Double(bounds.getX(),
+		                    bounds.getY(), bounds.getWidth(), bounds.getHeight())).getBounds2D();
+		return new GRectangle(r.getX(), r.getY(), r.getWidth(), r.getHeight());
+	}
+
 /* Protected method: getComponent() */
 /**
  * Returns the component in which this object is installed, or <code>null</code>
@@ -741,12 +812,56 @@ public abstract class GObject implements Cloneable {
 	protected void repaint() {
 		GContainer parent = getParent();
 		while (parent instanceof GObject) {
+			if (parent instanceof GCompound) ((GCompound) parent).invalidateCollisions();
+			if (parent instanceof GLayer) ((GLayer) parent).invalidateCache();
 			parent = ((GObject) parent).getParent();
 		}
 		if (parent instanceof GCanvas) {
+			((GCanvas) parent).invalidateCollisions();
 			((GCanvas) parent).conditionalRepaint();
 		}
 	}
+
+/* Protected method: repaint(x, y, width, height) */
+/**
+ * Signals that only the specified rectangle, expressed in the coordinates of
+ * this object's parent, needs to be repainted.  Objects that can tell which
+ * part of their image has changed use this method so that the canvas does
+ * not have to redraw its entire area.  If the rectangle cannot be mapped
+ * into canvas coordinates because a rotation is involved, this method
+ * requests a full repaint instead.
+ * @noshow
+ */
+	protected void repaint(double x, double y, double width, double height) {
+		if (rotation != 0) {
+			repaint();
+			return;
+		}
+		GContainer parent = getParent();
+		while (parent instanceof GObject) {
+			GObject gobj = (GObject) parent;
+			if (gobj.rotation != 0) {
+				repaint();
+				return;
+			}
+			if (gobj instanceof GLayer) ((GLayer) gobj).invalidateCache();
+			if (gobj instanceof GCompound) {
+				Rectangle2D r = ((GCompound) gobj).getLocalTransform().createTransformedShape(
+				                    new Rectangle2D.Double(x, y, width, height)).getBounds2D();
+				x = r.getX();
+				y = r.getY();
+				width = r.getWidth();
+				height = r.getHeight();
+			} else {
+				x += gobj.getX();
+				y += gobj.getY();
+			}
+			parent = gobj.getParent();
+		}
+		if (parent instanceof GCanvas) {
+			((GCanvas) parent).conditionalRepaint(x, y, width, height);
+		}
+	}
 	
     public double getRotation() {
         return rotation;
@@ -781,6 +896,8 @@ public abstract class GObject implements Cloneable {
 	private double rotation, rotationAnchorX, rotationAnchorY;
 	private boolean isVisible;
 	private boolean mouseListenersEnabled;
+	private int collisionCategory;
+	private int collisionMask;
 	private MouseListener mouseListener;
 	private MouseMotionListener mouseMotionListener;
 	private ActionListener actionListener;
@@ -0,0 +1,765 @@
+/*
+ * @(#)GParticleField.java   1.0 06/08/25
+ */
+
+// ************************************************************************
+// * Copyright (c) 2006 by the Association for Computing Machinery        *
+// *                                                                      *
+// * The Java Task Force seeks to impose few restrictions on the use of   *
+// * these packages so that users have as much freedom as possible to     *
+// * use this software in constructive ways and can make the benefits of  *
+// * that work available to others.  In view of the legal complexities    *
+// * of software development, however, it is essential for the ACM to     *
+// * maintain its copyright to guard against attempts by others to        *
+// * claim ownership rights.  The full text of the JTF Software License   *
+// * is available at the following URL:                                   *
+// *                                                                      *
+// *          http://www.acm.org/jtf/jtf-software-license.pdf             *
+// *                                                                      *
+// ************************************************************************
+
+package acm.graphics;
+
+import acm.util.ErrorException;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/* Class: GParticleField */
+
+/**
+ * The <code>GParticleField</code> class is a graphical object that displays
+ * a large number of small square particles inside a rectangular field.
+ * Instead of creating a separate <code>GOval</code> or <code>GRect</code> for
+ * each particle, the field stores the position, velocity, size, and color of
+ * every particle in parallel arrays of primitive values.  The
+ * <a href="#update(double)"><code>update</code></a> method advances all the
+ * particles at once, and the <code>paint</code> method draws every particle
+ * into a private raster that is then copied to the screen with a single
+ * <code>drawImage</code> call.  Particle coordinates are measured relative to
+ * the upper left corner of the field.
+ *
+ * <p>Particles are identified by their index, which runs from 0 to
+ * <code>getParticleCount() - 1</code>.  Removing a particle moves the last
+ * particle into the vacated index, so that removal takes constant time.
+ */
+public class GParticleField extends GObject implements GResizable {
+
+/* Constant: EDGE_NONE */
+/** Specifies that particles are free to leave the field. */
+	public static final int EDGE_NONE = 0;
+
+/* Constant: EDGE_WRAP */
+/** Specifies that particles leaving one edge of the field reappear at the opposite edge. */
+	public static final int EDGE_WRAP = 1;
+
+/* Constant: EDGE_BOUNCE */
+/** Specifies that particles bounce off the edges of the field. */
+	public static final int EDGE_BOUNCE = 2;
+
+/* Constructor: GParticleField(width, height) */
+/**
+ * Creates a new empty particle field with the specified size, positioned
+ * at the origin.
+ *
+ * @usage GParticleField field = new GParticleField(width, height);
+ * @param width The width of the field in pixels
+ * @param height The height of the field in pixels
+ */
+	public GParticleField(double width, double height) {
+		this(0, 0, width, height);
+	}
+
+/* Constructor: GParticleField(x, y, width, height) */
+/**
+ * Creates a new empty particle field with the specified bounds.
+ *
+ * @usage GParticleField field = new GParticleField(x, y, width, height);
+ * @param x The x-coordinate of the upper left corner of the field
+ * @param y The y-coordinate of the upper left corner of the field
+ * @param width The width of the field in pixels
+ * @param height The height of the field in pixels
+ */
+	public GParticleField(double x, double y, double width, double height) {
+		lock = new Object();
+		fieldWidth = width;
+		fieldHeight = height;
+		edgeMode = EDGE_NONE;
+		parallel = true;
+		ensureCapacity(INITIAL_CAPACITY);
+		setLocation(x, y);
+	}
+
+/* Method: addParticle(x, y, color) */
+/**
+ * Adds a stationary particle of size 1 at the point (<code>x</code>,&nbsp;<code>y</code>).
+ *
+ * @usage int index = field.addParticle(x, y, color);
+ * @param x The x-coordinate of the particle relative to the field
+ * @param y The y-coordinate of the particle relative to the field
+ * @param color The color of the particle
+ * @return The index of the new particle
+ */
+	public final int addParticle(double x, double y, Color color) {
+		return addParticle(x, y, 0, 0, 1, color.getRGB());
+	}
+
+/* Method: addParticle(x, y, vx, vy, size, argb) */
+/**
+ * Adds a particle to the field.  The color is given as a packed ARGB
+ * value of the sort returned by <code>Color.getRGB</code>.
+ *
+ * @usage int index = field.addParticle(x, y, vx, vy, size, argb);
+ * @param x The x-coordinate of the particle relative to the field
+ * @param y The y-coordinate of the particle relative to the field
+ * @param vx The velocity of the particle in the x direction, in pixels per time unit
+ * @param vy The velocity of the particle in the y direction, in pixels per time unit
+ * @param size The width and height of the particle in pixels
+ * @param argb The color of the particle as a packed ARGB value
+ * @return The index of the new particle
+ */
+	public int addParticle(double x, double y, double vx, double vy, double size, int argb) {
+		int index;
+		synchronized (lock) {
+			if (nParticles == xs.length) ensureCapacity(2 * xs.length);
+			index = nParticles++;
+			xs[index] = x;
+			ys[index] = y;
+			vxs[index] = vx;
+			vys[index] = vy;
+			sizes[index] = size;
+			colors[index] = argb;
+			rasterValid = false;
+		}
+		repaint();
+		return index;
+	}
+
+/* Method: removeParticle(index) */
+/**
+ * Removes the particle at the specified index.  To keep removal fast, the
+ * last particle in the field is moved to the vacated index.
+ *
+ * @usage field.removeParticle(index);
+ * @param index The index of the particle to remove
+ */
+	public void removeParticle(int index) {
+		synchronized (lock) {
+			checkIndex(index);
+			int last = --nParticles;
+			xs[index] = xs[last];
+			ys[index] = ys[last];
+			vxs[index] = vxs[last];
+			vys[index] = vys[last];
+			sizes[index] = sizes[last];
+			colors[index] = colors[last];
+			rasterValid = false;
+		}
+		repaint();
+	}
+
+/* Method: removeAllParticles() */
+/**
+ * Removes every particle from the field.
+ *
+ * @usage field.removeAllParticles();
+ */
+	public void removeAllParticles() {
+		synchronized (lock) {
+			nParticles = 0;
+			rasterValid = false;
+		}
+		repaint();
+	}
+
+/* Method: getParticleCount() */
+/**
+ * Returns the number of particles in the field.
+ *
+ * @usage int n = field.getParticleCount();
+ * @return The number of particles in the field
+ */
+	public int getParticleCount() {
+		return nParticles;
+	}
+
+/* Method: setParticleLocation(index, x, y) */
+/**
+ * Moves the specified particle to the point (<code>x</code>,&nbsp;<code>y</code>).
+ *
+ * @usage field.setParticleLocation(index, x, y);
+ * @param index The index of the particle
+ * @param x The new x-coordinate of the particle relative to the field
+ * @param y The new y-coordinate of the particle relative to the field
+ */
+	public void setParticleLocation(int index, double x, double y) {
+		synchronized (lock) {
+			checkIndex(index);
+			xs[index] = x;
+			ys[index] = y;
+			rasterValid = false;
+		}
+		repaint();
+	}
+
+/* Method: getParticleX(index) */
+/**
+ * Returns the x-coordinate of the specified particle relative to the field.
+ *
+ * @usage double x = field.getParticleX(index);
+ * @param index The index of the particle
+ * @return The x-coordinate of the particle
+ */
+	public double getParticleX(int index) {
+		checkIndex(index);
+		return xs[index];
+	}
+
+/* Method: getParticleY(index) */
+/**
+ * Returns the y-coordinate of the specified particle relative to the field.
+ *
+ * @usage double y = field.getParticleY(index);
+ * @param index The index of the particle
+ * @return The y-coordinate of the particle
+ */
+	public double getParticleY(int index) {
+		checkIndex(index);
+		return ys[index];
+	}
+
+/* Method: setParticleVelocity(index, vx, vy) */
+/**
+ * Sets the velocity of the specified particle.
+ *
+ * @usage field.setParticleVelocity(index, vx, vy);
+ * @param index The index of the particle
+ * @param vx The velocity in the x direction, in pixels per time unit
+ * @param vy The velocity in the y direction, in pixels per time unit
+ */
+	public void setParticleVelocity(int index, double vx, double vy) {
+		synchronized (lock) {
+			checkIndex(index);
+			vxs[index] = vx;
+			vys[index] = vy;
+		}
+	}
+
+/* Method: setParticleSize(index, size) */
+/**
+ * Sets the size of the specified particle.
+ *
+ * @usage field.setParticleSize(index, size);
+ * @param index The index of the particle
+ * @param size The width and height of the particle in pixels
+ */
+	public void setParticleSize(int index, double size) {
+		synchronized (lock) {
+			checkIndex(index);
+			sizes[index] = size;
+			rasterValid = false;
+		}
+		repaint();
+	}
+
+/* Method: setParticleColor(index, color) */
+/**
+ * Sets the color of the specified particle.
+ *
+ * @usage field.setParticleColor(index, color);
+ * @param index The index of the particle
+ * @param color The new color of the particle
+ */
+	public final void setParticleColor(int index, Color color) {
+		setParticleColor(index, color.getRGB());
+	}
+
+/* Method: setParticleColor(index, argb) */
+/**
+ * Sets the color of the specified particle to a packed ARGB value.
+ *
+ * @usage field.setParticleColor(index, argb);
+ * @param index The index of the particle
+ * @param argb The new color of the particle as a packed ARGB value
+ */
+	public void setParticleColor(int index, int argb) {
+		synchronized (lock) {
+			checkIndex(index);
+			colors[index] = argb;
+			rasterValid = false;
+		}
+		repaint();
+	}
+
+/* Method: getParticleColor(index) */
+/**
+ * Returns the color of the specified particle as a packed ARGB value.
+ *
+ * @usage int argb = field.getParticleColor(index);
+ * @param index The index of the particle
+ * @return The color of the particle as a packed ARGB value
+ */
+	public int getParticleColor(int index) {
+		checkIndex(index);
+		return colors[index];
+	}
+
+/* Method: setAcceleration(ax, ay) */
+/**
+ * Sets an acceleration, such as gravity, that <code>update</code> applies
+ * to every particle.
+ *
+ * @usage field.setAcceleration(ax, ay);
+ * @param ax The acceleration in the x direction
+ * @param ay The acceleration in the y direction
+ */
+	public void setAcceleration(double ax, double ay) {
+		accelX = ax;
+		accelY = ay;
+	}
+
+/* Method: setEdgeMode(mode) */
+/**
+ * Sets how <code>update</code> treats particles that reach the edge of the
+ * field, which must be one of the constants
+ * <a href="#EDGE_NONE"><code>EDGE_NONE</code></a>,
+ * <a href="#EDGE_WRAP"><code>EDGE_WRAP</code></a>, or
+ * <a href="#EDGE_BOUNCE"><code>EDGE_BOUNCE</code></a>.
+ *
+ * @usage field.setEdgeMode(mode);
+ * @param mode The edge behavior for the particles
+ */
+	public void setEdgeMode(int mode) {
+		switch (mode) {
+		  case EDGE_NONE: case EDGE_WRAP: case EDGE_BOUNCE:
+			edgeMode = mode;
+			break;
+		  default:
+			throw new ErrorException("Illegal edge mode");
+		}
+	}
+
+/* Method: getEdgeMode() */
+/**
+ * Returns the current edge mode.
+ *
+ * @usage int mode = field.getEdgeMode();
+ * @return The edge behavior for the particles
+ */
+	public int getEdgeMode() {
+		return edgeMode;
+	}
+
+/* Method: setParallel(flag) */
+/**
+ * Sets whether <code>update</code> may divide the work among several processors.
+ * Parallel updates are used only when the field contains enough particles to
+ * make the division worthwhile.  This option is enabled by default.
+ *
+ * @usage field.setParallel(flag);
+ * @param flag <code>true</code> to allow parallel updates
+ */
+	public void setParallel(boolean flag) {
+		parallel = flag;
+	}
+
+/* Method: isParallel() */
+/**
+ * Returns whether parallel updates are enabled.
+ *
+ * @usage if (field.isParallel()) . . .
+ * @return <code>true</code> if parallel updates are enabled
+ */
+	public boolean isParallel() {
+		return parallel;
+	}
+
+/* Method: update(dt) */
+/**
+ * Advances every particle by the time step <code>dt</code>, applying the
+ * acceleration and the edge mode.  This method triggers a single repaint
+ * no matter how many particles there are.
+ *
+ * @usage field.update(dt);
+ * @param dt The time step, measured in the same units as the velocities
+ */
+	public void update(double dt) {
+		synchronized (lock) {
+			if (parallel && nParticles >= PARALLEL_THRESHOLD) {
+				ForkJoinPool.commonPool().invoke(new ParticleUpdate(this, dt, 0, nParticles));
+			} else {
+				update(dt, 0, nParticles);
+			}
+			rasterValid = false;
+		}
+		repaint();
+	}
+
+/* Method: getXArray() */
+/**
+ * Returns the array that stores the x-coordinates of the particles.  Clients
+ * that need to change many particles at once can write into this array
+ * directly and then call <a href="#particlesChanged()"><code>particlesChanged</code></a>.
+ * Only the first <code>getParticleCount()</code> entries are meaningful, and
+ * the array is replaced whenever the field has to grow.
+ *
+ * @usage double[] xs = field.getXArray();
+ * @return The array of x-coordinates
+ */
+	public double[] getXArray() {
+		return xs;
+	}
+
+/* Method: getYArray() */
+/**
+ * Returns the array that stores the y-coordinates of the particles, subject to
+ * the same rules as <a href="#getXArray()"><code>getXArray</code></a>.
+ *
+ * @usage double[] ys = field.getYArray();
+ * @return The array of y-coordinates
+ */
+	public double[] getYArray() {
+		return ys;
+	}
+
+/* Method: getColorArray() */
+/**
+ * Returns the array that stores the packed ARGB colors of the particles, subject
+ * to the same rules as <a href="#getXArray()"><code>getXArray</code></a>.
+ *
+ * @usage int[] colors = field.getColorArray();
+ * @return The array of colors
+ */
+	public int[] getColorArray() {
+		return colors;
+	}
+
+/* Method: particlesChanged() */
+/**
+ * Signals that the arrays returned by <code>getXArray</code> and its relatives
+ * have been changed directly, so that the field must be redrawn.
+ *
+ * @usage field.particlesChanged();
+ */
+	public void particlesChanged() {
+		rasterValid = false;
+		repaint();
+	}
+
+/* Method: paint(g) */
+/**
+ * Implements the <code>paint</code> operation for this graphical object.  This method
+ * is not called directly by clients.
+ * @noshow
+ */
+	public void paint(Graphics g) {
+		synchronized (lock) {
+			if (!rasterValid) renderRaster();
+			if (raster != null) {
+				g.drawImage(raster, GMath.round(getX()), GMath.round(getY()), null);
+			}
+		}
+	}
+
+/* Method: setSize(width, height) */
+/**
+ * Changes the size of the field to the specified width and height.
+ *
+ * @usage field.setSize(width, height);
+ * @param width The new width of the field
+ * @param height The new height of the field
+ */
+	public void setSize(double width, double height) {
+		synchronized (lock) {
+			fieldWidth = width;
+			fieldHeight = height;
+			rasterValid = false;
+		}
+		repaint();
+	}
+
+/* Method: setSize(size) */
+/**
+ * Changes the size of the field to the specified <code>GDimension</code>.
+ *
+ * @usage field.setSize(size);
+ * @param size A <code>GDimension</code> object specifying the size
+ * @noshow
+ */
+	public final void setSize(GDimension size) {
+		setSize(size.getWidth(), size.getHeight());
+	}
+
+/* Method: getSize() */
+/**
+ * Returns the size of the field as a <code>GDimension</code>.
+ *
+ * @usage GDimension size = field.getSize();
+ * @return The size of the field
+ */
+	public GDimension getSize() {
+		return new GDimension(fieldWidth, fieldHeight);
+	}
+
+/* Method: setBounds(x, y, width, height) */
+/**
+ * Changes the bounds of the field to the specified values.
+ *
+ * @usage field.setBounds(x, y, width, height);
+ * @param x The new x-coordinate for the field
+ * @param y The new y-coordinate for the field
+ * @param width The new width of the field
+ * @param height The new height of the field
+ */
+	public void setBounds(double x, double y, double width, double height) {
+		synchronized (lock) {
+			fieldWidth = width;
+			fieldHeight = height;
+			rasterValid = false;
+		}
+		setLocation(x, y);
+	}
+
+/* Method: setBounds(bounds) */
+/**
+ * Changes the bounds of the field to the values from the specified
+ * <code>GRectangle</code>.
+ *
+ * @usage field.setBounds(bounds);
+ * @param bounds A <code>GRectangle</code> specifying the new bounds
+ */
+	public final void setBounds(GRectangle bounds) {
+		setBounds(bounds.getX(), bounds.getY(), bounds.getWidth(), bounds.getHeight());
+	}
+
+/* Method: getBounds() */
+/**
+ * Returns the bounding box of the field.
+ *
+ * @usage GRectangle bounds = field.getBounds();
+ * @return The bounding box for the field
+ */
+	public GRectangle getBounds() {
+		return new GRectangle(getX(), getY(), fieldWidth, fieldHeight);
+	}
+
+/* Package method: update(dt, start, end) */
+/**
+ * Advances the particles whose indices lie in the range
+ * <code>start</code> (inclusive) to <code>end</code> (exclusive).
+ */
+	void update(double dt, int start, int end) {
+		double dvx = accelX * dt;
+		double dvy = accelY * dt;
+		double w = fieldWidth;
+		double h = fieldHeight;
+		for (int i = start; i < end; i++) {
+			double vx = vxs[i] + dvx;
+			double vy = vys[i] + dvy;
+			double x = xs[i] + vx * dt;
+			double y = ys[i] + vy * dt;
+			if (edgeMode == EDGE_WRAP) {
+				if (w > 0 && (x < 0 || x >= w)) x -= Math.floor(x / w) * w;
+				if (h > 0 && (y < 0 || y >= h)) y -= Math.floor(y / h) * h;
+			} else if (edgeMode == EDGE_BOUNCE) {
+				if (x < 0) {
+					x = -x;
+					vx = -vx;
+				} else if (x > w) {
+					x = 2 * w - x;
+					vx = -vx;
+				}
+				if (y < 0) {
+					y = -y;
+					vy = -vy;
+				} else if (y > h) {
+					y = 2 * h - y;
+					vy = -vy;
+				}
+			}
+			xs[i] = x;
+			ys[i] = y;
+			vxs[i] = vx;
+			vys[i] = vy;
+		}
+	}
+
+/* Private method: renderRaster() */
+/**
+ * Draws every particle into the raster, reallocating it if the size of the
+ * field has changed.  Opaque particles are stored directly; translucent
+ * particles are blended with the pixels beneath them.
+ */
+	private void renderRaster() {
+		int w = (int) Math.ceil(fieldWidth);
+		int h = (int) Math.ceil(fieldHeight);
+		if (w <= 0 || h <= 0) {
+			raster = null;
+			rasterValid = true;
+			return;
+		}
+		if (raster == null || raster.getWidth() != w || raster.getHeight() != h) {
+			raster = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+			pixels = ((DataBufferInt) raster.getRaster().getDataBuffer()).getData();
+		}
+		Arrays.fill(pixels, 0);
+		for (int i = 0; i < nParticles; i++) {
+			int argb = colors[i];
+			int alpha = argb >>> 24;
+			if (alpha == 0) continue;
+			double size = sizes[i];
+			int x0, y0, x1, y1;
+			if (size <= 1) {
+				x0 = (int) Math.floor(xs[i]);
+				y0 = (int) Math.floor(ys[i]);
+				x1 = x0 + 1;
+				y1 = y0 + 1;
+			} else {
+				double half = size / 2;
+				x0 = GMath.round(xs[i] - half);
+				y0 = GMath.round(ys[i] - half);
+				x1 = GMath.round(xs[i] + half);
+				y1 = GMath.round(ys[i] + half);
+			}
+			if (x0 < 0) x0 = 0;
+			if (y0 < 0) y0 = 0;
+			if (x1 > w) x1 = w;
+			if (y1 > h) y1 = h;
+			for (int y = y0; y < y1; y++) {
+				int row = y * w;
+				for (int x = x0; x < x1; x++) {
+					pixels[row + x] = (alpha == 0xFF) ? argb : blend(argb, pixels[row + x]);
+				}
+			}
+		}
+		rasterValid = true;
+	}
+
+/* Private static method: blend(src, dst) */
+/**
+ * Composites the non-premultiplied ARGB color <code>src</code> over <code>dst</code>.
+ */
+	private static int blend(int src, int dst) {
+		int sa = src >>> 24;
+		int da = dst >>> 24;
+		int oa = sa + da * (255 - sa) / 255;
+		if (oa == 0) return 0;
+		int r = (((src >> 16) & 0xFF) * sa + ((dst >> 16) & 0xFF) * da * (255 - sa) / 255) / oa;
+		int g = (((src >> 8) & 0xFF) * sa + ((dst >> 8) & 0xFF) * da * (255 - sa) / 255) / oa;
+		int b = ((src & 0xFF) * sa + (dst & 0xFF) * da * (255 - sa) / 255) / oa;
+		return (oa << 24) | (r << 16) | (g << 8) | b;
+	}
+
+/* Private method: ensureCapacity(capacity) */
+/**
+ * Grows the particle arrays so that they can hold at least <code>capacity</code>
+ * particles.
+ */
+	private void ensureCapacity(int capacity) {
+		if (xs != null && xs.length >= capacity) return;
+		xs = grow(xs, capacity);
+		ys = grow(ys, capacity);
+		vxs = grow(vxs, capacity);
+		vys = grow(vys, capacity);
+		sizes = grow(sizes, capacity);
+		int[] newColors = new int[capacity];
+		if (colors != null) System.arraycopy(colors, 0, newColors, 0, nParticles);
+		colors = newColors;
+	}
+
+/* Private static method: grow(array, capacity) */
+/**
+ * Returns a copy of the array with the specified capacity.
+ */
+	private static double[] grow(double[] array, int capacity) {
+		double[] result = new double[capacity];
+		if (array != null) System.arraycopy(array, 0, result, 0, array.length);
+		return result;
+	}
+
+/* Private method: checkIndex(index) */
+/**
+ * Checks that the index refers to an existing particle.
+ */
+	private void checkIndex(int index) {
+		if (index < 0 || index >= nParticles) {
+			throw new ErrorException("Particle index " + index + " is out of range");
+		}
+	}
+
+/* Private constants */
+
+	private static final int INITIAL_CAPACITY = 64;
+	private static final int PARALLEL_THRESHOLD = 16384;
+
+/* Private state */
+
+	private Object lock;
+	private int nParticles;
+	private double[] xs;
+	private double[] ys;
+	private double[] vxs;
+	private double[] vys;
+	private double[] sizes;
+	private int[] colors;
+	private double fieldWidth;
+	private double fieldHeight;
+	private double accelX, accelY;
+	private int edgeMode;
+	private boolean parallel;
+	private BufferedImage raster;
+	private int[] pixels;
+	private boolean rasterValid;
+}
+
+/* Package class: ParticleUpdate */
+
+/**
+ * This class splits a call to <code>update</code> in <code>GParticleField</code>
+ * into tasks that can be run in parallel by a <code>ForkJoinPool</code>.
+ */
+class ParticleUpdate extends RecursiveAction {
+
+/* Constructor: ParticleUpdate(field, dt, start, end) */
+/**
+ * Creates a task that updates the particles between <code>start</code>
+ * (inclusive) and <code>end</code> (exclusive).
+ */
+	public ParticleUpdate(GParticleField field, double dt, int start, int end) {
+		this.field = field;
+		this.dt = dt;
+		this.start = start;
+		this.end = end;
+	}
+
+/* Method: compute() */
+/**
+ * Updates the particles directly if the range is small enough, and otherwise
+ * divides the range in half.
+ */
+	protected void compute() {
+		if (end - start <= CHUNK_SIZE) {
+			field.update(dt, start, end);
+		} else {
+			int mid = (start + end) >>> 1;
+			invokeAll(new ParticleUpdate(field, dt, start, mid),
+			          new ParticleUpdate(field, dt, mid, end));
+		}
+	}
+
+/* Private constants */
+
+	private static final int CHUNK_SIZE = 8192;
+	private static final long serialVersionUID = 1L;
+
+/* Private state */
+
+	private GParticleField field;
+	private double dt;
+	private int start;
+	private int end;
+}
@@ -0,0 +1,635 @@
+/*
+ * @(#)GPixelFilter.java   1.0 06/08/25
+ */
+
+// ************************************************************************
+// * Copyright (c) 2006 by the Association for Computing Machinery        *
+// *                                                                      *
+// * The Java Task Force seeks to impose few restrictions on the use of   *
+// * these packages so that users have as much freedom as possible to     *
+// * use this software in constructive ways and can make the benefits of  *
+// * that work available to others.  In view of the legal complexities    *
+// * of software development, however, it is essential for the ACM to     *
+// * maintain its copyright to guard against attempts by others to        *
+// * claim ownership rights.  The full text of the JTF Software License   *
+// * is available at the following URL:                                   *
+// *                                                                      *
+// *          http://www.acm.org/jtf/jtf-software-license.pdf             *
+// *                                                                      *
+// ************************************************************************
+
+package acm.graphics;
+
+import acm.util.ErrorException;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/* Abstract class: GPixelFilter */
+
+/**
+ * This class is the common superclass of image filters that operate on
+ * arrays of packed ARGB pixels, such as the one returned by
+ * <a href="GImage.html#getPixelArray()"><code>GImage.getPixelArray</code></a>.
+ * The static factory methods in this class create the standard filters,
+ * and <a href="#createPipeline(acm.graphics.GPixelFilter[])"><code>createPipeline</code></a>
+ * combines several filters into one.  The usual way to use a filter is to
+ * call <a href="GImage.html#applyFilter(acm.graphics.GPixelFilter)"><code>applyFilter</code></a>
+ * on a <code>GImage</code>.
+ *
+ * <p>The <a href="#apply(int[], int, int, int, int, int, int)"><code>apply</code></a>
+ * method divides the region being filtered into tiles and, for large regions,
+ * processes the tiles in parallel using the common <code>ForkJoinPool</code>.
+ * Subclasses implement only <code>filter</code>, which processes a single tile.
+ */
+public abstract class GPixelFilter {
+
+/* Method: filter(src, dst, width, height, x0, y0, x1, y1) */
+/**
+ * Computes the filtered pixels of the tile that extends from
+ * (<code>x0</code>,&nbsp;<code>y0</code>) up to but not including
+ * (<code>x1</code>,&nbsp;<code>y1</code>), reading from <code>src</code> and
+ * writing into <code>dst</code>.  Both arrays hold an image of the given
+ * width and height in row-major order.  Filters for which
+ * <a href="#isPointFilter()"><code>isPointFilter</code></a> returns
+ * <code>true</code> may be called with the same array for both
+ * <code>src</code> and <code>dst</code>.
+ *
+ * @usage filter.filter(src, dst, width, height, x0, y0, x1, y1);
+ * @param src The source pixels
+ * @param dst The destination pixels
+ * @param width The width of the image
+ * @param height The height of the image
+ * @param x0 The first column of the tile
+ * @param y0 The first row of the tile
+ * @param x1 The column just past the tile
+ * @param y1 The row just past the tile
+ */
+	public abstract void filter(int[] src, int[] dst, int width, int height,
+	                            int x0, int y0, int x1, int y1);
+
+/* Method: isPointFilter() */
+/**
+ * Returns <code>true</code> if each output pixel depends only on the input
+ * pixel at the same position, so that the filter can work in place.  The
+ * default implementation returns <code>false</code>.
+ *
+ * @usage if (filter.isPointFilter()) . . .
+ * @return <code>true</code> if this filter can be applied in place
+ */
+	public boolean isPointFilter() {
+		return false;
+	}
+
+/* Method: getMargin() */
+/**
+ * Returns the number of pixels beyond the edge of a tile that this filter
+ * reads, which determines how much of the image must be copied when the
+ * filter is applied to part of it.  The default implementation returns 0
+ * for point filters and, since it cannot know what other filters read,
+ * <code>Integer.MAX_VALUE</code> otherwise, which causes the entire image
+ * to be copied.
+ *
+ * @usage int margin = filter.getMargin();
+ * @return The number of pixels read beyond each edge of a tile
+ */
+	public int getMargin() {
+		return (isPointFilter()) ? 0 : Integer.MAX_VALUE;
+	}
+
+/* Method: apply(pixels, width, height, x, y, w, h) */
+/**
+ * Applies this filter to the specified rectangle of the pixel array, leaving
+ * the pixels outside the rectangle unchanged.  Filters that are not point
+ * filters read from a copy of the rectangle and the margin around it.
+ *
+ * @usage filter.apply(pixels, width, height, x, y, w, h);
+ * @param pixels The pixel array, which is modified in place
+ * @param width The width of the image
+ * @param height The height of the image
+ * @param x The first column of the region
+ * @param y The first row of the region
+ * @param w The width of the region
+ * @param h The height of the region
+ */
+	public void apply(int[] pixels, int width, int height, int x, int y, int w, int h) {
+		int x0 = Math.max(0, x);
+		int y0 = Math.max(0, y);
+		int x1 = Math.min(width, x + w);
+		int y1 = Math.min(height, y + h);
+		if (x0 >= x1 || y0 >= y1) return;
+		GPixelFilter[] stages = { this };
+		applyStages(stages, pixels, width, height, x0, y0, x1, y1);
+	}
+
+/* Static method: createConvolution(kernel, kernelWidth, kernelHeight) */
+/**
+ * Creates a filter that convolves each color channel with the specified
+ * kernel, which is stored in row-major order and centered on the pixel
+ * being computed.  Pixels beyond the edge of the image are taken from the
+ * nearest edge pixel.  The alpha channel is left unchanged.
+ *
+ * @usage GPixelFilter filter = GPixelFilter.createConvolution(kernel, kernelWidth, kernelHeight);
+ * @param kernel The kernel weights
+ * @param kernelWidth The width of the kernel, which must be odd
+ * @param kernelHeight The height of the kernel, which must be odd
+ * @return A convolution filter
+ */
+	public static GPixelFilter createConvolution(double[] kernel, int kernelWidth, int kernelHeight) {
+		if (kernelWidth % 2 == 0 || kernelHeight % 2 == 0) {
+			throw new ErrorException("Kernel dimensions must be odd");
+		}
+		if (kernel.length != kernelWidth * kernelHeight) {
+			throw new ErrorException("Kernel array has the wrong size");
+		}
+		return new ConvolutionFilter(kernel, kernelWidth, kernelHeight);
+	}
+
+/* Static method: createBlur(radius) */
+/**
+ * Creates a filter that replaces each pixel by the average of the square of
+ * pixels that extends <code>radius</code> pixels in each direction.
+ *
+ * @usage GPixelFilter filter = GPixelFilter.createBlur(radius);
+ * @param radius The radius of the blur
+ * @return A blur filter
+ */
+	public static GPixelFilter createBlur(int radius) {
+		int size = 2 * radius + 1;
+		double[] kernel = new double[size * size];
+		for (int i = 0; i < kernel.length; i++) {
+			kernel[i] = 1.0 / kernel.length;
+		}
+		return createConvolution(kernel, size, size);
+	}
+
+/* Static method: createColorMatrix(matrix) */
+/**
+ * Creates a filter that transforms the color of each pixel using a 4x5
+ * matrix stored in row-major order.  The rows compute the red, green, blue,
+ * and alpha components of the result from the vector
+ * (<i>r</i>,&nbsp;<i>g</i>,&nbsp;<i>b</i>,&nbsp;<i>a</i>,&nbsp;1) of the
+ * original components, each of which ranges from 0 to 255.
+ *
+ * @usage GPixelFilter filter = GPixelFilter.createColorMatrix(matrix);
+ * @param matrix The 20 entries of the color matrix
+ * @return A color-matrix filter
+ */
+	public static GPixelFilter createColorMatrix(double[] matrix) {
+		if (matrix.length != 20) {
+			throw new ErrorException("Color matrix must have 20 entries");
+		}
+		return new ColorMatrixFilter(matrix);
+	}
+
+/* Static method: createGrayscale() */
+/**
+ * Creates a filter that converts each pixel to the gray level with the
+ * same luminance.
+ *
+ * @usage GPixelFilter filter = GPixelFilter.createGrayscale();
+ * @return A grayscale filter
+ */
+	public static GPixelFilter createGrayscale() {
+		double[] matrix = {
+			RED_WEIGHT, GREEN_WEIGHT, BLUE_WEIGHT, 0, 0,
+			RED_WEIGHT, GREEN_WEIGHT, BLUE_WEIGHT, 0, 0,
+			RED_WEIGHT, GREEN_WEIGHT, BLUE_WEIGHT, 0, 0,
+			0, 0, 0, 1, 0
+		};
+		return new ColorMatrixFilter(matrix);
+	}
+
+/* Static method: createThreshold(level, below, above) */
+/**
+ * Creates a filter that replaces each pixel whose luminance is less than
+ * <code>level</code> with the color <code>below</code> and every other pixel
+ * with the color <code>above</code>.  Both colors are packed ARGB values.
+ *
+ * @usage GPixelFilter filter = GPixelFilter.createThreshold(level, below, above);
+ * @param level The threshold luminance between 0 and 255
+ * @param below The color for pixels darker than the threshold
+ * @param above The color for the other pixels
+ * @return A threshold filter
+ */
+	public static GPixelFilter createThreshold(int level, int below, int above) {
+		return new ThresholdFilter(level, below, above);
+	}
+
+/* Static method: createPipeline(filters) */
+/**
+ * Creates a filter that applies each of the filters in the array in turn.
+ * Each stage runs over the whole region, in parallel where possible, before
+ * the next stage begins.
+ *
+ * @usage GPixelFilter filter = GPixelFilter.createPipeline(filters);
+ * @param filters The filters to apply, in order
+ * @return A filter that applies all the stages
+ */
+	public static GPixelFilter createPipeline(GPixelFilter[] filters) {
+		return new PipelineFilter(filters.clone());
+	}
+
+/* Static method: resize(pixels, width, height, newWidth, newHeight) */
+/**
+ * Returns a new pixel array containing the image resampled to the new size
+ * by bilinear interpolation.  Large images are resampled in parallel.
+ *
+ * @usage int[] result = GPixelFilter.resize(pixels, width, height, newWidth, newHeight);
+ * @param pixels The original pixels
+ * @param width The width of the original image
+ * @param height The height of the original image
+ * @param newWidth The width of the result
+ * @param newHeight The height of the result
+ * @return The resampled pixels
+ */
+	public static int[] resize(int[] pixels, int width, int height, int newWidth, int newHeight) {
+		if (newWidth <= 0 || newHeight <= 0) {
+			throw new ErrorException("Image dimensions must be positive");
+		}
+		int[] result = new int[newWidth * newHeight];
+		GPixelFilter resampler = new ResizeFilter(pixels, width, height, newWidth, newHeight);
+		if ((long) newWidth * newHeight <= PARALLEL_THRESHOLD) {
+			resampler.filter(pixels, result, newWidth, newHeight, 0, 0, newWidth, newHeight);
+		} else {
+			ForkJoinPool.commonPool().invoke(new FilterTask(resampler, pixels, result, newWidth,
+			                                                newHeight, 0, 0, newWidth, newHeight));
+		}
+		return result;
+	}
+
+/* Package static method: applyStages(stages, pixels, width, height, x0, y0, x1, y1) */
+/**
+ * Applies each filter in turn to the rectangle from (<code>x0</code>,&nbsp;<code>y0</code>)
+ * up to but not including (<code>x1</code>,&nbsp;<code>y1</code>), which must lie
+ * inside the image.  If every stage is a point filter, the stages work
+ * directly on the pixel array.  Otherwise, the rectangle and the widest
+ * margin needed by any stage are copied into a scratch buffer, and the
+ * stages alternate between that buffer and a second one.  Pixels outside
+ * the rectangle keep their original values in both buffers, so that each
+ * stage sees the same surroundings as if it had been applied by itself.
+ */
+	static void applyStages(GPixelFilter[] stages, int[] pixels, int width, int height,
+	                        int x0, int y0, int x1, int y1) {
+		int margin = 0;
+		for (int i = 0; i < stages.length; i++) {
+			if (!stages[i].isPointFilter()) margin = Math.max(margin, stages[i].getMargin());
+		}
+		if (margin == 0) {
+			for (int i = 0; i < stages.length; i++) {
+				runFilter(stages[i], pixels, pixels, width, height, x0, y0, x1, y1);
+			}
+			return;
+		}
+		margin = Math.min(margin, Math.max(width, height));
+		int sx0 = Math.max(0, x0 - margin);
+		int sy0 = Math.max(0, y0 - margin);
+		int sw = Math.min(width, x1 + margin) - sx0;
+		int sh = Math.min(height, y1 + margin) - sy0;
+		int[] current = new int[sw * sh];
+		for (int y = 0; y < sh; y++) {
+			System.arraycopy(pixels, (sy0 + y) * width + sx0, current, y * sw, sw);
+		}
+		int[] next = null;
+		int rx0 = x0 - sx0;
+		int ry0 = y0 - sy0;
+		int rx1 = x1 - sx0;
+		int ry1 = y1 - sy0;
+		for (int i = 0; i < stages.length; i++) {
+			GPixelFilter stage = stages[i];
+			if (stage.isPointFilter()) {
+				runFilter(stage, current, current, sw, sh, rx0, ry0, rx1, ry1);
+			} else {
+				if (next == null) next = current.clone();
+				runFilter(stage, current, next, sw, sh, rx0, ry0, rx1, ry1);
+				int[] tmp = current;
+				current = next;
+				next = tmp;
+			}
+		}
+		for (int y = ry0; y < ry1; y++) {
+			System.arraycopy(current, y * sw + rx0, pixels, (sy0 + y) * width + x0, x1 - x0);
+		}
+	}
+
+/* Private static method: runFilter(filter, src, dst, width, height, x0, y0, x1, y1) */
+/**
+ * Runs a filter over a rectangle, dividing large rectangles into tiles that
+ * are processed in parallel.
+ */
+	private static void runFilter(GPixelFilter filter, int[] src, int[] dst, int width, int height,
+	                              int x0, int y0, int x1, int y1) {
+		if ((long) (x1 - x0) * (y1 - y0) <= PARALLEL_THRESHOLD) {
+			filter.filter(src, dst, width, height, x0, y0, x1, y1);
+		} else {
+			ForkJoinPool.commonPool().invoke(new FilterTask(filter, src, dst, width, height,
+			                                                x0, y0, x1, y1));
+		}
+	}
+
+/* Protected static method: clamp(value) */
+/**
+ * Rounds <code>value</code> and restricts it to the range 0 to 255.
+ * @noshow
+ */
+	protected static int clamp(double value) {
+		if (value <= 0) return 0;
+		if (value >= 255) return 255;
+		return (int) (value + 0.5);
+	}
+
+/* Protected static method: luminance(argb) */
+/**
+ * Returns the luminance of the color, which ranges from 0 to 255.
+ * @noshow
+ */
+	protected static double luminance(int argb) {
+		return RED_WEIGHT * ((argb >> 16) & 0xFF) + GREEN_WEIGHT * ((argb >> 8) & 0xFF)
+		       + BLUE_WEIGHT * (argb & 0xFF);
+	}
+
+/* Package constants */
+
+	static final int TILE_SIZE = 128;
+	static final int PARALLEL_THRESHOLD = 128 * 128;
+
+/* Private constants */
+
+	private static final double RED_WEIGHT = 0.299;
+	private static final double GREEN_WEIGHT = 0.587;
+	private static final double BLUE_WEIGHT = 0.114;
+}
+
+/* Package class: FilterTask */
+
+/**
+ * This class divides the region processed by a filter into tiles that can be
+ * run in parallel by a <code>ForkJoinPool</code>.
+ */
+class FilterTask extends RecursiveAction {
+
+	public FilterTask(GPixelFilter filter, int[] src, int[] dst, int width, int height,
+	                  int x0, int y0, int x1, int y1) {
+		this.filter = filter;
+		this.src = src;
+		this.dst = dst;
+		this.width = width;
+		this.height = height;
+		this.x0 = x0;
+		this.y0 = y0;
+		this.x1 = x1;
+		this.y1 = y1;
+	}
+
+	protected void compute() {
+		int w = x1 - x0;
+		int h = y1 - y0;
+		if (w <= GPixelFilter.TILE_SIZE && h <= GPixelFilter.TILE_SIZE) {
+			filter.filter(src, dst, width, height, x0, y0, x1, y1);
+		} else if (w > h) {
+			int mid = x0 + w / 2;
+			invokeAll(new FilterTask(filter, src, dst, width, height, x0, y0, mid, y1),
+			          new FilterTask(filter, src, dst, width, height, mid, y0, x1, y1));
+		} else {
+			int mid = y0 + h / 2;
+			invokeAll(new FilterTask(filter, src, dst, width, height, x0, y0, x1, mid),
+			          new FilterTask(filter, src, dst, width, height, x0, mid, x1, y1));
+		}
+	}
+
+	private static final long serialVersionUID = 1L;
+
+	private GPixelFilter filter;
+	private int[] src;
+	private int[] dst;
+	private int width, height;
+	private int x0, y0, x1, y1;
+}
+
+/* Package class: ConvolutionFilter */
+
+/**
+ * This class implements the filter returned by <code>createConvolution</code>.
+ */
+class ConvolutionFilter extends GPixelFilter {
+
+	public ConvolutionFilter(double[] kernel, int kernelWidth, int kernelHeight) {
+		this.kernel = kernel.clone();
+		this.kernelWidth = kernelWidth;
+		this.kernelHeight = kernelHeight;
+	}
+
+	public void filter(int[] src, int[] dst, int width, int height, int x0, int y0, int x1, int y1) {
+		int kx = kernelWidth / 2;
+		int ky = kernelHeight / 2;
+		for (int y = y0; y < y1; y++) {
+			for (int x = x0; x < x1; x++) {
+				double r = 0;
+				double g = 0;
+				double b = 0;
+				int k = 0;
+				for (int j = -ky; j <= ky; j++) {
+					int row = Math.min(height - 1, Math.max(0, y + j)) * width;
+					for (int i = -kx; i <= kx; i++) {
+						int argb = src[row + Math.min(width - 1, Math.max(0, x + i))];
+						double weight = kernel[k++];
+						r += weight * ((argb >> 16) & 0xFF);
+						g += weight * ((argb >> 8) & 0xFF);
+						b += weight * (argb & 0xFF);
+					}
+				}
+				int index = y * width + x;
+				dst[index] = (src[index] & 0xFF000000) | (clamp(r) << 16) | (clamp(g) << 8) | clamp(b);
+			}
+		}
+	}
+
+	public int getMargin() {
+		return Math.max(kernelWidth, kernelHeight) / 2;
+	}
+
+	private double[] kernel;
+	private int kernelWidth;
+	private int kernelHeight;
+}
+
+/* Package class: ColorMatrixFilter */
+
+/**
+ * This class implements the filter returned by <code>createColorMatrix</code>.
+ */
+class ColorMatrixFilter extends GPixelFilter {
+
+	public ColorMatrixFilter(double[] matrix) {
+		m = matrix.clone();
+	}
+
+	public boolean isPointFilter() {
+		return true;
+	}
+
+	public void filter(int[] src, int[] dst, int width, int height, int x0, int y0, int x1, int y1) {
+		for (int y = y0; y < y1; y++) {
+			int row = y * width;
+			for (int x = x0; x < x1; x++) {
+				int argb = src[row + x];
+				int a = argb >>> 24;
+				int r = (argb >> 16) & 0xFF;
+				int g = (argb >> 8) & 0xFF;
+				int b = argb & 0xFF;
+				int nr = clamp(m[0] * r + m[1] * g + m[2] * b + m[3] * a + m[4]);
+				int ng = clamp(m[5] * r + m[6] * g + m[7] * b + m[8] * a + m[9]);
+				int nb = clamp(m[10] * r + m[11] * g + m[12] * b + m[13] * a + m[14]);
+				int na = clamp(m[15] * r + m[16] * g + m[17] * b + m[18] * a + m[19]);
+				dst[row + x] = (na << 24) | (nr << 16) | (ng << 8) | nb;
+			}
+		}
+	}
+
+	private double[] m;
+}
+
+/* Package class: ThresholdFilter */
+
+/**
+ * This class implements the filter returned by <code>createThreshold</code>.
+ */
+class ThresholdFilter extends GPixelFilter {
+
+	public ThresholdFilter(int level, int below, int above) {
+		this.level = level;
+		this.below = below;
+		this.above = above;
+	}
+
+	public boolean isPointFilter() {
+		return true;
+	}
+
+	public void filter(int[] src, int[] dst, int width, int height, int x0, int y0, int x1, int y1) {
+		for (int y = y0; y < y1; y++) {
+			int row = y * width;
+			for (int x = x0; x < x1; x++) {
+				dst[row + x] = (luminance(src[row + x]) < level) ? below : above;
+			}
+		}
+	}
+
+	private int level;
+	private int below;
+	private int above;
+}
+
+/* Package class: PipelineFilter */
+
+/**
+ * This class implements the filter returned by <code>createPipeline</code>.
+ */
+class PipelineFilter extends GPixelFilter {
+
+	public PipelineFilter(GPixelFilter[] stages) {
+		this.stages = stages;
+	}
+
+	public boolean isPointFilter() {
+		for (int i = 0; i < stages.length; i++) {
+			if (!stages[i].isPointFilter()) return false;
+		}
+		return true;
+	}
+
+	public int getMargin() {
+		int margin = 0;
+		for (int i = 0; i < stages.length; i++) {
+			margin = Math.max(margin, stages[i].getMargin());
+		}
+		return margin;
+	}
+
+	public void apply(int[] pixels, int width, int height, int x, int y, int w, int h) {
+		int x0 = Math.max(0, x);
+		int y0 = Math.max(0, y);
+		int x1 = Math.min(width, x + w);
+		int y1 = Math.min(height, y + h);
+		if (x0 >= x1 || y0 >= y1) return;
+		applyStages(stages, pixels, width, height, x0, y0, x1, y1);
+	}
+
+	public void filter(int[] src, int[] dst, int width, int height, int x0, int y0, int x1, int y1) {
+		if (src != dst) {
+			for (int y = y0; y < y1; y++) {
+				System.arraycopy(src, y * width + x0, dst, y * width + x0, x1 - x0);
+			}
+		}
+		int[] current = dst;
+		int[] next = null;
+		for (int i = 0; i < stages.length; i++) {
+			if (stages[i].isPointFilter()) {
+				stages[i].filter(current, current, width, height, x0, y0, x1, y1);
+			} else {
+				if (next == null) next = dst.clone();
+				stages[i].filter(current, next, width, height, x0, y0, x1, y1);
+				int[] tmp = current;
+				current = next;
+				next = tmp;
+			}
+		}
+		if (current != dst) {
+			for (int y = y0; y < y1; y++) {
+				System.arraycopy(current, y * width + x0, dst, y * width + x0, x1 - x0);
+			}
+		}
+	}
+
+	private GPixelFilter[] stages;
+}
+
+/* Package class: ResizeFilter */
+
+/**
+ * This class computes the rows of a resized image.  The source image is
+ * supplied to the constructor, and <code>filter</code> fills in a tile of
+ * the result.
+ */
+class ResizeFilter extends GPixelFilter {
+
+	public ResizeFilter(int[] pixels, int width, int height, int newWidth, int newHeight) {
+		this.pixels = pixels;
+		srcWidth = width;
+		srcHeight = height;
+		xRatio = (double) width / newWidth;
+		yRatio = (double) height / newHeight;
+	}
+
+	public void filter(int[] src, int[] dst, int width, int height, int x0, int y0, int x1, int y1) {
+		for (int y = y0; y < y1; y++) {
+			double sy = Math.max(0, (y + 0.5) * yRatio - 0.5);
+			int iy = Math.min(srcHeight - 1, (int) sy);
+			int iy1 = Math.min(srcHeight - 1, iy + 1);
+			double fy = sy - iy;
+			for (int x = x0; x < x1; x++) {
+				double sx = Math.max(0, (x + 0.5) * xRatio - 0.5);
+				int ix = Math.min(srcWidth - 1, (int) sx);
+				int ix1 = Math.min(srcWidth - 1, ix + 1);
+				double fx = sx - ix;
+				int p00 = pixels[iy * srcWidth + ix];
+				int p01 = pixels[iy * srcWidth + ix1];
+				int p10 = pixels[iy1 * srcWidth + ix];
+				int p11 = pixels[iy1 * srcWidth + ix1];
+				int result = 0;
+				for (int shift = 0; shift < 32; shift += 8) {
+					double top = ((p00 >>> shift) & 0xFF) * (1 - fx) + ((p01 >>> shift) & 0xFF) * fx;
+					double bottom = ((p10 >>> shift) & 0xFF) * (1 - fx) + ((p11 >>> shift) & 0xFF) * fx;
+					result |= clamp(top * (1 - fy) + bottom * fy) << shift;
+				}
+				dst[y * width + x] = result;
+			}
+		}
+	}
+
+	private int[] pixels;
+	private int srcWidth;
+	private int srcHeight;
+	private double xRatio;
+	private double yRatio;
+}
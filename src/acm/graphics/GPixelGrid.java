@@ -0,0 +1,422 @@
+/*
+ * @(#)GPixelGrid.java   1.0 06/08/25
+ */
+
+// ************************************************************************
+// * Copyright (c) 2006 by the Association for Computing Machinery        *
+// *                                                                      *
+// * The Java Task Force seeks to impose few restrictions on the use of   *
+// * these packages so that users have as much freedom as possible to     *
+// * use this software in constructive ways and can make the benefits of  *
+// * that work available to others.  In view of the legal complexities    *
+// * of software development, however, it is essential for the ACM to     *
+// * maintain its copyright to guard against attempts by others to        *
+// * claim ownership rights.  The full text of the JTF Software License   *
+// * is available at the following URL:                                   *
+// *                                                                      *
+// *          http://www.acm.org/jtf/jtf-software-license.pdf             *
+// *                                                                      *
+// ************************************************************************
+
+package acm.graphics;
+
+import acm.util.ErrorException;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+
+/* Class: GPixelGrid */
+
+/**
+ * The <code>GPixelGrid</code> class is a graphical object that displays a
+ * rectangular grid of colored cells stored as the pixels of a
+ * <code>BufferedImage</code>.  Programs such as cellular automata can write
+ * directly into the array returned by
+ * <a href="#getPixelArray()"><code>getPixelArray</code></a>, which holds one
+ * packed ARGB value per cell in row-major order, without creating any objects.
+ * Because the array is the storage of the image itself, nothing is copied
+ * when the grid is painted.
+ *
+ * <p>Changes made directly to the array do not trigger a repaint on their own.
+ * After changing the array, a program calls one of the <code>markDirty</code>
+ * methods to say which cells changed, and the canvas redraws only that part
+ * of the screen.  Each cell can be displayed as a block of several pixels by
+ * setting the cell size, so that small grids remain visible.
+ */
+public class GPixelGrid extends GObject implements GResizable, GScalable {
+
+/* Constructor: GPixelGrid(nRows, nColumns) */
+/**
+ * Creates a new pixel grid with the specified number of rows and columns, in
+ * which each cell is displayed as a single pixel.  All cells are initially
+ * transparent.  As in <code>GTileMap</code>, rows come before columns in
+ * every method of this class.
+ *
+ * @usage GPixelGrid grid = new GPixelGrid(nRows, nColumns);
+ * @param nRows The number of rows in the grid
+ * @param nColumns The number of columns in the grid
+ */
+	public GPixelGrid(int nRows, int nColumns) {
+		this(nRows, nColumns, 1);
+	}
+
+/* Constructor: GPixelGrid(nRows, nColumns, cellSize) */
+/**
+ * Creates a new pixel grid in which each cell is displayed as a square block
+ * of the specified size.
+ *
+ * @usage GPixelGrid grid = new GPixelGrid(nRows, nColumns, cellSize);
+ * @param nRows The number of rows in the grid
+ * @param nColumns The number of columns in the grid
+ * @param cellSize The width and height of each cell on the screen
+ */
+	public GPixelGrid(int nRows, int nColumns, double cellSize) {
+		if (nColumns <= 0 || nRows <= 0) {
+			throw new ErrorException("Pixel grid dimensions must be positive");
+		}
+		this.nColumns = nColumns;
+		this.nRows = nRows;
+		cellWidth = cellSize;
+		cellHeight = cellSize;
+		image = new BufferedImage(nColumns, nRows, BufferedImage.TYPE_INT_ARGB);
+		pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+	}
+
+/* Method: getPixelArray() */
+/**
+ * Returns the array that holds the pixels of the grid.  The color of the cell
+ * in row <code>r</code> and column <code>c</code> is stored as a packed ARGB
+ * value at index <code>r * getColumnCount() + c</code>.  After writing into
+ * this array, call one of the <code>markDirty</code> methods so that the
+ * display is updated.
+ *
+ * @usage int[] pixels = grid.getPixelArray();
+ * @return The array of pixels
+ */
+	public int[] getPixelArray() {
+		return pixels;
+	}
+
+/* Method: getImage() */
+/**
+ * Returns the image that stores the pixels of the grid.
+ *
+ * @usage BufferedImage image = grid.getImage();
+ * @return The image backing this grid
+ */
+	public BufferedImage getImage() {
+		return image;
+	}
+
+/* Method: getColumnCount() */
+/**
+ * Returns the number of columns in the grid.
+ *
+ * @usage int nColumns = grid.getColumnCount();
+ * @return The number of columns
+ */
+	public int getColumnCount() {
+		return nColumns;
+	}
+
+/* Method: getRowCount() */
+/**
+ * Returns the number of rows in the grid.
+ *
+ * @usage int nRows = grid.getRowCount();
+ * @return The number of rows
+ */
+	public int getRowCount() {
+		return nRows;
+	}
+
+/* Method: setPixel(row, col, argb) */
+/**
+ * Sets the color of a single cell and repaints that cell.
+ *
+ * @usage grid.setPixel(row, col, argb);
+ * @param row The row of the cell
+ * @param col The column of the cell
+ * @param argb The new color as a packed ARGB value
+ */
+	public void setPixel(int row, int col, int argb) {
+		checkCell(row, col);
+		pixels[row * nColumns + col] = argb;
+		markDirty(row, col, 1, 1);
+	}
+
+/* Method: getPixel(row, col) */
+/**
+ * Returns the color of a single cell as a packed ARGB value.
+ *
+ * @usage int argb = grid.getPixel(row, col);
+ * @param row The row of the cell
+ * @param col The column of the cell
+ * @return The color of the cell
+ */
+	public int getPixel(int row, int col) {
+		checkCell(row, col);
+		return pixels[row * nColumns + col];
+	}
+
+/* Method: fill(argb) */
+/**
+ * Sets every cell to the specified color.
+ *
+ * @usage grid.fill(argb);
+ * @param argb The color as a packed ARGB value
+ */
+	public void fill(int argb) {
+		Arrays.fill(pixels, argb);
+		markAllDirty();
+	}
+
+/* Method: markDirty(row, col, rows, columns) */
+/**
+ * Signals that the cells in the specified block have changed, so that
+ * the corresponding area of the screen must be redrawn.
+ *
+ * @usage grid.markDirty(row, col, rows, columns);
+ * @param row The first row that changed
+ * @param col The first column that changed
+ * @param rows The number of rows that changed
+ * @param columns The number of columns that changed
+ */
+	public void markDirty(int row, int col, int rows, int columns) {
+		if (rows <= 0 || columns <= 0) return;
+		repaint(getX() + col * cellWidth, getY() + row * cellHeight,
+		        columns * cellWidth, rows * cellHeight);
+	}
+
+/* Method: markRowsDirty(firstRow, lastRow) */
+/**
+ * Signals that every cell in the rows between <code>firstRow</code> and
+ * <code>lastRow</code>, inclusive, has changed.
+ *
+ * @usage grid.markRowsDirty(firstRow, lastRow);
+ * @param firstRow The first row that changed
+ * @param lastRow The last row that changed
+ */
+	public void markRowsDirty(int firstRow, int lastRow) {
+		markDirty(firstRow, 0, lastRow - firstRow + 1, nColumns);
+	}
+
+/* Method: markAllDirty() */
+/**
+ * Signals that any cell in the grid may have changed.
+ *
+ * @usage grid.markAllDirty();
+ */
+	public void markAllDirty() {
+		markDirty(0, 0, nRows, nColumns);
+	}
+
+/* Method: setCellSize(width, height) */
+/**
+ * Sets the size at which each cell is displayed.
+ *
+ * @usage grid.setCellSize(width, height);
+ * @param width The width of each cell on the screen
+ * @param height The height of each cell on the screen
+ */
+	public void setCellSize(double width, double height) {
+		cellWidth = width;
+		cellHeight = height;
+		repaint();
+	}
+
+/* Method: getCellWidth() */
+/**
+ * Returns the width at which each cell is displayed.
+ *
+ * @usage double width = grid.getCellWidth();
+ * @return The width of each cell on the screen
+ */
+	public double getCellWidth() {
+		return cellWidth;
+	}
+
+/* Method: getCellHeight() */
+/**
+ * Returns the height at which each cell is displayed.
+ *
+ * @usage double height = grid.getCellHeight();
+ * @return The height of each cell on the screen
+ */
+	public double getCellHeight() {
+		return cellHeight;
+	}
+
+/* Method: getColumnAt(x) */
+/**
+ * Returns the column displayed at the specified x-coordinate, which is
+ * expressed in the coordinates of the enclosing container.  The result
+ * may lie outside the grid.
+ *
+ * @usage int col = grid.getColumnAt(x);
+ * @param x The x-coordinate
+ * @return The column at that coordinate
+ */
+	public int getColumnAt(double x) {
+		return (int) Math.floor((x - getX()) / cellWidth);
+	}
+
+/* Method: getRowAt(y) */
+/**
+ * Returns the row displayed at the specified y-coordinate, which is
+ * expressed in the coordinates of the enclosing container.  The result
+ * may lie outside the grid.
+ *
+ * @usage int row = grid.getRowAt(y);
+ * @param y The y-coordinate
+ * @return The row at that coordinate
+ */
+	public int getRowAt(double y) {
+		return (int) Math.floor((y - getY()) / cellHeight);
+	}
+
+/* Method: paint(g) */
+/**
+ * Implements the <code>paint</code> operation for this graphical object.  This method
+ * is not called directly by clients.
+ * @noshow
+ */
+	public void paint(Graphics g) {
+		Rectangle r = getAWTBounds();
+		g.drawImage(image, r.x, r.y, r.width, r.height, null);
+	}
+
+/* Method: setSize(width, height) */
+/**
+ * Changes the displayed size of the grid, which changes the cell size so
+ * that the grid fills the specified width and height.
+ *
+ * @usage grid.setSize(width, height);
+ * @param width The new width of the grid on the screen
+ * @param height The new height of the grid on the screen
+ */
+	public void setSize(double width, double height) {
+		setCellSize(width / nColumns, height / nRows);
+	}
+
+/* Method: setSize(size) */
+/**
+ * Changes the displayed size of the grid to the specified <code>GDimension</code>.
+ *
+ * @usage grid.setSize(size);
+ * @param size A <code>GDimension</code> object specifying the size
+ * @noshow
+ */
+	public final void setSize(GDimension size) {
+		setSize(size.getWidth(), size.getHeight());
+	}
+
+/* Method: getSize() */
+/**
+ * Returns the displayed size of the grid as a <code>GDimension</code>.
+ *
+ * @usage GDimension size = grid.getSize();
+ * @return The size of the grid on the screen
+ */
+	public GDimension getSize() {
+		return new GDimension(nColumns * cellWidth, nRows * cellHeight);
+	}
+
+/* Method: setBounds(x, y, width, height) */
+/**
+ * Changes the bounds of the grid to the specified values.
+ *
+ * @usage grid.setBounds(x, y, width, height);
+ * @param x The new x-coordinate for the grid
+ * @param y The new y-coordinate for the grid
+ * @param width The new width of the grid on the screen
+ * @param height The new height of the grid on the screen
+ */
+	public void setBounds(double x, double y, double width, double height) {
+		cellWidth = width / nColumns;
+		cellHeight = height / nRows;
+		setLocation(x, y);
+	}
+
+/* Method: setBounds(bounds) */
+/**
+ * Changes the bounds of the grid to the values from the specified
+ * <code>GRectangle</code>.
+ *
+ * @usage grid.setBounds(bounds);
+ * @param bounds A <code>GRectangle</code> specifying the new bounds
+ */
+	public final void setBounds(GRectangle bounds) {
+		setBounds(bounds.getX(), bounds.getY(), bounds.getWidth(), bounds.getHeight());
+	}
+
+/* Method: getBounds() */
+/**
+ * Returns the bounding box of the grid.
+ *
+ * @usage GRectangle bounds = grid.getBounds();
+ * @return The bounding box for this object
+ */
+	public GRectangle getBounds() {
+		return new GRectangle(getX(), getY(), nColumns * cellWidth, nRows * cellHeight);
+	}
+
+/* Method: scale(sx, sy) */
+/**
+ * Scales the grid on the screen by the scale factors <code>sx</code> and <code>sy</code>.
+ *
+ * @usage grid.scale(sx, sy);
+ * @param sx The factor used to scale all coordinates in the x direction
+ * @param sy The factor used to scale all coordinates in the y direction
+ */
+	public void scale(double sx, double sy) {
+		setCellSize(cellWidth * sx, cellHeight * sy);
+	}
+
+/* Method: scale(sf) */
+/**
+ * Scales the grid on the screen by the scale factor <code>sf</code>, which applies
+ * in both dimensions.
+ *
+ * @usage grid.scale(sf);
+ * @param sf The factor used to scale all coordinates in both dimensions
+ */
+	public final void scale(double sf) {
+		scale(sf, sf);
+	}
+
+/* Protected method: getAWTBounds() */
+/**
+ * Returns an AWT <code>Rectangle</code> that specifies the bounds of this object.
+ *
+ * @usage Rectangle r = grid.getAWTBounds();
+ * @return A <code>Rectangle</code> that specifies the bounds of this object
+ */
+	protected Rectangle getAWTBounds() {
+		int x = GMath.round(getX());
+		int y = GMath.round(getY());
+		return new Rectangle(x, y, GMath.round(getX() + nColumns * cellWidth) - x,
+		                     GMath.round(getY() + nRows * cellHeight) - y);
+	}
+
+/* Private method: checkCell(row, col) */
+/**
+ * Checks that the row and column lie inside the grid.
+ */
+	private void checkCell(int row, int col) {
+		if (row < 0 || row >= nRows || col < 0 || col >= nColumns) {
+			throw new ErrorException("Cell (" + row + ", " + col + ") is outside the grid");
+		}
+	}
+
+/* Private state */
+
+	private BufferedImage image;
+	private int[] pixels;
+	private int nColumns;
+	private int nRows;
+	private double cellWidth;
+	private double cellHeight;
+}
@@ -0,0 +1,651 @@
+/*
+ * @(#)GPlot.java   1.0 06/08/25
+ */
+
+// ************************************************************************
+// * Copyright (c) 2006 by the Association for Computing Machinery        *
+// *                                                                      *
+// * The Java Task Force seeks to impose few restrictions on the use of   *
+// * these packages so that users have as much freedom as possible to     *
+// * use this software in constructive ways and can make the benefits of  *
+// * that work available to others.  In view of the legal complexities    *
+// * of software development, however, it is essential for the ACM to     *
+// * maintain its copyright to guard against attempts by others to        *
+// * claim ownership rights.  The full text of the JTF Software License   *
+// * is available at the following URL:                                   *
+// *                                                                      *
+// *          http://www.acm.org/jtf/jtf-software-license.pdf             *
+// *                                                                      *
+// ************************************************************************
+
+package acm.graphics;
+
+import acm.util.ErrorException;
+
+import java.awt.*;
+
+/* Class: GPlot */
+
+/**
+ * The <code>GPlot</code> class is a graphical object that draws a data series
+ * as a connected line inside a rectangular frame.  The samples are stored in
+ * arrays of <code>double</code> values rather than as individual objects, so
+ * a plot can hold millions of points.  When there are more samples than
+ * horizontal pixels, the plot draws only the minimum and maximum of the
+ * samples that fall in each pixel column, so the time to draw depends on the
+ * width of the plot rather than on the number of samples.
+ *
+ * <p>The x-coordinates of the samples must not decrease.  If the plot is
+ * created with a fixed capacity, the samples are kept in a ring buffer and
+ * adding a sample to a full plot discards the oldest one, which makes
+ * <code>GPlot</code> suitable for streaming charts.  When both ranges are set
+ * explicitly, adding samples repaints only the part of the plot they cover.
+ */
+public class GPlot extends GObject implements GResizable {
+
+/* Constructor: GPlot(width, height) */
+/**
+ * Creates a new plot of the specified size with no samples.  The plot grows
+ * to hold as many samples as are added.
+ *
+ * @usage GPlot plot = new GPlot(width, height);
+ * @param width The width of the plot in pixels
+ * @param height The height of the plot in pixels
+ */
+	public GPlot(double width, double height) {
+		this(width, height, 0);
+	}
+
+/* Constructor: GPlot(width, height, capacity) */
+/**
+ * Creates a new plot that holds at most <code>capacity</code> samples.  Once
+ * the plot is full, each new sample replaces the oldest one.  A capacity of
+ * 0 indicates that the plot has no limit.
+ *
+ * @usage GPlot plot = new GPlot(width, height, capacity);
+ * @param width The width of the plot in pixels
+ * @param height The height of the plot in pixels
+ * @param capacity The maximum number of samples, or 0 for no limit
+ */
+	public GPlot(double width, double height, int capacity) {
+		if (capacity < 0) throw new ErrorException("Plot capacity must not be negative");
+		lock = new Object();
+		plotWidth = width;
+		plotHeight = height;
+		maxSamples = capacity;
+		int size = (capacity == 0) ? INITIAL_CAPACITY : capacity;
+		xValues = new double[size];
+		yValues = new double[size];
+		start = 0;
+		count = 0;
+		resetSampleRange();
+		autoX = true;
+		autoY = true;
+		xColumns = new int[0];
+		yColumns = new int[0];
+	}
+
+/* Method: addPoint(y) */
+/**
+ * Adds a sample whose x-coordinate is one more than that of the last sample,
+ * or 0 if the plot is empty.
+ *
+ * @usage plot.addPoint(y);
+ * @param y The y-coordinate of the sample
+ */
+	public void addPoint(double y) {
+		double x;
+		synchronized (lock) {
+			x = (count == 0) ? 0 : xValues[physicalIndex(count - 1)] + 1;
+		}
+		addPoint(x, y);
+	}
+
+/* Method: addPoint(x, y) */
+/**
+ * Adds a sample at the end of the series.  The value of <code>x</code> must
+ * not be less than the x-coordinate of the last sample.
+ *
+ * @usage plot.addPoint(x, y);
+ * @param x The x-coordinate of the sample
+ * @param y The y-coordinate of the sample
+ */
+	public void addPoint(double x, double y) {
+		synchronized (lock) {
+			appendSample(x, y);
+		}
+		repaintAppended(x, x, y, y);
+	}
+
+/* Method: addPoints(xs, ys, offset, n) */
+/**
+ * Adds <code>n</code> samples taken from the arrays starting at
+ * <code>offset</code>.  Adding samples in bulk repaints the plot only once.
+ *
+ * @usage plot.addPoints(xs, ys, offset, n);
+ * @param xs The array of x-coordinates, which must not decrease
+ * @param ys The array of y-coordinates
+ * @param offset The index of the first sample in the arrays
+ * @param n The number of samples to add
+ */
+	public void addPoints(double[] xs, double[] ys, int offset, int n) {
+		if (n <= 0) return;
+		double minY = Double.POSITIVE_INFINITY;
+		double maxY = Double.NEGATIVE_INFINITY;
+		synchronized (lock) {
+			for (int i = offset; i < offset + n; i++) {
+				appendSample(xs[i], ys[i]);
+				minY = Math.min(minY, ys[i]);
+				maxY = Math.max(maxY, ys[i]);
+			}
+		}
+		repaintAppended(xs[offset], xs[offset + n - 1], minY, maxY);
+	}
+
+/* Method: addPoints(ys) */
+/**
+ * Adds the samples in the array, using consecutive x-coordinates that follow
+ * the last sample as in the single-argument version of
+ * <a href="#addPoint(double)"><code>addPoint</code></a>.
+ *
+ * @usage plot.addPoints(ys);
+ * @param ys The array of y-coordinates
+ */
+	public void addPoints(double[] ys) {
+		if (ys.length == 0) return;
+		double[] xs = new double[ys.length];
+		synchronized (lock) {
+			double x = (count == 0) ? 0 : xValues[physicalIndex(count - 1)] + 1;
+			for (int i = 0; i < xs.length; i++) {
+				xs[i] = x + i;
+			}
+		}
+		addPoints(xs, ys, 0, ys.length);
+	}
+
+/* Method: clear() */
+/**
+ * Removes all the samples from the plot.
+ *
+ * @usage plot.clear();
+ */
+	public void clear() {
+		synchronized (lock) {
+			start = 0;
+			count = 0;
+			resetSampleRange();
+		}
+		repaint();
+	}
+
+/* Method: getSampleCount() */
+/**
+ * Returns the number of samples in the plot.
+ *
+ * @usage int n = plot.getSampleCount();
+ * @return The number of samples
+ */
+	public int getSampleCount() {
+		synchronized (lock) {
+			return count;
+		}
+	}
+
+/* Method: getXValue(index) */
+/**
+ * Returns the x-coordinate of the sample with the specified index, where
+ * index 0 is the oldest sample in the plot.
+ *
+ * @usage double x = plot.getXValue(index);
+ * @param index The index of the sample
+ * @return The x-coordinate of that sample
+ */
+	public double getXValue(int index) {
+		synchronized (lock) {
+			checkIndex(index);
+			return xValues[physicalIndex(index)];
+		}
+	}
+
+/* Method: getYValue(index) */
+/**
+ * Returns the y-coordinate of the sample with the specified index, where
+ * index 0 is the oldest sample in the plot.
+ *
+ * @usage double y = plot.getYValue(index);
+ * @param index The index of the sample
+ * @return The y-coordinate of that sample
+ */
+	public double getYValue(int index) {
+		synchronized (lock) {
+			checkIndex(index);
+			return yValues[physicalIndex(index)];
+		}
+	}
+
+/* Method: setXRange(min, max) */
+/**
+ * Sets the range of x-coordinates that spans the width of the plot.  Until
+ * this method is called, the range extends from the first sample to the last.
+ *
+ * @usage plot.setXRange(min, max);
+ * @param min The x-coordinate at the left edge
+ * @param max The x-coordinate at the right edge
+ */
+	public void setXRange(double min, double max) {
+		if (max <= min) throw new ErrorException("setXRange: max must be greater than min");
+		synchronized (lock) {
+			xMin = min;
+			xMax = max;
+			autoX = false;
+		}
+		repaint();
+	}
+
+/* Method: setYRange(min, max) */
+/**
+ * Sets the range of y-coordinates that spans the height of the plot, with
+ * <code>min</code> at the bottom.  Until this method is called, the range
+ * extends from the smallest sample to the largest.
+ *
+ * @usage plot.setYRange(min, max);
+ * @param min The y-coordinate at the bottom edge
+ * @param max The y-coordinate at the top edge
+ */
+	public void setYRange(double min, double max) {
+		if (max <= min) throw new ErrorException("setYRange: max must be greater than min");
+		synchronized (lock) {
+			yMin = min;
+			yMax = max;
+			autoY = false;
+		}
+		repaint();
+	}
+
+/* Method: setAutoRange() */
+/**
+ * Restores the default behavior in which the ranges in both directions are
+ * computed from the samples.
+ *
+ * @usage plot.setAutoRange();
+ */
+	public void setAutoRange() {
+		synchronized (lock) {
+			autoX = true;
+			autoY = true;
+		}
+		repaint();
+	}
+
+/* Method: paint(g) */
+/**
+ * Implements the <code>paint</code> operation for this graphical object.  This method
+ * is not called directly by clients.
+ * @noshow
+ */
+	public void paint(Graphics g) {
+		synchronized (lock) {
+			if (count == 0) return;
+			computeRanges();
+			int left = GMath.round(getX());
+			int top = GMath.round(getY());
+			int width = Math.max(1, GMath.round(plotWidth));
+			double sx = plotWidth / (paintXMax - paintXMin);
+			double sy = plotHeight / (paintYMax - paintYMin);
+			Rectangle clip = g.getClipBounds();
+			double lo = paintXMin;
+			double hi = paintXMax;
+			if (clip != null) {
+				lo = Math.max(lo, paintXMin + (clip.x - 1 - getX()) / sx);
+				hi = Math.min(hi, paintXMin + (clip.x + clip.width + 1 - getX()) / sx);
+			}
+			int first = Math.max(0, findFirstIndex(lo) - 1);
+			int last = Math.min(count - 1, findFirstIndex(hi));
+			if (xColumns.length < 4 * (width + 2)) {
+				xColumns = new int[4 * (width + 2)];
+				yColumns = new int[4 * (width + 2)];
+			}
+			int nPoints = 0;
+			int column = Integer.MIN_VALUE;
+			int firstY = 0, minY = 0, maxY = 0, lastY = 0;
+			for (int i = first; i <= last; i++) {
+				int k = physicalIndex(i);
+				int px = clampCoordinate(left + (xValues[k] - paintXMin) * sx);
+				int py = clampCoordinate(top + plotHeight - (yValues[k] - paintYMin) * sy);
+				if (px != column) {
+					if (column != Integer.MIN_VALUE) {
+						nPoints = addColumn(nPoints, column, firstY, minY, maxY, lastY);
+						if (nPoints + 4 > xColumns.length) {
+							g.drawPolyline(xColumns, yColumns, nPoints);
+							xColumns[0] = xColumns[nPoints - 1];
+							yColumns[0] = yColumns[nPoints - 1];
+							nPoints = 1;
+						}
+					}
+					column = px;
+					firstY = minY = maxY = lastY = py;
+				} else {
+					minY = Math.min(minY, py);
+					maxY = Math.max(maxY, py);
+					lastY = py;
+				}
+			}
+			nPoints = addColumn(nPoints, column, firstY, minY, maxY, lastY);
+			if (nPoints == 1) {
+				g.drawLine(xColumns[0], yColumns[0], xColumns[0], yColumns[0]);
+			} else {
+				g.drawPolyline(xColumns, yColumns, nPoints);
+			}
+		}
+	}
+
+/* Method: setSize(width, height) */
+/**
+ * Changes the size of this object to the specified width and height.
+ *
+ * @usage plot.setSize(width, height);
+ * @param width The new width of the object
+ * @param height The new height of the object
+ */
+	public void setSize(double width, double height) {
+		plotWidth = width;
+		plotHeight = height;
+		repaint();
+	}
+
+/* Method: setSize(size) */
+/**
+ * Changes the size of this object to the specified <code>GDimension</code>.
+ *
+ * @usage plot.setSize(size);
+ * @param size A <code>GDimension</code> object specifying the size
+ * @noshow
+ */
+	public final void setSize(GDimension size) {
+		setSize(size.getWidth(), size.getHeight());
+	}
+
+/* Method: getSize() */
+/**
+ * Returns the size of this object as a <code>GDimension</code>.
+ *
+ * @usage GDimension size = plot.getSize();
+ * @return The size of this object
+ */
+	public GDimension getSize() {
+		return new GDimension(plotWidth, plotHeight);
+	}
+
+/* Method: setBounds(x, y, width, height) */
+/**
+ * Changes the bounds of this object to the specified values.
+ *
+ * @usage plot.setBounds(x, y, width, height);
+ * @param x The new x-coordinate for the object
+ * @param y The new y-coordinate for the object
+ * @param width The new width of the object
+ * @param height The new height of the object
+ */
+	public void setBounds(double x, double y, double width, double height) {
+		plotWidth = width;
+		plotHeight = height;
+		setLocation(x, y);
+	}
+
+/* Method: setBounds(bounds) */
+/**
+ * Changes the bounds of this object to the values from the specified
+ * <code>GRectangle</code>.
+ *
+ * @usage plot.setBounds(bounds);
+ * @param bounds A <code>GRectangle</code> specifying the new bounds
+ */
+	public final void setBounds(GRectangle bounds) {
+		setBounds(bounds.getX(), bounds.getY(), bounds.getWidth(), bounds.getHeight());
+	}
+
+/* Method: getBounds() */
+/**
+ * Returns the bounding box of this object.
+ *
+ * @usage GRectangle bounds = plot.getBounds();
+ * @return The bounding box for this object
+ */
+	public GRectangle getBounds() {
+		return new GRectangle(getX(), getY(), plotWidth, plotHeight);
+	}
+
+/* Private method: appendSample(x, y) */
+/**
+ * Stores a sample at the end of the buffer, growing the arrays or discarding
+ * the oldest sample as necessary.  The caller must hold the lock.
+ */
+	private void appendSample(double x, double y) {
+		if (count > 0 && x < xValues[physicalIndex(count - 1)]) {
+			throw new ErrorException("Plot x-coordinates must not decrease");
+		}
+		if (count == xValues.length) {
+			if (maxSamples == 0) {
+				double[] newX = new double[2 * xValues.length];
+				double[] newY = new double[2 * yValues.length];
+				int n = xValues.length - start;
+				System.arraycopy(xValues, start, newX, 0, n);
+				System.arraycopy(xValues, 0, newX, n, start);
+				System.arraycopy(yValues, start, newY, 0, n);
+				System.arraycopy(yValues, 0, newY, n, start);
+				xValues = newX;
+				yValues = newY;
+				start = 0;
+			} else {
+				droppedX = (droppedCount == 0) ? xValues[start] : droppedX;
+				droppedCount++;
+				double evicted = yValues[start];
+				if (evicted == sampleYMin || evicted == sampleYMax) sampleRangeValid = false;
+				start = (start + 1) % xValues.length;
+				count--;
+			}
+		}
+		int k = physicalIndex(count);
+		xValues[k] = x;
+		yValues[k] = y;
+		count++;
+		if (y < sampleYMin) sampleYMin = y;
+		if (y > sampleYMax) sampleYMax = y;
+	}
+
+/* Private method: resetSampleRange() */
+/**
+ * Marks the range of y-coordinates as empty, which is accurate only when
+ * there are no samples.  The caller must hold the lock.
+ */
+	private void resetSampleRange() {
+		sampleYMin = Double.POSITIVE_INFINITY;
+		sampleYMax = Double.NEGATIVE_INFINITY;
+		sampleRangeValid = true;
+	}
+
+/* Private method: repaintAppended(x0, x1, minY, maxY) */
+/**
+ * Repaints the part of the plot affected by newly added samples.  If either
+ * range is computed automatically, or the new samples lie outside the range
+ * that was last painted, the whole plot is repainted.
+ */
+	private void repaintAppended(double x0, double x1, double minY, double maxY) {
+		double left = 0;
+		double right = 0;
+		double dropLeft = 0;
+		double dropRight = 0;
+		boolean partial = false;
+		boolean dropped = false;
+		synchronized (lock) {
+			if (!autoX && !autoY && minY >= yMin && maxY <= yMax) {
+				double sx = plotWidth / (xMax - xMin);
+				int prev = count - 2;
+				while (prev >= 0 && xValues[physicalIndex(prev)] >= x0) {
+					prev--;
+				}
+				double from = (prev >= 0) ? xValues[physicalIndex(prev)] : x0;
+				left = (from - xMin) * sx;
+				right = (x1 - xMin) * sx;
+				if (droppedCount > 0) {
+					dropped = true;
+					dropLeft = (droppedX - xMin) * sx;
+					dropRight = (xValues[start] - xMin) * sx;
+				}
+				partial = true;
+			}
+			droppedCount = 0;
+		}
+		if (!partial) {
+			repaint();
+			return;
+		}
+		double x = getX();
+		double y = getY();
+		repaintRange(x, y, left, right);
+		if (dropped) repaintRange(x, y, dropLeft, dropRight);
+	}
+
+/* Private method: repaintRange(x, y, left, right) */
+/**
+ * Repaints the columns of the plot between the specified offsets.
+ */
+	private void repaintRange(double x, double y, double left, double right) {
+		left = Math.max(0, left - 1);
+		right = Math.min(plotWidth, right + 1);
+		if (right < left) return;
+		repaint(x + left, y, right - left, plotHeight);
+	}
+
+/* Private method: computeRanges() */
+/**
+ * Computes the ranges used to paint the plot.  The range of y-coordinates
+ * is maintained as samples are added and is recomputed only after a sample
+ * holding the minimum or maximum has been discarded.  The caller must hold
+ * the lock.
+ */
+	private void computeRanges() {
+		if (autoX) {
+			paintXMin = xValues[start];
+			paintXMax = xValues[physicalIndex(count - 1)];
+		} else {
+			paintXMin = xMin;
+			paintXMax = xMax;
+		}
+		if (paintXMax <= paintXMin) paintXMax = paintXMin + 1;
+		if (autoY) {
+			if (!sampleRangeValid) {
+				resetSampleRange();
+				for (int i = 0; i < count; i++) {
+					double v = yValues[physicalIndex(i)];
+					if (v < sampleYMin) sampleYMin = v;
+					if (v > sampleYMax) sampleYMax = v;
+				}
+			}
+			paintYMin = sampleYMin;
+			paintYMax = sampleYMax;
+		} else {
+			paintYMin = yMin;
+			paintYMax = yMax;
+		}
+		if (paintYMax <= paintYMin) {
+			paintYMin -= 0.5;
+			paintYMax += 0.5;
+		}
+	}
+
+/* Private method: findFirstIndex(x) */
+/**
+ * Returns the logical index of the first sample whose x-coordinate is at
+ * least <code>x</code>, or <code>count</code> if there is none.  The caller
+ * must hold the lock.
+ */
+	private int findFirstIndex(double x) {
+		int lh = 0;
+		int rh = count;
+		while (lh < rh) {
+			int mid = (lh + rh) >>> 1;
+			if (xValues[physicalIndex(mid)] < x) {
+				lh = mid + 1;
+			} else {
+				rh = mid;
+			}
+		}
+		return lh;
+	}
+
+/* Private method: addColumn(n, column, firstY, minY, maxY, lastY) */
+/**
+ * Adds the points for one pixel column to the polyline and returns the new
+ * number of points.
+ */
+	private int addColumn(int n, int column, int firstY, int minY, int maxY, int lastY) {
+		xColumns[n] = column;
+		yColumns[n++] = firstY;
+		if (minY != maxY) {
+			boolean minFirst = (firstY - minY < maxY - firstY);
+			xColumns[n] = column;
+			yColumns[n++] = (minFirst) ? minY : maxY;
+			xColumns[n] = column;
+			yColumns[n++] = (minFirst) ? maxY : minY;
+			xColumns[n] = column;
+			yColumns[n++] = lastY;
+		}
+		return n;
+	}
+
+/* Private method: physicalIndex(index) */
+/**
+ * Converts a logical sample index into an index in the arrays.
+ */
+	private int physicalIndex(int index) {
+		int k = start + index;
+		return (k >= xValues.length) ? k - xValues.length : k;
+	}
+
+/* Private method: checkIndex(index) */
+/**
+ * Checks that the sample index is in range.
+ */
+	private void checkIndex(int index) {
+		if (index < 0 || index >= count) {
+			throw new ErrorException("Sample index " + index + " is out of range");
+		}
+	}
+
+/* Private static method: clampCoordinate(v) */
+/**
+ * Rounds a pixel coordinate and keeps it within a range that AWT can draw.
+ */
+	private static int clampCoordinate(double v) {
+		if (v < -MAX_COORDINATE) return -MAX_COORDINATE;
+		if (v > MAX_COORDINATE) return MAX_COORDINATE;
+		return GMath.round(v);
+	}
+
+/* Private constants */
+
+	private static final int INITIAL_CAPACITY = 1024;
+	private static final int MAX_COORDINATE = 1 << 20;
+
+/* Private state */
+
+	private Object lock;
+	private double[] xValues;
+	private double[] yValues;
+	private int start;
+	private int count;
+	private int maxSamples;
+	private int droppedCount;
+	private double droppedX;
+	private double plotWidth;
+	private double plotHeight;
+	private boolean autoX;
+	private boolean autoY;
+	private double sampleYMin, sampleYMax;
+	private boolean sampleRangeValid;
+	private double xMin, xMax, yMin, yMax;
+	private double paintXMin, paintXMax, paintYMin, paintYMax;
+	private int[] xColumns;
+	private int[] yColumns;
+}
@@ -0,0 +1,400 @@
+/*
+ * @(#)GRepaintScheduler.java   1.0 06/08/25
+ */
+
+// ************************************************************************
+// * Copyright (c) 2006 by the Association for Computing Machinery        *
+// *                                                                      *
+// * The Java Task Force seeks to impose few restrictions on the use of   *
+// * these packages so that users have as much freedom as possible to     *
+// * use this software in constructive ways and can make the benefits of  *
+// * that work available to others.  In view of the legal complexities    *
+// * of software development, however, it is essential for the ACM to     *
+// * maintain its copyright to guard against attempts by others to        *
+// * claim ownership rights.  The full text of the JTF Software License   *
+// * is available at the following URL:                                   *
+// *                                                                      *
+// *          http://www.acm.org/jtf/jtf-software-license.pdf             *
+// *                                                                      *
+// ************************************************************************
+
+package acm.graphics;
+
+import acm.util.JTFTools;
+import acm.util.SwingTimer;
+
+import java.awt.*;
+import java.awt.event.*;
+
+/* Package class: GRepaintScheduler */
+
+/**
+ * This class limits the rate at which a <code>GCanvas</code> repaints itself.
+ * Every repaint request that arrives during a frame interval is merged into
+ * a single damaged rectangle, and at most one call to <code>repaint</code> is
+ * issued per interval.  Frames are normally issued by a timer on the event
+ * dispatch thread.  When the canvas is driven by an external clock, such as
+ * a fixed-timestep game loop, frames are issued only by calls to
+ * <a href="#flushFrame()"><code>flushFrame</code></a>, which paints each
+ * frame before it returns so that no frame is merged with the next one.
+ *
+ * <p>All times are read from the clock returned by
+ * <a href="../util/JTFTools.html#getClock()"><code>JTFTools.getClock</code></a>,
+ * so that frames follow the simulated clock when virtual time is enabled.
+ *
+ * <p>The scheduler also keeps statistics.  A frame is <i>late</i> if it is
+ * painted more than half an interval after its deadline, and each whole
+ * interval that passes while a frame is overdue counts as a
+ * <i>dropped</i> frame.
+ */
+class GRepaintScheduler implements ActionListener {
+
+/* Constructor: GRepaintScheduler(gc, fps) */
+/**
+ * Creates a new scheduler for the canvas with the specified frame rate.
+ *
+ * @usage GRepaintScheduler scheduler = new GRepaintScheduler(gc, fps);
+ * @param gc The canvas whose repaints are scheduled
+ * @param fps The maximum number of frames per second
+ */
+	public GRepaintScheduler(GCanvas gc, double fps) {
+		canvas = gc;
+		lock = new Object();
+		timer = new SwingTimer(0, this);
+		timer.setRepeats(false);
+		externalClock = false;
+		emptyRegion = true;
+		setFrameRate(fps);
+		lastFrameTime = JTFTools.getClock() - frameNanos;
+		resetStatistics();
+	}
+
+/* Method: setFrameRate(fps) */
+/**
+ * Sets the maximum number of frames per second.
+ *
+ * @usage scheduler.setFrameRate(fps);
+ * @param fps The maximum number of frames per second
+ */
+	public void setFrameRate(double fps) {
+		synchronized (lock) {
+			frameRate = fps;
+			frameNanos = (long) (1.0E9 / fps);
+		}
+	}
+
+/* Method: getFrameRate() */
+/**
+ * Returns the maximum number of frames per second.
+ *
+ * @usage double fps = scheduler.getFrameRate();
+ * @return The maximum number of frames per second
+ */
+	public double getFrameRate() {
+		return frameRate;
+	}
+
+/* Method: setExternalClock(flag) */
+/**
+ * Sets whether frames are issued only by <code>flushFrame</code>.
+ *
+ * @usage scheduler.setExternalClock(flag);
+ * @param flag <code>true</code> if an external loop issues the frames
+ */
+	public void setExternalClock(boolean flag) {
+		synchronized (lock) {
+			externalClock = flag;
+			if (flag) {
+				timer.stop();
+				timerScheduled = false;
+			} else if (pending) {
+				scheduleTimer(JTFTools.getClock());
+			}
+		}
+	}
+
+/* Method: isExternalClock() */
+/**
+ * Returns <code>true</code> if frames are issued only by <code>flushFrame</code>.
+ *
+ * @usage if (scheduler.isExternalClock()) . . .
+ * @return <code>true</code> if an external loop issues the frames
+ */
+	public boolean isExternalClock() {
+		return externalClock;
+	}
+
+/* Method: requestRepaint() */
+/**
+ * Requests that the entire canvas be repainted in the next frame.
+ *
+ * @usage scheduler.requestRepaint();
+ */
+	public void requestRepaint() {
+		synchronized (lock) {
+			fullRepaint = true;
+			markPending();
+		}
+	}
+
+/* Method: requestRepaint(x, y, width, height) */
+/**
+ * Adds the specified rectangle of the canvas to the region that is repainted
+ * in the next frame.
+ *
+ * @usage scheduler.requestRepaint(x, y, width, height);
+ * @param x The left edge of the rectangle
+ * @param y The top edge of the rectangle
+ * @param width The width of the rectangle
+ * @param height The height of the rectangle
+ */
+	public void requestRepaint(int x, int y, int width, int height) {
+		synchronized (lock) {
+			if (!fullRepaint) {
+				if (pending && !emptyRegion) {
+					int x1 = Math.max(dirtyX + dirtyWidth, x + width);
+					int y1 = Math.max(dirtyY + dirtyHeight, y + height);
+					dirtyX = Math.min(dirtyX, x);
+					dirtyY = Math.min(dirtyY, y);
+					dirtyWidth = x1 - dirtyX;
+					dirtyHeight = y1 - dirtyY;
+				} else {
+					dirtyX = x;
+					dirtyY = y;
+					dirtyWidth = width;
+					dirtyHeight = height;
+					emptyRegion = false;
+				}
+			}
+			markPending();
+		}
+	}
+
+/* Method: flushFrame() */
+/**
+ * Paints the pending frame and waits until the painting is done.  This
+ * method is called once per rendered frame by loops that drive the canvas
+ * with an external clock.  Those loops pace themselves, so every pending
+ * frame is presented, and because the frame is painted before the method
+ * returns, changes made for the next frame cannot be merged into it.
+ *
+ * @usage scheduler.flushFrame();
+ */
+	public void flushFrame() {
+		final Rectangle region;
+		synchronized (lock) {
+			if (!pending) return;
+			region = takeFrame(JTFTools.getClock());
+		}
+		JTFTools.runOnEventThread(new Runnable() {
+			public void run() {
+				paintFrame(region);
+			}
+		});
+	}
+
+/* Method: framePainted() */
+/**
+ * Records that the canvas has painted a frame.  This method is called from
+ * <code>GCanvas.paint</code>.
+ *
+ * @usage scheduler.framePainted();
+ */
+	public void framePainted() {
+		synchronized (lock) {
+			if (!outstanding) return;
+			outstanding = false;
+			long delay = JTFTools.getClock() - issuedDeadline;
+			frameCount++;
+			if (delay > frameNanos / 2) lateFrames++;
+			if (delay > frameNanos) droppedFrames += delay / frameNanos;
+		}
+	}
+
+/* Method: getFrameCount() */
+/**
+ * Returns the number of frames painted since the statistics were reset.
+ *
+ * @usage long n = scheduler.getFrameCount();
+ * @return The number of frames painted
+ */
+	public long getFrameCount() {
+		synchronized (lock) {
+			return frameCount;
+		}
+	}
+
+/* Method: getLateFrameCount() */
+/**
+ * Returns the number of frames that were painted late.
+ *
+ * @usage long n = scheduler.getLateFrameCount();
+ * @return The number of late frames
+ */
+	public long getLateFrameCount() {
+		synchronized (lock) {
+			return lateFrames;
+		}
+	}
+
+/* Method: getDroppedFrameCount() */
+/**
+ * Returns the number of frame intervals that passed without a frame while a
+ * repaint was overdue.
+ *
+ * @usage long n = scheduler.getDroppedFrameCount();
+ * @return The number of dropped frames
+ */
+	public long getDroppedFrameCount() {
+		synchronized (lock) {
+			return droppedFrames;
+		}
+	}
+
+/* Method: resetStatistics() */
+/**
+ * Resets the frame statistics to zero.
+ *
+ * @usage scheduler.resetStatistics();
+ */
+	public void resetStatistics() {
+		synchronized (lock) {
+			frameCount = 0;
+			lateFrames = 0;
+			droppedFrames = 0;
+		}
+	}
+
+/* Method: dispose() */
+/**
+ * Stops the timer.  Any pending repaint is issued immediately so that it is
+ * not lost.
+ *
+ * @usage scheduler.dispose();
+ */
+	public void dispose() {
+		synchronized (lock) {
+			timer.stop();
+			timerScheduled = false;
+			if (pending) issueFrame(JTFTools.getClock());
+		}
+	}
+
+/* ActionListener interface */
+
+	public void actionPerformed(ActionEvent e) {
+		synchronized (lock) {
+			timerScheduled = false;
+			if (pending && !externalClock) issueFrame(JTFTools.getClock());
+		}
+	}
+
+/* Private method: markPending() */
+/**
+ * Records that a repaint is pending and starts the timer if necessary.  The
+ * caller must hold the lock.
+ */
+	private void markPending() {
+		long now = JTFTools.getClock();
+		if (!pending) {
+			pending = true;
+			pendingDeadline = Math.max(now, lastFrameTime + frameNanos);
+		}
+		if (!externalClock && !timerScheduled) scheduleTimer(now);
+	}
+
+/* Private method: scheduleTimer(now) */
+/**
+ * Starts the timer so that it fires at the beginning of the next frame
+ * interval.  The caller must hold the lock.
+ */
+	private void scheduleTimer(long now) {
+		long delay = Math.max(0, lastFrameTime + frameNanos - now);
+		timer.setInitialDelay((int) ((delay + 999999) / 1000000));
+		timer.restart();
+		timerScheduled = true;
+	}
+
+/* Private method: issueFrame(now) */
+/**
+ * Passes the accumulated damage to the canvas as a single repaint request.
+ * The caller must hold the lock.
+ */
+	private void issueFrame(long now) {
+		repaintFrame(takeFrame(now));
+	}
+
+/* Private method: takeFrame(now) */
+/**
+ * Records that the pending frame has been issued and returns its damaged
+ * rectangle, or <code>null</code> if the entire canvas must be repainted.
+ * The caller must hold the lock.
+ */
+	private Rectangle takeFrame(long now) {
+		lastFrameTime = now;
+		if (!outstanding) {
+			outstanding = true;
+			issuedDeadline = pendingDeadline;
+		}
+		pending = false;
+		Rectangle region = null;
+		if (!fullRepaint && !emptyRegion) {
+			region = new Rectangle(dirtyX, dirtyY, dirtyWidth, dirtyHeight);
+		}
+		fullRepaint = false;
+		emptyRegion = true;
+		return region;
+	}
+
+/* Private method: repaintFrame(region) */
+/**
+ * Asks the canvas to repaint the region, or the entire canvas if the region
+ * is <code>null</code>.
+ */
+	private void repaintFrame(Rectangle region) {
+		if (region == null) {
+			canvas.repaint();
+		} else {
+			canvas.repaint(region.x, region.y, region.width, region.height);
+		}
+	}
+
+/* Private method: paintFrame(region) */
+/**
+ * Paints the region of the canvas at once, or the entire canvas if the
+ * region is <code>null</code>.  This method must be called in the event
+ * dispatch thread.  If the canvas is not being displayed, there is nothing
+ * to paint.
+ */
+	private void paintFrame(Rectangle region) {
+		Graphics g = canvas.getGraphics();
+		if (g == null) return;
+		try {
+			if (region != null) g.clipRect(region.x, region.y, region.width, region.height);
+			canvas.paint(g);
+		} finally {
+			g.dispose();
+		}
+	}
+
+/* Private state */
+
+	private GCanvas canvas;
+	private Object lock;
+	private SwingTimer timer;
+	private double frameRate;
+	private long frameNanos;
+	private boolean externalClock;
+	private boolean timerScheduled;
+	private boolean pending;
+	private boolean outstanding;
+	private boolean fullRepaint;
+	private boolean emptyRegion;
+	private int dirtyX, dirtyY, dirtyWidth, dirtyHeight;
+	private long lastFrameTime;
+	private long pendingDeadline;
+	private long issuedDeadline;
+	private long frameCount;
+	private long lateFrames;
+	private long droppedFrames;
+}
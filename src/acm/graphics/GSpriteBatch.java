@@ -0,0 +1,612 @@
+/*
+ * @(#)GSpriteBatch.java   1.0 06/08/25
+ */
+
+// ************************************************************************
+// * Copyright (c) 2006 by the Association for Computing Machinery        *
+// *                                                                      *
+// * The Java Task Force seeks to impose few restrictions on the use of   *
+// * these packages so that users have as much freedom as possible to     *
+// * use this software in constructive ways and can make the benefits of  *
+// * that work available to others.  In view of the legal complexities    *
+// * of software development, however, it is essential for the ACM to     *
+// * maintain its copyright to guard against attempts by others to        *
+// * claim ownership rights.  The full text of the JTF Software License   *
+// * is available at the following URL:                                   *
+// *                                                                      *
+// *          http://www.acm.org/jtf/jtf-software-license.pdf             *
+// *                                                                      *
+// ************************************************************************
+
+package acm.graphics;
+
+import acm.util.ErrorException;
+import acm.util.MediaTools;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+/* Class: GSpriteBatch */
+
+/**
+ * The <code>GSpriteBatch</code> class is a graphical object that displays
+ * many copies of images taken from a single shared image.  The shared image
+ * can serve as an atlas that is divided into <i>frames</i>, each of which is
+ * a rectangular region of the image.  Each copy, or <i>sprite</i>, is described
+ * only by its location and frame number, which are stored in arrays of
+ * primitive values.  The batch paints every sprite in a single pass from a
+ * copy of the atlas that has already been scaled to the display size, so that
+ * programs such as tile maps can show thousands of sprites without creating a
+ * <code>GImage</code> for each one.
+ *
+ * <p>Each call to <a href="#addSprite(double, double, int)"><code>addSprite</code></a>
+ * returns an integer handle that identifies the sprite until it is removed.
+ * Adding and removing sprites takes constant time.  Sprite coordinates are
+ * measured relative to the location of the batch, and sprites added later
+ * appear in front of those added earlier.
+ */
+public class GSpriteBatch extends GObject {
+
+/* Constructor: GSpriteBatch(image) */
+/**
+ * Creates a new empty sprite batch whose single frame is the entire image.
+ *
+ * @usage GSpriteBatch batch = new GSpriteBatch(image);
+ * @param image The image shared by every sprite
+ */
+	public GSpriteBatch(Image image) {
+		lock = new Object();
+		setAtlas(image);
+		addFrame(0, 0, atlasWidth, atlasHeight);
+		initSprites();
+	}
+
+/* Constructor: GSpriteBatch(image, frameWidth, frameHeight) */
+/**
+ * Creates a new empty sprite batch that divides the image into a grid of
+ * frames, each of which is <code>frameWidth</code> pixels wide and
+ * <code>frameHeight</code> pixels high.  The frames are numbered from
+ * left to right across each row, starting with the top row.
+ *
+ * @usage GSpriteBatch batch = new GSpriteBatch(image, frameWidth, frameHeight);
+ * @param image The atlas image shared by every sprite
+ * @param frameWidth The width of each frame in pixels
+ * @param frameHeight The height of each frame in pixels
+ */
+	public GSpriteBatch(Image image, int frameWidth, int frameHeight) {
+		lock = new Object();
+		setAtlas(image);
+		if (frameWidth <= 0 || frameHeight <= 0) {
+			throw new ErrorException("Frame size must be positive");
+		}
+		for (int y = 0; y + frameHeight <= atlasHeight; y += frameHeight) {
+			for (int x = 0; x + frameWidth <= atlasWidth; x += frameWidth) {
+				addFrame(x, y, frameWidth, frameHeight);
+			}
+		}
+		initSprites();
+	}
+
+/* Constructor: GSpriteBatch(name, frameWidth, frameHeight) */
+/**
+ * Creates a new sprite batch from the image with the specified name, which is
+ * found as described in the constructors for <code>GImage</code>.
+ *
+ * @usage GSpriteBatch batch = new GSpriteBatch(name, frameWidth, frameHeight);
+ * @param name The name of the atlas image
+ * @param frameWidth The width of each frame in pixels
+ * @param frameHeight The height of each frame in pixels
+ */
+	public GSpriteBatch(String name, int frameWidth, int frameHeight) {
+		this(MediaTools.loadImage(name), frameWidth, frameHeight);
+	}
+
+/* Method: addFrame(x, y, width, height) */
+/**
+ * Defines a new frame as the specified rectangle of the atlas image.
+ *
+ * @usage int frame = batch.addFrame(x, y, width, height);
+ * @param x The x-coordinate of the frame within the atlas
+ * @param y The y-coordinate of the frame within the atlas
+ * @param width The width of the frame
+ * @param height The height of the frame
+ * @return The number of the new frame
+ */
+	public int addFrame(int x, int y, int width, int height) {
+		synchronized (lock) {
+			if (nFrames == frameRects.length) {
+				int[] newRects = new int[2 * frameRects.length];
+				System.arraycopy(frameRects, 0, newRects, 0, frameRects.length);
+				frameRects = newRects;
+			}
+			int f = 4 * nFrames;
+			frameRects[f] = x;
+			frameRects[f + 1] = y;
+			frameRects[f + 2] = width;
+			frameRects[f + 3] = height;
+			scaledAtlas = null;
+			return nFrames++;
+		}
+	}
+
+/* Method: getFrameCount() */
+/**
+ * Returns the number of frames defined for the atlas.
+ *
+ * @usage int n = batch.getFrameCount();
+ * @return The number of frames
+ */
+	public int getFrameCount() {
+		return nFrames;
+	}
+
+/* Method: addSprite(x, y) */
+/**
+ * Adds a sprite showing frame 0 at the point (<code>x</code>,&nbsp;<code>y</code>).
+ *
+ * @usage int handle = batch.addSprite(x, y);
+ * @param x The x-coordinate of the sprite relative to the batch
+ * @param y The y-coordinate of the sprite relative to the batch
+ * @return A handle identifying the new sprite
+ */
+	public final int addSprite(double x, double y) {
+		return addSprite(x, y, 0);
+	}
+
+/* Method: addSprite(x, y, frame) */
+/**
+ * Adds a sprite showing the specified frame at the point
+ * (<code>x</code>,&nbsp;<code>y</code>).
+ *
+ * @usage int handle = batch.addSprite(x, y, frame);
+ * @param x The x-coordinate of the sprite relative to the batch
+ * @param y The y-coordinate of the sprite relative to the batch
+ * @param frame The frame number
+ * @return A handle identifying the new sprite
+ */
+	public int addSprite(double x, double y, int frame) {
+		int handle;
+		synchronized (lock) {
+			checkFrame(frame);
+			if (nSprites == xs.length) growSprites();
+			if (nFreeHandles > 0) {
+				handle = freeHandles[--nFreeHandles];
+			} else {
+				handle = nHandles++;
+			}
+			int slot = nSprites++;
+			xs[slot] = x;
+			ys[slot] = y;
+			frames[slot] = frame;
+			slotHandles[slot] = handle;
+			handleSlots[handle] = slot;
+		}
+		repaint();
+		return handle;
+	}
+
+/* Method: removeSprite(handle) */
+/**
+ * Removes the sprite identified by the handle.  The handle may be reused
+ * by a later call to <code>addSprite</code>.
+ *
+ * @usage batch.removeSprite(handle);
+ * @param handle The handle of the sprite
+ */
+	public void removeSprite(int handle) {
+		synchronized (lock) {
+			int slot = getSlot(handle);
+			int last = --nSprites;
+			if (slot != last) {
+				xs[slot] = xs[last];
+				ys[slot] = ys[last];
+				frames[slot] = frames[last];
+				slotHandles[slot] = slotHandles[last];
+				handleSlots[slotHandles[slot]] = slot;
+			}
+			handleSlots[handle] = -1;
+			freeHandles[nFreeHandles++] = handle;
+		}
+		repaint();
+	}
+
+/* Method: removeAllSprites() */
+/**
+ * Removes every sprite from the batch.
+ *
+ * @usage batch.removeAllSprites();
+ */
+	public void removeAllSprites() {
+		synchronized (lock) {
+			initSprites();
+		}
+		repaint();
+	}
+
+/* Method: containsSprite(handle) */
+/**
+ * Returns <code>true</code> if the handle identifies a sprite in this batch.
+ *
+ * @usage if (batch.containsSprite(handle)) . . .
+ * @param handle The handle being tested
+ * @return <code>true</code> if the handle identifies a sprite
+ */
+	public boolean containsSprite(int handle) {
+		synchronized (lock) {
+			return handle >= 0 && handle < nHandles && handleSlots[handle] >= 0;
+		}
+	}
+
+/* Method: getSpriteCount() */
+/**
+ * Returns the number of sprites in the batch.
+ *
+ * @usage int n = batch.getSpriteCount();
+ * @return The number of sprites
+ */
+	public int getSpriteCount() {
+		return nSprites;
+	}
+
+/* Method: setSpriteLocation(handle, x, y) */
+/**
+ * Moves the sprite to the point (<code>x</code>,&nbsp;<code>y</code>).
+ *
+ * @usage batch.setSpriteLocation(handle, x, y);
+ * @param handle The handle of the sprite
+ * @param x The new x-coordinate of the sprite relative to the batch
+ * @param y The new y-coordinate of the sprite relative to the batch
+ */
+	public void setSpriteLocation(int handle, double x, double y) {
+		synchronized (lock) {
+			int slot = getSlot(handle);
+			xs[slot] = x;
+			ys[slot] = y;
+		}
+		repaint();
+	}
+
+/* Method: moveSprite(handle, dx, dy) */
+/**
+ * Moves the sprite by the displacements <code>dx</code> and <code>dy</code>.
+ *
+ * @usage batch.moveSprite(handle, dx, dy);
+ * @param handle The handle of the sprite
+ * @param dx The distance to move the sprite in the x direction
+ * @param dy The distance to move the sprite in the y direction
+ */
+	public void moveSprite(int handle, double dx, double dy) {
+		synchronized (lock) {
+			int slot = getSlot(handle);
+			xs[slot] += dx;
+			ys[slot] += dy;
+		}
+		repaint();
+	}
+
+/* Method: getSpriteX(handle) */
+/**
+ * Returns the x-coordinate of the sprite relative to the batch.
+ *
+ * @usage double x = batch.getSpriteX(handle);
+ * @param handle The handle of the sprite
+ * @return The x-coordinate of the sprite
+ */
+	public double getSpriteX(int handle) {
+		synchronized (lock) {
+			return xs[getSlot(handle)];
+		}
+	}
+
+/* Method: getSpriteY(handle) */
+/**
+ * Returns the y-coordinate of the sprite relative to the batch.
+ *
+ * @usage double y = batch.getSpriteY(handle);
+ * @param handle The handle of the sprite
+ * @return The y-coordinate of the sprite
+ */
+	public double getSpriteY(int handle) {
+		synchronized (lock) {
+			return ys[getSlot(handle)];
+		}
+	}
+
+/* Method: setSpriteFrame(handle, frame) */
+/**
+ * Changes the frame displayed by the sprite.
+ *
+ * @usage batch.setSpriteFrame(handle, frame);
+ * @param handle The handle of the sprite
+ * @param frame The new frame number
+ */
+	public void setSpriteFrame(int handle, int frame) {
+		synchronized (lock) {
+			checkFrame(frame);
+			frames[getSlot(handle)] = frame;
+		}
+		repaint();
+	}
+
+/* Method: getSpriteFrame(handle) */
+/**
+ * Returns the frame displayed by the sprite.
+ *
+ * @usage int frame = batch.getSpriteFrame(handle);
+ * @param handle The handle of the sprite
+ * @return The frame number
+ */
+	public int getSpriteFrame(int handle) {
+		synchronized (lock) {
+			return frames[getSlot(handle)];
+		}
+	}
+
+/* Method: getSpriteAt(x, y) */
+/**
+ * Returns the handle of the frontmost sprite whose rectangle contains the
+ * point (<code>x</code>,&nbsp;<code>y</code>), or -1 if there is none.  The
+ * point is expressed in the coordinates of the enclosing container.
+ *
+ * @usage int handle = batch.getSpriteAt(x, y);
+ * @param x The x-coordinate of the point being tested
+ * @param y The y-coordinate of the point being tested
+ * @return The handle of the sprite at that point, or -1
+ */
+	public int getSpriteAt(double x, double y) {
+		synchronized (lock) {
+			double px = x - getX();
+			double py = y - getY();
+			for (int slot = nSprites - 1; slot >= 0; slot--) {
+				int f = 4 * frames[slot];
+				double sx = xs[slot];
+				double sy = ys[slot];
+				if (px >= sx && py >= sy && px < sx + frameRects[f + 2] * scaleX
+				             && py < sy + frameRects[f + 3] * scaleY) {
+					return slotHandles[slot];
+				}
+			}
+			return -1;
+		}
+	}
+
+/* Method: setSpriteScale(sx, sy) */
+/**
+ * Sets the factors by which every frame is scaled when it is displayed.
+ * The atlas is scaled once when it is next painted rather than each time
+ * a sprite is drawn.
+ *
+ * @usage batch.setSpriteScale(sx, sy);
+ * @param sx The scale factor in the x direction
+ * @param sy The scale factor in the y direction
+ */
+	public void setSpriteScale(double sx, double sy) {
+		synchronized (lock) {
+			scaleX = sx;
+			scaleY = sy;
+			scaledAtlas = null;
+		}
+		repaint();
+	}
+
+/* Method: setSpriteScale(sf) */
+/**
+ * Sets the factor by which every frame is scaled in both dimensions.
+ *
+ * @usage batch.setSpriteScale(sf);
+ * @param sf The scale factor
+ */
+	public final void setSpriteScale(double sf) {
+		setSpriteScale(sf, sf);
+	}
+
+/* Method: getImage() */
+/**
+ * Returns the atlas image shared by the sprites.
+ *
+ * @usage Image image = batch.getImage();
+ * @return The atlas image
+ */
+	public Image getImage() {
+		return atlas;
+	}
+
+/* Method: paint(g) */
+/**
+ * Implements the <code>paint</code> operation for this graphical object.  This method
+ * is not called directly by clients.
+ * @noshow
+ */
+	public void paint(Graphics g) {
+		synchronized (lock) {
+			if (scaledAtlas == null) createScaledAtlas();
+			if (scaledAtlas == null) return;
+			int x0 = GMath.round(getX());
+			int y0 = GMath.round(getY());
+			Rectangle clip = g.getClipBounds();
+			for (int slot = 0; slot < nSprites; slot++) {
+				int f = 4 * frames[slot];
+				int dx = x0 + GMath.round(xs[slot]);
+				int dy = y0 + GMath.round(ys[slot]);
+				int w = scaledRects[f + 2];
+				int h = scaledRects[f + 3];
+				if (clip != null) {
+					if (dx + w <= clip.x || dy + h <= clip.y) continue;
+					if (dx >= clip.x + clip.width || dy >= clip.y + clip.height) continue;
+				}
+				int sx = scaledRects[f];
+				int sy = scaledRects[f + 1];
+				g.drawImage(scaledAtlas, dx, dy, dx + w, dy + h, sx, sy, sx + w, sy + h, null);
+			}
+		}
+	}
+
+/* Method: getBounds() */
+/**
+ * Returns the smallest rectangle that covers every sprite.
+ *
+ * @usage GRectangle bounds = batch.getBounds();
+ * @return The bounding box for this object
+ */
+	public GRectangle getBounds() {
+		synchronized (lock) {
+			if (nSprites == 0) return new GRectangle(getX(), getY(), 0, 0);
+			double xMin = Double.MAX_VALUE;
+			double yMin = Double.MAX_VALUE;
+			double xMax = -Double.MAX_VALUE;
+			double yMax = -Double.MAX_VALUE;
+			for (int slot = 0; slot < nSprites; slot++) {
+				int f = 4 * frames[slot];
+				xMin = Math.min(xMin, xs[slot]);
+				yMin = Math.min(yMin, ys[slot]);
+				xMax = Math.max(xMax, xs[slot] + frameRects[f + 2] * scaleX);
+				yMax = Math.max(yMax, ys[slot] + frameRects[f + 3] * scaleY);
+			}
+			return new GRectangle(getX() + xMin, getY() + yMin, xMax - xMin, yMax - yMin);
+		}
+	}
+
+/* Method: contains(x, y) */
+/**
+ * Checks to see whether a point is inside one of the sprites.
+ *
+ * @usage if (batch.contains(x, y)) . . .
+ * @param x The x-coordinate of the point being tested
+ * @param y The y-coordinate of the point being tested
+ * @return <code>true</code> if the point (<code>x</code>,&nbsp;<code>y</code>) is inside
+ *         a sprite, and <code>false</code> otherwise
+ */
+	public boolean contains(double x, double y) {
+		return getSpriteAt(x, y) >= 0;
+	}
+
+/* Private method: setAtlas(image) */
+/**
+ * Loads the atlas image and records its size.
+ */
+	private void setAtlas(Image image) {
+		atlas = MediaTools.loadImage(image);
+		Component observer = MediaTools.getImageObserver();
+		atlasWidth = atlas.getWidth(observer);
+		atlasHeight = atlas.getHeight(observer);
+		frameRects = new int[4 * INITIAL_CAPACITY];
+		nFrames = 0;
+		scaleX = 1;
+		scaleY = 1;
+	}
+
+/* Private method: createScaledAtlas() */
+/**
+ * Creates a copy of the atlas at the display scale, together with the
+ * corresponding frame rectangles, so that painting never has to scale.
+ */
+	private void createScaledAtlas() {
+		int w = (int) Math.ceil(atlasWidth * scaleX);
+		int h = (int) Math.ceil(atlasHeight * scaleY);
+		if (w <= 0 || h <= 0) return;
+		BufferedImage image = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+		Graphics2D g2 = image.createGraphics();
+		g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+		                    RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+		g2.drawImage(atlas, 0, 0, w, h, MediaTools.getImageObserver());
+		g2.dispose();
+		scaledRects = new int[4 * nFrames];
+		for (int i = 0; i < 4 * nFrames; i += 4) {
+			scaledRects[i] = GMath.round(frameRects[i] * scaleX);
+			scaledRects[i + 1] = GMath.round(frameRects[i + 1] * scaleY);
+			scaledRects[i + 2] = GMath.round((frameRects[i] + frameRects[i + 2]) * scaleX) - scaledRects[i];
+			scaledRects[i + 3] = GMath.round((frameRects[i + 1] + frameRects[i + 3]) * scaleY) - scaledRects[i + 1];
+		}
+		scaledAtlas = image;
+	}
+
+/* Private method: initSprites() */
+/**
+ * Resets the sprite arrays to their initial empty state.
+ */
+	private void initSprites() {
+		xs = new double[INITIAL_CAPACITY];
+		ys = new double[INITIAL_CAPACITY];
+		frames = new int[INITIAL_CAPACITY];
+		slotHandles = new int[INITIAL_CAPACITY];
+		handleSlots = new int[INITIAL_CAPACITY];
+		freeHandles = new int[INITIAL_CAPACITY];
+		nSprites = 0;
+		nHandles = 0;
+		nFreeHandles = 0;
+	}
+
+/* Private method: growSprites() */
+/**
+ * Doubles the capacity of the sprite arrays.  Because the number of handles
+ * in use never exceeds the number of sprites, the handle arrays grow at the
+ * same time.
+ */
+	private void growSprites() {
+		int capacity = 2 * xs.length;
+		double[] newXs = new double[capacity];
+		double[] newYs = new double[capacity];
+		int[] newFrames = new int[capacity];
+		int[] newSlotHandles = new int[capacity];
+		int[] newHandleSlots = new int[capacity];
+		int[] newFreeHandles = new int[capacity];
+		System.arraycopy(xs, 0, newXs, 0, nSprites);
+		System.arraycopy(ys, 0, newYs, 0, nSprites);
+		System.arraycopy(frames, 0, newFrames, 0, nSprites);
+		System.arraycopy(slotHandles, 0, newSlotHandles, 0, nSprites);
+		System.arraycopy(handleSlots, 0, newHandleSlots, 0, nHandles);
+		System.arraycopy(freeHandles, 0, newFreeHandles, 0, nFreeHandles);
+		xs = newXs;
+		ys = newYs;
+		frames = newFrames;
+		slotHandles = newSlotHandles;
+		handleSlots = newHandleSlots;
+		freeHandles = newFreeHandles;
+	}
+
+/* Private method: getSlot(handle) */
+/**
+ * Returns the array index of the sprite with the specified handle.
+ */
+	private int getSlot(int handle) {
+		int slot = (handle >= 0 && handle < nHandles) ? handleSlots[handle] : -1;
+		if (slot < 0) throw new ErrorException("Illegal sprite handle " + handle);
+		return slot;
+	}
+
+/* Private method: checkFrame(frame) */
+/**
+ * Checks that the frame number is defined.
+ */
+	private void checkFrame(int frame) {
+		if (frame < 0 || frame >= nFrames) {
+			throw new ErrorException("Illegal frame number " + frame);
+		}
+	}
+
+/* Private constants */
+
+	private static final int INITIAL_CAPACITY = 16;
+
+/* Private state */
+
+	private Object lock;
+	private Image atlas;
+	private int atlasWidth;
+	private int atlasHeight;
+	private BufferedImage scaledAtlas;
+	private double scaleX;
+	private double scaleY;
+	private int[] frameRects;
+	private int[] scaledRects;
+	private int nFrames;
+	private double[] xs;
+	private double[] ys;
+	private int[] frames;
+	private int[] slotHandles;
+	private int[] handleSlots;
+	private int[] freeHandles;
+	private int nSprites;
+	private int nHandles;
+	private int nFreeHandles;
+}
@@ -0,0 +1,466 @@
+/*
+ * @(#)GTileMap.java   1.0 06/08/25
+ */
+
+// ************************************************************************
+// * Copyright (c) 2006 by the Association for Computing Machinery        *
+// *                                                                      *
+// * The Java Task Force seeks to impose few restrictions on the use of   *
+// * these packages so that users have as much freedom as possible to     *
+// * use this software in constructive ways and can make the benefits of  *
+// * that work available to others.  In view of the legal complexities    *
+// * of software development, however, it is essential for the ACM to     *
+// * maintain its copyright to guard against attempts by others to        *
+// * claim ownership rights.  The full text of the JTF Software License   *
+// * is available at the following URL:                                   *
+// *                                                                      *
+// *          http://www.acm.org/jtf/jtf-software-license.pdf             *
+// *                                                                      *
+// ************************************************************************
+
+package acm.graphics;
+
+import acm.util.ErrorException;
+import acm.util.MediaTools;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/* Class: GTileMap */
+
+/**
+ * The <code>GTileMap</code> class is a graphical object that displays a
+ * rectangular grid of tiles taken from a single atlas image.  The atlas is
+ * divided into tiles of equal size, numbered from left to right across each
+ * row, and the map records the number of the tile in each cell of the grid
+ * in a packed array.  A scrolling level built this way is a single object
+ * no matter how many cells it contains.
+ *
+ * <p>The map is drawn in square chunks of cells, each of which is rendered
+ * into an image the first time it becomes visible and reused until one of
+ * its cells changes.  Only the chunks that intersect the clipping region are
+ * drawn, so painting a large map costs time in proportion to the visible
+ * area rather than to the size of the map.  A bounded number of chunk images
+ * is kept, and the least recently used chunks are discarded first.
+ */
+public class GTileMap extends GObject {
+
+/* Constant: EMPTY */
+/** The tile number used for cells that display nothing. */
+	public static final int EMPTY = -1;
+
+/* Constructor: GTileMap(atlas, tileWidth, tileHeight, nRows, nColumns) */
+/**
+ * Creates a new tile map with the specified number of rows and columns, in
+ * which every cell is initially <a href="#EMPTY"><code>EMPTY</code></a>.
+ *
+ * @usage GTileMap map = new GTileMap(atlas, tileWidth, tileHeight, nRows, nColumns);
+ * @param atlas The image containing the tiles
+ * @param tileWidth The width of each tile in pixels
+ * @param tileHeight The height of each tile in pixels
+ * @param nRows The number of rows in the map
+ * @param nColumns The number of columns in the map
+ */
+	public GTileMap(Image atlas, int tileWidth, int tileHeight, int nRows, int nColumns) {
+		if (tileWidth <= 0 || tileHeight <= 0) {
+			throw new ErrorException("Tile size must be positive");
+		}
+		if (nRows < 0 || nColumns < 0) {
+			throw new ErrorException("Map size must not be negative");
+		}
+		lock = new Object();
+		this.tileWidth = tileWidth;
+		this.tileHeight = tileHeight;
+		this.nRows = nRows;
+		this.nColumns = nColumns;
+		tiles = new short[nRows * nColumns];
+		Arrays.fill(tiles, (short) EMPTY);
+		chunkRows = (nRows + CHUNK_SIZE - 1) / CHUNK_SIZE;
+		chunkColumns = (nColumns + CHUNK_SIZE - 1) / CHUNK_SIZE;
+		chunkCache = new LinkedHashMap(16, 0.75f, true);
+		setAtlas(atlas);
+	}
+
+/* Constructor: GTileMap(name, tileWidth, tileHeight, nRows, nColumns) */
+/**
+ * Creates a new tile map using the atlas image with the specified name,
+ * which is found as described in the constructors for <code>GImage</code>.
+ *
+ * @usage GTileMap map = new GTileMap(name, tileWidth, tileHeight, nRows, nColumns);
+ * @param name The name of the atlas image
+ * @param tileWidth The width of each tile in pixels
+ * @param tileHeight The height of each tile in pixels
+ * @param nRows The number of rows in the map
+ * @param nColumns The number of columns in the map
+ */
+	public GTileMap(String name, int tileWidth, int tileHeight, int nRows, int nColumns) {
+		this(MediaTools.loadImage(name), tileWidth, tileHeight, nRows, nColumns);
+	}
+
+/* Method: setTile(row, col, tile) */
+/**
+ * Sets the tile displayed in the specified cell.
+ *
+ * @usage map.setTile(row, col, tile);
+ * @param row The row of the cell
+ * @param col The column of the cell
+ * @param tile The tile number, or <code>EMPTY</code>
+ */
+	public void setTile(int row, int col, int tile) {
+		checkCell(row, col);
+		checkTile(tile);
+		synchronized (lock) {
+			int index = row * nColumns + col;
+			if (tiles[index] == tile) return;
+			tiles[index] = (short) tile;
+			invalidateChunk(row / CHUNK_SIZE, col / CHUNK_SIZE);
+		}
+		repaint();
+	}
+
+/* Method: getTile(row, col) */
+/**
+ * Returns the tile displayed in the specified cell.
+ *
+ * @usage int tile = map.getTile(row, col);
+ * @param row The row of the cell
+ * @param col The column of the cell
+ * @return The tile number, or <code>EMPTY</code>
+ */
+	public int getTile(int row, int col) {
+		checkCell(row, col);
+		return tiles[row * nColumns + col];
+	}
+
+/* Method: getTileAt(x, y) */
+/**
+ * Returns the tile displayed at the point (<code>x</code>,&nbsp;<code>y</code>),
+ * which is expressed in the coordinates of the enclosing container.  If the
+ * point lies outside the map, <code>getTileAt</code> returns <code>EMPTY</code>.
+ *
+ * @usage int tile = map.getTileAt(x, y);
+ * @param x The x-coordinate of the point
+ * @param y The y-coordinate of the point
+ * @return The tile number at that point, or <code>EMPTY</code>
+ */
+	public int getTileAt(double x, double y) {
+		int row = getRowAt(y);
+		int col = getColumnAt(x);
+		if (row < 0 || row >= nRows || col < 0 || col >= nColumns) return EMPTY;
+		return tiles[row * nColumns + col];
+	}
+
+/* Method: getRowAt(y) */
+/**
+ * Returns the row that contains the specified y-coordinate, which is
+ * expressed in the coordinates of the enclosing container.  The result
+ * may lie outside the map.
+ *
+ * @usage int row = map.getRowAt(y);
+ * @param y The y-coordinate
+ * @return The row containing that coordinate
+ */
+	public int getRowAt(double y) {
+		return (int) Math.floor((y - getY()) / tileHeight);
+	}
+
+/* Method: getColumnAt(x) */
+/**
+ * Returns the column that contains the specified x-coordinate, which is
+ * expressed in the coordinates of the enclosing container.  The result
+ * may lie outside the map.
+ *
+ * @usage int col = map.getColumnAt(x);
+ * @param x The x-coordinate
+ * @return The column containing that coordinate
+ */
+	public int getColumnAt(double x) {
+		return (int) Math.floor((x - getX()) / tileWidth);
+	}
+
+/* Method: setTiles(tiles) */
+/**
+ * Sets every cell of the map from an array of tile numbers stored in row-major
+ * order, which must contain exactly <code>getRowCount() * getColumnCount()</code>
+ * entries.
+ *
+ * @usage map.setTiles(tiles);
+ * @param tiles The array of tile numbers
+ */
+	public void setTiles(int[] tiles) {
+		if (tiles.length != this.tiles.length) {
+			throw new ErrorException("Tile array has the wrong size");
+		}
+		for (int i = 0; i < tiles.length; i++) {
+			checkTile(tiles[i]);
+		}
+		synchronized (lock) {
+			for (int i = 0; i < tiles.length; i++) {
+				this.tiles[i] = (short) tiles[i];
+			}
+			chunkCache.clear();
+		}
+		repaint();
+	}
+
+/* Method: fill(tile) */
+/**
+ * Sets every cell of the map to the specified tile.
+ *
+ * @usage map.fill(tile);
+ * @param tile The tile number, or <code>EMPTY</code>
+ */
+	public void fill(int tile) {
+		checkTile(tile);
+		synchronized (lock) {
+			Arrays.fill(tiles, (short) tile);
+			chunkCache.clear();
+		}
+		repaint();
+	}
+
+/* Method: getRowCount() */
+/**
+ * Returns the number of rows in the map.
+ *
+ * @usage int nRows = map.getRowCount();
+ * @return The number of rows
+ */
+	public int getRowCount() {
+		return nRows;
+	}
+
+/* Method: getColumnCount() */
+/**
+ * Returns the number of columns in the map.
+ *
+ * @usage int nColumns = map.getColumnCount();
+ * @return The number of columns
+ */
+	public int getColumnCount() {
+		return nColumns;
+	}
+
+/* Method: getTileWidth() */
+/**
+ * Returns the width of each tile in pixels.
+ *
+ * @usage int width = map.getTileWidth();
+ * @return The width of a tile
+ */
+	public int getTileWidth() {
+		return tileWidth;
+	}
+
+/* Method: getTileHeight() */
+/**
+ * Returns the height of each tile in pixels.
+ *
+ * @usage int height = map.getTileHeight();
+ * @return The height of a tile
+ */
+	public int getTileHeight() {
+		return tileHeight;
+	}
+
+/* Method: getTileCount() */
+/**
+ * Returns the number of different tiles in the atlas.
+ *
+ * @usage int n = map.getTileCount();
+ * @return The number of tiles in the atlas
+ */
+	public int getTileCount() {
+		return nTiles;
+	}
+
+/* Method: paint(g) */
+/**
+ * Implements the <code>paint</code> operation for this graphical object.  This method
+ * is not called directly by clients.
+ * @noshow
+ */
+	public void paint(Graphics g) {
+		int x0 = GMath.round(getX());
+		int y0 = GMath.round(getY());
+		int chunkWidth = CHUNK_SIZE * tileWidth;
+		int chunkHeight = CHUNK_SIZE * tileHeight;
+		int firstRow = 0;
+		int lastRow = chunkRows - 1;
+		int firstCol = 0;
+		int lastCol = chunkColumns - 1;
+		Rectangle clip = g.getClipBounds();
+		if (clip != null) {
+			firstRow = Math.max(firstRow, floorDiv(clip.y - y0, chunkHeight));
+			lastRow = Math.min(lastRow, floorDiv(clip.y + clip.height - 1 - y0, chunkHeight));
+			firstCol = Math.max(firstCol, floorDiv(clip.x - x0, chunkWidth));
+			lastCol = Math.min(lastCol, floorDiv(clip.x + clip.width - 1 - x0, chunkWidth));
+		}
+		synchronized (lock) {
+			for (int cr = firstRow; cr <= lastRow; cr++) {
+				for (int cc = firstCol; cc <= lastCol; cc++) {
+					Image chunk = getChunk(cr, cc);
+					if (chunk != null) {
+						g.drawImage(chunk, x0 + cc * chunkWidth, y0 + cr * chunkHeight, null);
+					}
+				}
+			}
+		}
+	}
+
+/* Method: getBounds() */
+/**
+ * Returns the bounding box of the map.
+ *
+ * @usage GRectangle bounds = map.getBounds();
+ * @return The bounding box for this object
+ */
+	public GRectangle getBounds() {
+		return new GRectangle(getX(), getY(), (double) nColumns * tileWidth, (double) nRows * tileHeight);
+	}
+
+/* Method: contains(x, y) */
+/**
+ * Checks to see whether a point lies in a cell that is not empty.
+ *
+ * @usage if (map.contains(x, y)) . . .
+ * @param x The x-coordinate of the point being tested
+ * @param y The y-coordinate of the point being tested
+ * @return <code>true</code> if the point (<code>x</code>,&nbsp;<code>y</code>) is inside
+ *         a nonempty cell, and <code>false</code> otherwise
+ */
+	public boolean contains(double x, double y) {
+		return getTileAt(x, y) != EMPTY;
+	}
+
+/* Private method: setAtlas(image) */
+/**
+ * Loads the atlas, copies it into a <code>BufferedImage</code>, and counts the tiles.
+ */
+	private void setAtlas(Image image) {
+		image = MediaTools.loadImage(image);
+		Component observer = MediaTools.getImageObserver();
+		int width = image.getWidth(observer);
+		int height = image.getHeight(observer);
+		atlasColumns = width / tileWidth;
+		nTiles = atlasColumns * (height / tileHeight);
+		if (nTiles > Short.MAX_VALUE) {
+			throw new ErrorException("Too many tiles in the atlas");
+		}
+		if (width > 0 && height > 0) {
+			atlas = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+			Graphics2D g2 = atlas.createGraphics();
+			g2.drawImage(image, 0, 0, observer);
+			g2.dispose();
+		}
+	}
+
+/* Private method: getChunk(chunkRow, chunkCol) */
+/**
+ * Returns the image for the specified chunk, rendering it if necessary.
+ */
+	private Image getChunk(int chunkRow, int chunkCol) {
+		Integer key = Integer.valueOf(chunkRow * chunkColumns + chunkCol);
+		BufferedImage chunk = (BufferedImage) chunkCache.get(key);
+		if (chunk == null && atlas != null) {
+			chunk = renderChunk(chunkRow, chunkCol);
+			chunkCache.put(key, chunk);
+			if (chunkCache.size() > MAX_CACHED_CHUNKS) {
+				Iterator it = chunkCache.entrySet().iterator();
+				it.next();
+				it.remove();
+			}
+		}
+		return chunk;
+	}
+
+/* Private method: renderChunk(chunkRow, chunkCol) */
+/**
+ * Draws the tiles of the specified chunk into a new image.
+ */
+	private BufferedImage renderChunk(int chunkRow, int chunkCol) {
+		int row0 = chunkRow * CHUNK_SIZE;
+		int col0 = chunkCol * CHUNK_SIZE;
+		int rows = Math.min(CHUNK_SIZE, nRows - row0);
+		int cols = Math.min(CHUNK_SIZE, nColumns - col0);
+		BufferedImage chunk = new BufferedImage(cols * tileWidth, rows * tileHeight,
+		                                        BufferedImage.TYPE_INT_ARGB);
+		Graphics g = chunk.getGraphics();
+		for (int r = 0; r < rows; r++) {
+			int index = (row0 + r) * nColumns + col0;
+			for (int c = 0; c < cols; c++) {
+				int tile = tiles[index + c];
+				if (tile == EMPTY) continue;
+				int sx = (tile % atlasColumns) * tileWidth;
+				int sy = (tile / atlasColumns) * tileHeight;
+				int dx = c * tileWidth;
+				int dy = r * tileHeight;
+				g.drawImage(atlas, dx, dy, dx + tileWidth, dy + tileHeight,
+				            sx, sy, sx + tileWidth, sy + tileHeight, null);
+			}
+		}
+		g.dispose();
+		return chunk;
+	}
+
+/* Private method: invalidateChunk(chunkRow, chunkCol) */
+/**
+ * Discards the cached image for the specified chunk.
+ */
+	private void invalidateChunk(int chunkRow, int chunkCol) {
+		chunkCache.remove(Integer.valueOf(chunkRow * chunkColumns + chunkCol));
+	}
+
+/* Private method: checkCell(row, col) */
+/**
+ * Checks that the row and column lie inside the map.
+ */
+	private void checkCell(int row, int col) {
+		if (row < 0 || row >= nRows || col < 0 || col >= nColumns) {
+			throw new ErrorException("Cell (" + row + ", " + col + ") is outside the map");
+		}
+	}
+
+/* Private method: checkTile(tile) */
+/**
+ * Checks that the tile number is defined in the atlas.
+ */
+	private void checkTile(int tile) {
+		if (tile != EMPTY && (tile < 0 || tile >= nTiles)) {
+			throw new ErrorException("Illegal tile number " + tile);
+		}
+	}
+
+/* Private static method: floorDiv(x, y) */
+/**
+ * Divides <code>x</code> by the positive value <code>y</code>, rounding toward
+ * negative infinity.
+ */
+	private static int floorDiv(int x, int y) {
+		return (x >= 0) ? x / y : -((-x + y - 1) / y);
+	}
+
+/* Private constants */
+
+	private static final int CHUNK_SIZE = 16;
+	private static final int MAX_CACHED_CHUNKS = 256;
+
+/* Private state */
+
+	private Object lock;
+	private BufferedImage atlas;
+	private int atlasColumns;
+	private int nTiles;
+	private int tileWidth;
+	private int tileHeight;
+	private int nRows;
+	private int nColumns;
+	private short[] tiles;
+	private int chunkRows;
+	private int chunkColumns;
+	private Map chunkCache;
+}
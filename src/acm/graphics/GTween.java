@@ -0,0 +1,579 @@
+/*
+ * @(#)GTween.java   1.0 06/08/25
+ */
+
+// ************************************************************************
+// * Copyright (c) 2006 by the Association for Computing Machinery        *
+// *                                                                      *
+// * The Java Task Force seeks to impose few restrictions on the use of   *
+// * these packages so that users have as much freedom as possible to     *
+// * use this software in constructive ways and can make the benefits of  *
+// * that work available to others.  In view of the legal complexities    *
+// * of software development, however, it is essential for the ACM to     *
+// * maintain its copyright to guard against attempts by others to        *
+// * claim ownership rights.  The full text of the JTF Software License   *
+// * is available at the following URL:                                   *
+// *                                                                      *
+// *          http://www.acm.org/jtf/jtf-software-license.pdf             *
+// *                                                                      *
+// ************************************************************************
+
+package acm.graphics;
+
+import acm.util.ErrorException;
+import acm.util.JTFTools;
+import acm.util.SwingTimer;
+
+import java.awt.*;
+import java.awt.event.*;
+import java.util.ArrayList;
+
+/* Class: GTween */
+
+/**
+ * The <code>GTween</code> class animates one property of a graphical object
+ * from its current value to a new value over a period of time.  For example,
+ * the statement
+ *
+ * <p><code>&nbsp;&nbsp;&nbsp;GTween.moveTo(ball, 300, 200, 1000).start();</code>
+ *
+ * <p>moves <code>ball</code> smoothly to (300,&nbsp;200) over one second.
+ * The speed at which the value changes is controlled by an <i>easing</i>
+ * function, which is one of the constants defined in this class.
+ *
+ * <p>All tweens are driven by a single shared timer that runs on the event
+ * dispatch thread, so a program can animate thousands of objects at once
+ * without creating any threads.  On each tick, all the active tweens update
+ * their objects while automatic repainting is suspended, after which each
+ * affected canvas is repainted once.
+ */
+public class GTween {
+
+/** Easing function in which the value changes at a constant rate */
+	public static final int LINEAR = 0;
+
+/** Easing function that starts slowly and speeds up */
+	public static final int EASE_IN = 1;
+
+/** Easing function that starts quickly and slows down */
+	public static final int EASE_OUT = 2;
+
+/** Easing function that speeds up and then slows down */
+	public static final int EASE_IN_OUT = 3;
+
+/** Easing function that overshoots the final value and then settles back */
+	public static final int BACK_OUT = 4;
+
+/** Easing function that bounces against the final value */
+	public static final int BOUNCE_OUT = 5;
+
+/* Static method: moveTo(gobj, x, y, duration) */
+/**
+ * Creates a tween that moves the object to the point (<code>x</code>,&nbsp;<code>y</code>).
+ *
+ * @usage GTween tween = GTween.moveTo(gobj, x, y, duration);
+ * @param gobj The object to move
+ * @param x The final x-coordinate
+ * @param y The final y-coordinate
+ * @param duration The length of the animation in milliseconds
+ * @return A tween that has not yet been started
+ */
+	public static GTween moveTo(GObject gobj, double x, double y, double duration) {
+		return new GTween(gobj, LOCATION, new double[] { x, y }, duration);
+	}
+
+/* Static method: sizeTo(gobj, width, height, duration) */
+/**
+ * Creates a tween that changes the size of the object, which must implement
+ * <code>GResizable</code>.
+ *
+ * @usage GTween tween = GTween.sizeTo(gobj, width, height, duration);
+ * @param gobj The object to resize
+ * @param width The final width
+ * @param height The final height
+ * @param duration The length of the animation in milliseconds
+ * @return A tween that has not yet been started
+ */
+	public static GTween sizeTo(GObject gobj, double width, double height, double duration) {
+		if (!(gobj instanceof GResizable)) {
+			throw new ErrorException("sizeTo: Object is not resizable");
+		}
+		return new GTween(gobj, SIZE, new double[] { width, height }, duration);
+	}
+
+/* Static method: rotateTo(gobj, theta, duration) */
+/**
+ * Creates a tween that rotates the object to the angle <code>theta</code>,
+ * measured in degrees.
+ *
+ * @usage GTween tween = GTween.rotateTo(gobj, theta, duration);
+ * @param gobj The object to rotate
+ * @param theta The final angle in degrees
+ * @param duration The length of the animation in milliseconds
+ * @return A tween that has not yet been started
+ */
+	public static GTween rotateTo(GObject gobj, double theta, double duration) {
+		return new GTween(gobj, ROTATION, new double[] { theta }, duration);
+	}
+
+/* Static method: colorTo(gobj, color, duration) */
+/**
+ * Creates a tween that changes the color of the object.  All four components
+ * of the color, including alpha, are interpolated.
+ *
+ * @usage GTween tween = GTween.colorTo(gobj, color, duration);
+ * @param gobj The object whose color changes
+ * @param color The final color
+ * @param duration The length of the animation in milliseconds
+ * @return A tween that has not yet been started
+ */
+	public static GTween colorTo(GObject gobj, Color color, double duration) {
+		return new GTween(gobj, COLOR, colorComponents(color), duration);
+	}
+
+/* Static method: fillColorTo(gobj, color, duration) */
+/**
+ * Creates a tween that changes the fill color of the object, which must
+ * implement <code>GFillable</code>.
+ *
+ * @usage GTween tween = GTween.fillColorTo(gobj, color, duration);
+ * @param gobj The object whose fill color changes
+ * @param color The final fill color
+ * @param duration The length of the animation in milliseconds
+ * @return A tween that has not yet been started
+ */
+	public static GTween fillColorTo(GObject gobj, Color color, double duration) {
+		if (!(gobj instanceof GFillable)) {
+			throw new ErrorException("fillColorTo: Object is not fillable");
+		}
+		return new GTween(gobj, FILL_COLOR, colorComponents(color), duration);
+	}
+
+/* Method: setEasing(easing) */
+/**
+ * Sets the easing function, which must be one of the constants defined in
+ * this class.  The default is <code>EASE_IN_OUT</code>.
+ *
+ * @usage tween.setEasing(easing);
+ * @param easing The easing function
+ * @return This tween, so that calls can be chained
+ */
+	public GTween setEasing(int easing) {
+		if (easing < LINEAR || easing > BOUNCE_OUT) {
+			throw new ErrorException("setEasing: Illegal easing function");
+		}
+		this.easing = easing;
+		return this;
+	}
+
+/* Method: setDelay(delay) */
+/**
+ * Sets the time between the call to <code>start</code> and the beginning
+ * of the animation.
+ *
+ * @usage tween.setDelay(delay);
+ * @param delay The delay in milliseconds
+ * @return This tween, so that calls can be chained
+ */
+	public GTween setDelay(double delay) {
+		this.delay = delay;
+		return this;
+	}
+
+/* Method: addActionListener(listener) */
+/**
+ * Adds a listener that is called on the event dispatch thread when the
+ * tween finishes.  The listener is not called if the tween is cancelled.
+ *
+ * @usage tween.addActionListener(listener);
+ * @param listener The listener to add
+ * @return This tween, so that calls can be chained
+ */
+	public GTween addActionListener(ActionListener listener) {
+		actionListener = AWTEventMulticaster.add(actionListener, listener);
+		return this;
+	}
+
+/* Method: start() */
+/**
+ * Starts the tween.  The starting value of the property is read when the
+ * animation begins, after any delay.
+ *
+ * @usage tween.start();
+ * @return This tween, so that calls can be chained
+ */
+	public GTween start() {
+		startTime = JTFTools.getClock() + (long) (delay * 1.0E6);
+		started = false;
+		finished = false;
+		GTweenEngine.getEngine().add(this);
+		return this;
+	}
+
+/* Method: cancel() */
+/**
+ * Stops the tween, leaving the property at its current value.
+ *
+ * @usage tween.cancel();
+ */
+	public void cancel() {
+		finished = true;
+		GTweenEngine.getEngine().remove(this);
+	}
+
+/* Method: isFinished() */
+/**
+ * Returns <code>true</code> if the tween has finished or has been cancelled.
+ *
+ * @usage if (tween.isFinished()) . . .
+ * @return <code>true</code> if the tween is no longer running
+ */
+	public boolean isFinished() {
+		return finished;
+	}
+
+/* Method: getObject() */
+/**
+ * Returns the object that this tween animates.
+ *
+ * @usage GObject gobj = tween.getObject();
+ * @return The object animated by this tween
+ */
+	public GObject getObject() {
+		return target;
+	}
+
+/* Static method: ease(easing, t) */
+/**
+ * Applies the easing function to the fraction <code>t</code> of the total
+ * time that has elapsed, which ranges from 0 to 1.  The result is 0 when
+ * <code>t</code> is 0 and 1 when <code>t</code> is 1.
+ *
+ * @usage double f = GTween.ease(easing, t);
+ * @param easing The easing function
+ * @param t The fraction of elapsed time
+ * @return The fraction of the change in value to apply
+ */
+	public static double ease(int easing, double t) {
+		switch (easing) {
+		  case EASE_IN:
+			return t * t * t;
+		  case EASE_OUT:
+			t = 1 - t;
+			return 1 - t * t * t;
+		  case EASE_IN_OUT:
+			if (t < 0.5) return 4 * t * t * t;
+			t = 2 - 2 * t;
+			return 1 - t * t * t / 2;
+		  case BACK_OUT:
+			t = t - 1;
+			return 1 + t * t * ((BACK_AMOUNT + 1) * t + BACK_AMOUNT);
+		  case BOUNCE_OUT:
+			if (t < 1 / 2.75) return 7.5625 * t * t;
+			if (t < 2 / 2.75) {
+				t -= 1.5 / 2.75;
+				return 7.5625 * t * t + 0.75;
+			}
+			if (t < 2.5 / 2.75) {
+				t -= 2.25 / 2.75;
+				return 7.5625 * t * t + 0.9375;
+			}
+			t -= 2.625 / 2.75;
+			return 7.5625 * t * t + 0.984375;
+		  default:
+			return t;
+		}
+	}
+
+/* Protected constructor: GTween(gobj, property, endValues, duration) */
+/**
+ * Creates a tween for the specified property.  Clients use the static
+ * factory methods instead.
+ * @noshow
+ */
+	protected GTween(GObject gobj, int property, double[] endValues, double duration) {
+		if (duration < 0) throw new ErrorException("GTween: Duration must not be negative");
+		target = gobj;
+		this.property = property;
+		this.endValues = endValues;
+		startValues = new double[endValues.length];
+		durationNanos = (long) (duration * 1.0E6);
+		easing = EASE_IN_OUT;
+		delay = 0;
+		finished = true;
+	}
+
+/* Package method: update(now) */
+/**
+ * Updates the property for the time <code>now</code> and returns
+ * <code>true</code> if the tween has just reached its final value.  This method is called only by
+ * the shared timer on the event dispatch thread.
+ */
+	boolean update(long now) {
+		if (finished) return false;
+		if (now < startTime) return false;
+		if (!started) {
+			readValues(startValues);
+			started = true;
+		}
+		double t = (durationNanos == 0) ? 1 : (double) (now - startTime) / durationNanos;
+		if (t >= 1) t = 1;
+		double f = ease(easing, t);
+		double[] values = new double[endValues.length];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = startValues[i] + f * (endValues[i] - startValues[i]);
+		}
+		writeValues(values);
+		if (t == 1) finished = true;
+		return finished;
+	}
+
+/* Package method: fireCompletion() */
+/**
+ * Notifies the listeners that the tween has finished.
+ */
+	void fireCompletion() {
+		if (actionListener != null) {
+			actionListener.actionPerformed(new ActionEvent(this, ActionEvent.ACTION_PERFORMED,
+			                                               "finished"));
+		}
+	}
+
+/* Private method: readValues(values) */
+/**
+ * Stores the current value of the property in the array.
+ */
+	private void readValues(double[] values) {
+		switch (property) {
+		  case LOCATION:
+			values[0] = target.getX();
+			values[1] = target.getY();
+			break;
+		  case SIZE:
+			values[0] = target.getWidth();
+			values[1] = target.getHeight();
+			break;
+		  case ROTATION:
+			values[0] = GMath.toDegrees(target.getRotation());
+			break;
+		  case COLOR:
+			copyComponents(target.getColor(), values);
+			break;
+		  case FILL_COLOR:
+			copyComponents(((GFillable) target).getFillColor(), values);
+			break;
+		}
+	}
+
+/* Private method: writeValues(values) */
+/**
+ * Sets the property to the values in the array.
+ */
+	private void writeValues(double[] values) {
+		switch (property) {
+		  case LOCATION:
+			target.setLocation(values[0], values[1]);
+			break;
+		  case SIZE:
+			((GResizable) target).setSize(values[0], values[1]);
+			break;
+		  case ROTATION:
+			target.setRotation(GMath.toRadians(values[0]));
+			target.repaint();
+			break;
+		  case COLOR:
+			target.setColor(toColor(values));
+			break;
+		  case FILL_COLOR:
+			((GFillable) target).setFillColor(toColor(values));
+			break;
+		}
+	}
+
+/* Private static method: colorComponents(color) */
+/**
+ * Returns the red, green, blue, and alpha components of the color.
+ */
+	private static double[] colorComponents(Color color) {
+		double[] values = new double[4];
+		copyComponents(color, values);
+		return values;
+	}
+
+/* Private static method: copyComponents(color, values) */
+/**
+ * Stores the components of the color in the array.
+ */
+	private static void copyComponents(Color color, double[] values) {
+		if (color == null) color = Color.BLACK;
+		values[0] = color.getRed();
+		values[1] = color.getGreen();
+		values[2] = color.getBlue();
+		values[3] = color.getAlpha();
+	}
+
+/* Private static method: toColor(values) */
+/**
+ * Creates a color from interpolated components.
+ */
+	private static Color toColor(double[] values) {
+		return new Color(clamp(values[0]), clamp(values[1]), clamp(values[2]), clamp(values[3]));
+	}
+
+/* Private static method: clamp(value) */
+/**
+ * Rounds a color component and restricts it to the range 0 to 255.
+ */
+	private static int clamp(double value) {
+		return Math.max(0, Math.min(255, GMath.round(value)));
+	}
+
+/* Private constants */
+
+	private static final int LOCATION = 0;
+	private static final int SIZE = 1;
+	private static final int ROTATION = 2;
+	private static final int COLOR = 3;
+	private static final int FILL_COLOR = 4;
+	private static final double BACK_AMOUNT = 1.70158;
+
+/* Private state */
+
+	private GObject target;
+	private int property;
+	private double[] startValues;
+	private double[] endValues;
+	private long durationNanos;
+	private long startTime;
+	private double delay;
+	private int easing;
+	private boolean started;
+	private volatile boolean finished;
+	private ActionListener actionListener;
+
+/* Package state */
+
+	boolean scheduled;
+}
+
+/* Package class: GTweenEngine */
+
+/**
+ * This class holds the active tweens and the single timer that drives them.
+ */
+class GTweenEngine implements ActionListener {
+
+/* Static method: getEngine() */
+/**
+ * Returns the shared engine, creating it if necessary.
+ */
+	public static synchronized GTweenEngine getEngine() {
+		if (engine == null) engine = new GTweenEngine();
+		return engine;
+	}
+
+/* Constructor: GTweenEngine() */
+/**
+ * Creates the engine and its timer, which starts only when a tween is added.
+ */
+	public GTweenEngine() {
+		tweens = new ArrayList();
+		canvases = new ArrayList();
+		timer = new SwingTimer(TICK_INTERVAL, this);
+		timer.setCoalesce(true);
+	}
+
+/* Method: add(tween) */
+/**
+ * Adds a tween to the active list and starts the timer if necessary.
+ */
+	public void add(GTween tween) {
+		synchronized (tweens) {
+			if (!tween.scheduled) {
+				tween.scheduled = true;
+				tweens.add(tween);
+			}
+			if (!timer.isRunning()) timer.start();
+		}
+	}
+
+/* Method: remove(tween) */
+/**
+ * Removes a tween from the active list.
+ */
+	public void remove(GTween tween) {
+		synchronized (tweens) {
+			if (tween.scheduled) {
+				tween.scheduled = false;
+				tweens.remove(tween);
+			}
+		}
+	}
+
+/* ActionListener interface */
+
+	public void actionPerformed(ActionEvent e) {
+		GTween[] active;
+		synchronized (tweens) {
+			active = (GTween[]) tweens.toArray(new GTween[tweens.size()]);
+			if (active.length == 0) {
+				timer.stop();
+				return;
+			}
+		}
+		canvases.clear();
+		for (int i = 0; i < active.length; i++) {
+			Component comp = active[i].getObject().getComponent();
+			if (comp instanceof GCanvas && !canvases.contains(comp)) {
+				GCanvas gc = (GCanvas) comp;
+				canvases.add(gc);
+				gc.beginBatch();
+			}
+		}
+		long now = JTFTools.getClock();
+		ArrayList done = null;
+		try {
+			for (int i = 0; i < active.length; i++) {
+				if (active[i].update(now)) {
+					if (done == null) done = new ArrayList();
+					done.add(active[i]);
+				}
+			}
+		} finally {
+			for (int i = 0; i < canvases.size(); i++) {
+				((GCanvas) canvases.get(i)).endBatch();
+			}
+		}
+		if (done != null) {
+			synchronized (tweens) {
+				int n = 0;
+				for (int i = 0; i < tweens.size(); i++) {
+					GTween tween = (GTween) tweens.get(i);
+					if (tween.isFinished()) {
+						tween.scheduled = false;
+					} else {
+						tweens.set(n++, tween);
+					}
+				}
+				while (tweens.size() > n) {
+					tweens.remove(tweens.size() - 1);
+				}
+			}
+			for (int i = 0; i < done.size(); i++) {
+				((GTween) done.get(i)).fireCompletion();
+			}
+		}
+	}
+
+/* Private constants */
+
+	private static final int TICK_INTERVAL = 15;
+
+/* Private state */
+
+	private static GTweenEngine engine;
+
+	private ArrayList tweens;
+	private ArrayList canvases;
+	private SwingTimer timer;
+}
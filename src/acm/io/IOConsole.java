@@ -25,15 +25,30 @@ import acm.program.ProgramMenuBar;
 import acm.util.ErrorException;
 import acm.util.JTFTools;
 import acm.util.Platform;
+import acm.util.SwingTimer;
 
 import javax.swing.*;
 import javax.swing.text.*;
 import java.awt.*;
+import java.awt.datatransfer.Clipboard;
+import java.awt.datatransfer.DataFlavor;
+import java.awt.datatransfer.StringSelection;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.awt.event.FocusEvent;
 import java.awt.event.FocusListener;
 import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseListener;
+import java.awt.event.MouseMotionListener;
 import java.io.*;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /* Class: IOConsole */
 
@@ -93,6 +108,22 @@ public class IOConsole extends Container implements IOModel {
  */
 	public static final IOConsole SYSTEM_CONSOLE = new SystemConsole();
 
+/* Constant: STANDARD_MODEL */
+/**
+ * This constant selects the standard console model, which displays the
+ * console in a <code>JTextPane</code>.
+ */
+	public static final int STANDARD_MODEL = 0;
+
+/* Constant: LINE_BUFFER_MODEL */
+/**
+ * This constant selects a console model designed for programs that produce
+ * very large amounts of output.  The text is kept in a compact line buffer
+ * and only the visible lines are drawn, so that printing and scrolling stay
+ * fast no matter how many lines have been printed.
+ */
+	public static final int LINE_BUFFER_MODEL = 1;
+
 /* Constructor: IOConsole() */
 /**
  * Creates a new <code>IOConsole</code> object.
@@ -100,19 +131,42 @@ public class IOConsole extends Container implements IOModel {
  * @usage IOConsole console = new IOConsole();
  */
 	public IOConsole() {
-		consoleModel = createConsoleModel();
-		consoleModel.setConsole(this);
-		setBackground(Color.white);
-		setInputColor(Color.blue);
-		setInputStyle(Font.BOLD);
-		setErrorColor(Color.red);
-		setErrorStyle(Font.BOLD);
-		setFont(JTFTools.getStandardFont(DEFAULT_FONT));
-		setLayout(new BorderLayout());
-		add(consoleModel.getConsolePane(), BorderLayout.CENTER);
-		reader = new BufferedReader(new ConsoleReader(consoleModel));
-		writer = new PrintWriter(new ConsoleWriter(consoleModel));
-		exceptionOnError = false;
+		this(STANDARD_MODEL);
+	}
+
+/* Constructor: IOConsole(modelType) */
+/**
+ * Creates a new <code>IOConsole</code> object that uses the specified
+ * console model, which must be one of the constants
+ * <a href="#STANDARD_MODEL"><code>STANDARD_MODEL</code></a> or
+ * <a href="#LINE_BUFFER_MODEL"><code>LINE_BUFFER_MODEL</code></a>.
+ *
+ * @usage IOConsole console = new IOConsole(modelType);
+ * @param modelType The type of console model to use
+ */
+	public IOConsole(int modelType) {
+		if (modelType != STANDARD_MODEL && modelType != LINE_BUFFER_MODEL) {
+			throw new ErrorException("IOConsole: Illegal console model type");
+		}
+		consoleModelType = modelType;
+		initConsole(createConsoleModel());
+	}
+
+/* Constructor: IOConsole(in, out) */
+/**
+ * Creates a new <code>IOConsole</code> object that has no display.  Input
+ * is read from <code>in</code> and output is written to <code>out</code>,
+ * each through a large buffer.  The output is flushed when the program
+ * waits for input that is not yet available and when the program exits.
+ * This form of console is used to run programs in batch mode.
+ *
+ * @usage IOConsole console = new IOConsole(in, out);
+ * @param in The reader from which input is taken
+ * @param out The writer to which output is sent
+ */
+	public IOConsole(Reader in, Writer out) {
+		consoleModelType = STANDARD_MODEL;
+		initConsole(new BatchConsoleModel(in, out));
 	}
 
 /* Method: clear() */
@@ -310,12 +364,7 @@ public class IOConsole extends Container implements IOModel {
 	public String readLine(String prompt) {
 		if (prompt != null) print(prompt);
 		consoleModel.requestFocus();
-		try {
-			String str = reader.readLine();
-			return str;
-		} catch (IOException ex) {
-			throw new ErrorException(ex);
-		}
+		return reader.readLine();
 	}
 
 /* Method: readInt() */
@@ -386,6 +435,7 @@ public class IOConsole extends Container implements IOModel {
 		String msg = null;
 		while (true) {
 			String line = readLine(prompt);
+			if (line == null) throw new ErrorException("End of file encountered");
 			try {
 				int n = Integer.parseInt(line);
 				if (n >= low && n <= high) return n;
@@ -466,6 +516,7 @@ public class IOConsole extends Container implements IOModel {
 		String msg = null;
 		while (true) {
 			String line = readLine(prompt);
+			if (line == null) throw new ErrorException("End of file encountered");
 			try {
 				double d = Double.valueOf(line).doubleValue();
 				if (d >= low && d <= high) return d;
@@ -478,6 +529,113 @@ public class IOConsole extends Container implements IOModel {
 		}
 	}
 
+/* Method: readInts(dest) */
+/**
+ * Fills the array with integers read from the user.  The values are
+ * separated by whitespace and may appear any number to a line.  The
+ * characters are parsed where they lie in the input buffer, which makes this
+ * method much faster than calling <code>readInt</code> repeatedly when large
+ * amounts of data come from an input script.  The method returns the number
+ * of values read, which is less than the length of the array only if the
+ * input ends first.  If the user types a value that is not a legal integer,
+ * the rest of that line is discarded and the user is asked to reenter the
+ * data, as in <a href="#readInt()"><code>readInt</code></a>.
+ *
+ * @usage int n = console.readInts(dest);
+ * @param dest The array that receives the values
+ * @return The number of values read
+ */
+	public final int readInts(int[] dest) {
+		return readInts(dest, Integer.MIN_VALUE, Integer.MAX_VALUE);
+	}
+
+/* Method: readInts(dest, low, high) */
+/**
+ * Fills the array with integers read from the user, each of which must be
+ * within the inclusive range between <code>low</code> and <code>high</code>.
+ * A value that is not a legal integer or is outside the range is reported
+ * in the same way as in <a href="#readInt(String, int, int)"><code>readInt</code></a>.
+ *
+ * @usage int n = console.readInts(dest, low, high);
+ * @param dest The array that receives the values
+ * @param low The lowest value in the permitted range
+ * @param high The highest value in the permitted range
+ * @return The number of values read
+ */
+	public int readInts(int[] dest, int low, int high) {
+		consoleModel.requestFocus();
+		int count = 0;
+		while (count < dest.length) {
+			int len = reader.readToken();
+			if (len < 0) break;
+			String msg = null;
+			try {
+				int n = parseInt(reader.getToken(), len);
+				if (n >= low && n <= high) {
+					dest[count++] = n;
+					continue;
+				}
+				msg = "Value is outside the range [" + low + ":" + high + "]";
+			} catch (NumberFormatException ex) {
+				msg = "Illegal numeric format";
+			}
+			retryTokens(msg);
+		}
+		reader.finishLine();
+		return count;
+	}
+
+/* Method: readDoubles(dest) */
+/**
+ * Fills the array with double-precision values read from the user, in the
+ * same way that <a href="#readInts(int[])"><code>readInts</code></a> reads
+ * integers.
+ *
+ * @usage int n = console.readDoubles(dest);
+ * @param dest The array that receives the values
+ * @return The number of values read
+ */
+	public final int readDoubles(double[] dest) {
+		return readDoubles(dest, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
+	}
+
+/* Method: readDoubles(dest, low, high) */
+/**
+ * Fills the array with double-precision values read from the user, each of
+ * which must be within the inclusive range between <code>low</code> and
+ * <code>high</code>.  A value that is not a legal number or is outside the
+ * range is reported in the same way as in
+ * <a href="#readDouble(String, double, double)"><code>readDouble</code></a>.
+ *
+ * @usage int n = console.readDoubles(dest, low, high);
+ * @param dest The array that receives the values
+ * @param low The lowest value in the permitted range
+ * @param high The highest value in the permitted range
+ * @return The number of values read
+ */
+	public int readDoubles(double[] dest, double low, double high) {
+		consoleModel.requestFocus();
+		int count = 0;
+		while (count < dest.length) {
+			int len = reader.readToken();
+			if (len < 0) break;
+			String msg = null;
+			try {
+				double d = parseDouble(reader.getToken(), len);
+				if (d >= low && d <= high) {
+					dest[count++] = d;
+					continue;
+				}
+				msg = "Value is outside the range [" + low + ":" + high + "]";
+			} catch (NumberFormatException ex) {
+				msg = "Illegal numeric format";
+			}
+			retryTokens(msg);
+		}
+		reader.finishLine();
+		return count;
+	}
+
 /* Method: readBoolean() */
 /**
  * Reads and returns a boolean value from the user, which must match
@@ -785,6 +943,52 @@ public class IOConsole extends Container implements IOModel {
 		return consoleModel.getInputScript();
 	}
 
+/* Method: setScrollbackLimit(lines) */
+/**
+ * Limits the number of lines the console retains.  When the output grows
+ * more than about an eighth beyond the limit, the oldest lines are removed
+ * in a single operation, so that memory use and the cost of updating the
+ * display stay bounded in programs that run for a long time.  The removed
+ * text no longer appears in the console or in the output of
+ * <code>save</code>, but it can be copied to a log using
+ * <a href="#setScrollbackLog(Writer)"><code>setScrollbackLog</code></a>.
+ * A limit of 0, which is the default, retains all output.
+ *
+ * @usage console.setScrollbackLimit(lines);
+ * @param lines The maximum number of lines to retain, or 0 for no limit
+ */
+	public void setScrollbackLimit(int lines) {
+		if (lines < 0) throw new ErrorException("setScrollbackLimit: Limit must not be negative");
+		consoleModel.setScrollbackLimit(lines);
+	}
+
+/* Method: getScrollbackLimit() */
+/**
+ * Returns the maximum number of lines the console retains, or 0 if there
+ * is no limit.
+ *
+ * @usage int lines = console.getScrollbackLimit();
+ * @return The maximum number of lines to retain
+ */
+	public int getScrollbackLimit() {
+		return consoleModel.getScrollbackLimit();
+	}
+
+/* Method: setScrollbackLog(wr) */
+/**
+ * Sets a writer that receives the text removed from the console when the
+ * scrollback limit is exceeded.  Together with the retained text, the log
+ * contains the complete console session.  Passing <code>null</code> stops
+ * logging.  The console flushes the writer after each removal but never
+ * closes it.
+ *
+ * @usage console.setScrollbackLog(wr);
+ * @param wr The writer that receives the removed text, or <code>null</code>
+ */
+	public void setScrollbackLog(Writer wr) {
+		consoleModel.setScrollbackLog(wr);
+	}
+
 /* Method: cut() */
 /**
  * Implements the "Cut" menu operation.
@@ -982,12 +1186,112 @@ public class IOConsole extends Container implements IOModel {
 
 /* Protected method: createConsoleModel() */
 /**
- * Creates the console model used by this console.
+ * Creates the console model used by this console, as selected by the
+ * model type passed to the constructor.
  */
 	protected ConsoleModel createConsoleModel() {
+		if (consoleModelType == LINE_BUFFER_MODEL) return new LineConsoleModel();
 		return new ConsoleModel();
 	}
 
+/* Private method: initConsole(model) */
+/**
+ * Initializes the console to use the specified model.
+ */
+	private void initConsole(ConsoleModel model) {
+		consoleModel = model;
+		consoleModel.setConsole(this);
+		setBackground(Color.white);
+		setInputColor(Color.blue);
+		setInputStyle(Font.BOLD);
+		setErrorColor(Color.red);
+		setErrorStyle(Font.BOLD);
+		setFont(JTFTools.getStandardFont(DEFAULT_FONT));
+		setLayout(new BorderLayout());
+		Component pane = consoleModel.getConsolePane();
+		if (pane != null) add(pane, BorderLayout.CENTER);
+		reader = new ConsoleReader(consoleModel);
+		writer = new PrintWriter(new ConsoleWriter(consoleModel));
+		exceptionOnError = false;
+	}
+
+/* Private method: retryTokens(msg) */
+/**
+ * Reports an error in a value read by <code>readInts</code> or
+ * <code>readDoubles</code>, discards the rest of the line, and prompts the
+ * user to reenter the data.
+ */
+	private void retryTokens(String msg) {
+		reader.skipLine();
+		reader.flushEcho();
+		showErrorMessage(msg);
+		print("Retry: ");
+	}
+
+/* Private static method: parseInt(cs, len) */
+/**
+ * Converts the first <code>len</code> characters of the array to an integer.
+ * Tokens that contain anything other than an optional sign and ASCII digits
+ * are passed to <code>Integer.parseInt</code>, so that the rules are the same
+ * as for <code>readInt</code>.
+ */
+	private static int parseInt(char[] cs, int len) {
+		int i = 0;
+		boolean negative = false;
+		if (len > 0 && (cs[0] == '-' || cs[0] == '+')) {
+			negative = cs[0] == '-';
+			i = 1;
+		}
+		if (i == len || len - i > 10) return Integer.parseInt(new String(cs, 0, len));
+		long n = 0;
+		for (; i < len; i++) {
+			char ch = cs[i];
+			if (ch < '0' || ch > '9') return Integer.parseInt(new String(cs, 0, len));
+			n = 10 * n + (ch - '0');
+		}
+		if (negative) n = -n;
+		if (n < Integer.MIN_VALUE || n > Integer.MAX_VALUE) {
+			throw new NumberFormatException("For input string: \"" + new String(cs, 0, len) + "\"");
+		}
+		return (int) n;
+	}
+
+/* Private static method: parseDouble(cs, len) */
+/**
+ * Converts the first <code>len</code> characters of the array to a
+ * <code>double</code>.  A plain decimal number with at most 15 digits is
+ * converted directly: both the digits and the power of ten are then exact,
+ * so a single division gives the correctly rounded result.  Anything else
+ * is passed to <code>Double.valueOf</code>.
+ */
+	private static double parseDouble(char[] cs, int len) {
+		int i = 0;
+		boolean negative = false;
+		if (len > 0 && (cs[0] == '-' || cs[0] == '+')) {
+			negative = cs[0] == '-';
+			i = 1;
+		}
+		long m = 0;
+		int digits = 0;
+		int scale = 0;
+		boolean point = false;
+		for (; i < len; i++) {
+			char ch = cs[i];
+			if (ch >= '0' && ch <= '9') {
+				if (++digits > MAX_EXACT_DIGITS) break;
+				m = 10 * m + (ch - '0');
+				if (point) scale++;
+			} else if (ch == '.' && !point) {
+				point = true;
+			} else {
+				break;
+			}
+		}
+		if (i < len || digits == 0) return Double.valueOf(new String(cs, 0, len)).doubleValue();
+		double d = (scale == 0) ? m : m / POWERS_OF_TEN[scale];
+		return (negative) ? -d : d;
+	}
+
 /* Protected constant: DEFAULT_FONT */
 /**
  * The default font used by a new <code>IOConsole</code>.
@@ -1012,11 +1316,19 @@ public class IOConsole extends Container implements IOModel {
  */
 	protected static final int MINIMUM_CONSOLE_HEIGHT = 40;
 
+/* Private constants */
+
+	private static final int MAX_EXACT_DIGITS = 15;
+	private static final double[] POWERS_OF_TEN = {
+		1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15
+	};
+
 /* Private instance variables */
 
 	private ConsoleModel consoleModel;
+	private int consoleModelType;
 	private boolean exceptionOnError;
-	private BufferedReader reader;
+	private ConsoleReader reader;
 	private PrintWriter writer;
 	private File file;
 	private Color inputColor;
@@ -1042,12 +1354,31 @@ class ConsoleModel implements KeyListener, FocusListener {
  * Creates the framework for the standard console models.
  */
 	public ConsoleModel() {
-		scrollPane = new JScrollPane(JScrollPane.VERTICAL_SCROLLBAR_ALWAYS, JScrollPane.HORIZONTAL_SCROLLBAR_ALWAYS);
-		textPane = new JTextPane();
-		textPane.addKeyListener(this);
-		textPane.addFocusListener(this);
-		scrollPane.setViewportView(textPane);
-		document = textPane.getDocument();
+		this(true);
+	}
+
+/* Constructor: ConsoleModel(display) */
+/**
+ * Creates the framework for a console model.  If <code>display</code> is
+ * <code>false</code>, no Swing components are created, and the subclass
+ * must override every method that uses them.
+ */
+	protected ConsoleModel(boolean display) {
+		if (display) {
+			scrollPane = new JScrollPane(JScrollPane.VERTICAL_SCROLLBAR_ALWAYS,
+			                             JScrollPane.HORIZONTAL_SCROLLBAR_ALWAYS);
+			textPane = new JTextPane();
+			textPane.addKeyListener(this);
+			textPane.addFocusListener(this);
+			scrollPane.setViewportView(textPane);
+			document = textPane.getDocument();
+			flushTimer = new SwingTimer(FLUSH_INTERVAL, new ActionListener() {
+				public void actionPerformed(ActionEvent e) {
+					flushOutput();
+				}
+			});
+			flushTimer.setRepeats(false);
+		}
 		lineSeparator = System.getProperty("line.separator");
 		outputAttributes = new SimpleAttributeSet();
 		inputAttributes = new SimpleAttributeSet();
@@ -1055,6 +1386,9 @@ class ConsoleModel implements KeyListener, FocusListener {
 		buffer = new CharacterQueue();
 		inputLock = new Object();
 		outputLock = new Object();
+		pendingOutput = new ConcurrentLinkedQueue();
+		pendingLength = new AtomicInteger(0);
+		flushScheduled = new AtomicBoolean(false);
 		base = 0;
 	}
 
@@ -1077,21 +1411,45 @@ class ConsoleModel implements KeyListener, FocusListener {
 
 /* Method: print(str, style) */
 /**
- * Prints the string to the console.
+ * Prints the string to the console.  The string is added to a queue of
+ * pending output, which is copied into the document on the event dispatch
+ * thread at most once per flush interval.  Consecutive strings in the same
+ * style are inserted as a single run, and the caret moves only once per
+ * flush.  If the queue grows beyond a fixed number of characters because
+ * the program writes faster than the document can absorb the text, the
+ * program waits while the queue is copied into the document.
  */
 	public void print(String str, int style) {
-		synchronized (outputLock) {
-			insert(str, base, style);
-			base += str.length();
-			setCaretPosition(base);
+		if (str.length() == 0) return;
+		pendingOutput.add(new ConsoleSegment(str, style));
+		if (pendingLength.addAndGet(str.length()) > MAX_PENDING_OUTPUT) {
+			flush();
+		} else if (flushScheduled.compareAndSet(false, true)) {
+			flushTimer.restart();
 		}
 	}
 
+/* Method: flush() */
+/**
+ * Copies any pending output into the document and waits until it is
+ * done.  This method is called before any operation that depends on the
+ * contents of the document, such as reading a line.
+ */
+	public void flush() {
+		if (pendingOutput.isEmpty()) return;
+		JTFTools.runOnEventThread(new Runnable() {
+			public void run() {
+				flushOutput();
+			}
+		});
+	}
+
 /* Method: readLine() */
 /**
  * Reads and returns the next line of text from the console.
  */
 	public String readLine() {
+		flush();
 		synchronized (inputLock) {
 			base = getLength();
 			if (inputScript != null) {
@@ -1114,66 +1472,14 @@ class ConsoleModel implements KeyListener, FocusListener {
 				}
 				inputScript = null;
 			}
-			int dot;
 			char ch;
+			String run;
 			setCaretPosition(base);
-			while ((ch = buffer.dequeue()) != '\n' && ch != '\r') {
+			while ((ch = (run = buffer.dequeueRun()).charAt(0)) != '\n' && ch != '\r') {
 				if (getCaretPosition() < base) {
 					setCaretPosition(getLength());
 				}
-				dot = getSelectionStart();
-				switch (ch) {
-				  case '\b': case '\177':
-					if (dot == getSelectionEnd()) {
-						if (dot > base) {
-							delete(dot - 1, dot);
-							dot--;
-						}
-					} else {
-						dot = deleteSelection();
-					}
-					break;
-				  case 'A'-'@':
-					selectAll();
-					dot = -1;
-					break;
-				  case 'B'-'@':
-					dot = Math.max(getSelectionStart() - 1, base);
-					break;
-				  case 'C'-'@':
-					copy();
-					dot = -1;
-					break;
-				  case 'F'-'@':
-					dot = Math.min(getSelectionEnd() + 1, getLength());
-					break;
-				  case 'P'-'@':
-					console.printConsole();
-					dot = -1;
-					break;
-				  case 'S'-'@':
-					console.save();
-					dot = -1;
-					break;
-				  case 'V'-'@':
-					paste();
-					dot = -1;
-					break;
-				  case 'X'-'@':
-					cut();
-					dot = -1;
-					break;
-				  default:
-					if (dot != getSelectionEnd()) {
-						dot = deleteSelection();
-					}
-					insert("" + ch, dot, INPUT_STYLE);
-					dot++;
-				}
-				if (dot != -1) {
-					select(dot, dot);
-					setCaretPosition(dot);
-				}
+				if (!dispatchEditingKey(ch)) insertInput(run);
 			}
 			int len = getLength() - base;
 			String line = getText(base, base + len);
@@ -1183,6 +1489,134 @@ class ConsoleModel implements KeyListener, FocusListener {
 		}
 	}
 
+/* Package method: dispatchEditingKey(ch) */
+/**
+ * Carries out the editing command for a control character typed while a
+ * line is being read and returns <code>true</code>, or returns
+ * <code>false</code> if the character is not a command and should be
+ * inserted into the input.  The commands call the methods that
+ * manipulate the input line and the selection, which subclasses override
+ * to work on their own representation of the text.
+ */
+	boolean dispatchEditingKey(char ch) {
+		switch (ch) {
+		  case '\b': case '\177':
+			deleteBackward();
+			return true;
+		  case 'A'-'@':
+			selectAll();
+			return true;
+		  case 'B'-'@':
+			moveCursor(-1);
+			return true;
+		  case 'C'-'@':
+			copy();
+			return true;
+		  case 'F'-'@':
+			moveCursor(+1);
+			return true;
+		  case 'P'-'@':
+			getConsole().printConsole();
+			return true;
+		  case 'S'-'@':
+			getConsole().save();
+			return true;
+		  case 'V'-'@':
+			paste();
+			return true;
+		  case 'X'-'@':
+			cut();
+			return true;
+		  default:
+			return false;
+		}
+	}
+
+/* Package method: deleteBackward() */
+/**
+ * Deletes the selected input, or the character before the cursor if there
+ * is no selection.
+ */
+	void deleteBackward() {
+		int dot = getSelectionStart();
+		if (dot == getSelectionEnd()) {
+			if (dot > base) {
+				delete(dot - 1, dot);
+				dot--;
+			}
+		} else {
+			dot = deleteSelection();
+		}
+		moveCaret(dot);
+	}
+
+/* Package method: moveCursor(delta) */
+/**
+ * Moves the cursor one character to the left if <code>delta</code> is
+ * negative and one character to the right otherwise, staying within the
+ * input line.
+ */
+	void moveCursor(int delta) {
+		if (delta < 0) {
+			moveCaret(Math.max(getSelectionStart() - 1, base));
+		} else {
+			moveCaret(Math.min(getSelectionEnd() + 1, getLength()));
+		}
+	}
+
+/* Package method: insertInput(run) */
+/**
+ * Replaces the selected input, if any, with the typed characters and moves
+ * the cursor past them.
+ */
+	void insertInput(String run) {
+		int dot = getSelectionStart();
+		if (dot != getSelectionEnd()) {
+			dot = deleteSelection();
+		}
+		insert(run, dot, INPUT_STYLE);
+		moveCaret(dot + run.length());
+	}
+
+/* Package static method: flushOnExit(model) */
+/**
+ * Arranges for the output of the model to be flushed when the virtual
+ * machine exits.  All models share a single shutdown hook, which holds
+ * them weakly so that a model that is no longer in use can be collected.
+ */
+	static void flushOnExit(ConsoleModel model) {
+		synchronized (exitModels) {
+			if (exitHook == null) {
+				Thread hook = new Thread() {
+					public void run() {
+						flushExitModels();
+					}
+				};
+				try {
+					Runtime.getRuntime().addShutdownHook(hook);
+				} catch (SecurityException ex) {
+					return;
+				}
+				exitHook = hook;
+			}
+			exitModels.put(model, null);
+		}
+	}
+
+/* Private static method: flushExitModels() */
+/**
+ * Flushes the output of every model registered with <code>flushOnExit</code>.
+ */
+	private static void flushExitModels() {
+		ArrayList models;
+		synchronized (exitModels) {
+			models = new ArrayList(exitModels.keySet());
+		}
+		for (int i = 0; i < models.size(); i++) {
+			((ConsoleModel) models.get(i)).flush();
+		}
+	}
+
 /* Method: setInputScript(rd) */
 /**
  * Sets a new input script for the console, which will subsequently
@@ -1209,6 +1643,30 @@ class ConsoleModel implements KeyListener, FocusListener {
 		return inputScript;
 	}
 
+/* Method: setScrollbackLimit(lines) */
+/**
+ * Sets the maximum number of lines retained in the document, or 0 for no limit.
+ */
+	public void setScrollbackLimit(int lines) {
+		scrollbackLimit = lines;
+	}
+
+/* Method: getScrollbackLimit() */
+/**
+ * Returns the maximum number of lines retained in the document.
+ */
+	public int getScrollbackLimit() {
+		return scrollbackLimit;
+	}
+
+/* Method: setScrollbackLog(wr) */
+/**
+ * Sets the writer that receives text trimmed from the head of the document.
+ */
+	public void setScrollbackLog(Writer wr) {
+		scrollbackLog = wr;
+	}
+
 /* Method: isCommandEnabled(cmd) */
 /**
  * Returns true if the command should be enabled in the menu bar.
@@ -1220,10 +1678,20 @@ class ConsoleModel implements KeyListener, FocusListener {
 
 /* Method: clear() */
 /**
- * Clears the console pane.
+ * Clears the console pane.  Any output that has not yet reached the
+ * document is discarded.  The document is cleared on the event dispatch
+ * thread.
  */
 	public void clear() {
-		textPane.setText("");
+		JTFTools.runOnEventThread(new Runnable() {
+			public void run() {
+				synchronized (outputLock) {
+					drainOutput(new ArrayList());
+					textPane.setText("");
+				}
+			}
+		});
+		base = 0;
 	}
 
 /* Method: getText() */
@@ -1231,6 +1699,7 @@ class ConsoleModel implements KeyListener, FocusListener {
  * Returns the text stored in the console model.
  */
 	public String getText() {
+		flush();
 		return textPane.getText();
 	}
 
@@ -1240,6 +1709,7 @@ class ConsoleModel implements KeyListener, FocusListener {
  * <code>substring</code> for strings.
  */
 	public String getText(int start, int end) {
+		flush();
 		try {
 			return document.getText(start, end - start);
 		} catch (BadLocationException ex) {
@@ -1252,6 +1722,7 @@ class ConsoleModel implements KeyListener, FocusListener {
  * Returns the length of the text stored in the console model.
  */
 	public int getLength() {
+		flush();
 		return document.getLength();
 	}
 
@@ -1497,6 +1968,130 @@ class ConsoleModel implements KeyListener, FocusListener {
 		}
 	}
 
+/* Private method: flushOutput() */
+/**
+ * Inserts the pending output into the document, one insertion for each run
+ * of segments in the same style.  If the pending output alone contains more
+ * lines than the scrollback limit allows, the lines that would be trimmed
+ * immediately are never inserted.  This method runs on the event dispatch
+ * thread.
+ */
+	private void flushOutput() {
+		synchronized (outputLock) {
+			flushScheduled.set(false);
+			if (pendingOutput.isEmpty()) return;
+			ArrayList segments = new ArrayList();
+			drainOutput(segments);
+			int first = 0;
+			int offset = 0;
+			int limit = scrollbackLimit;
+			if (limit > 0) {
+				int newlines = 0;
+				for (int i = segments.size() - 1; i >= 0 && newlines < limit; i--) {
+					String text = ((ConsoleSegment) segments.get(i)).text;
+					for (int j = text.length() - 1; j >= 0 && newlines < limit; j--) {
+						if (text.charAt(j) == '\n' && ++newlines == limit) {
+							first = i;
+							offset = j + 1;
+						}
+					}
+				}
+				if (newlines == limit) discardOutput(segments, first, offset);
+			}
+			StringBuilder sb = new StringBuilder();
+			int runStyle = OUTPUT_STYLE;
+			for (int i = first; i < segments.size(); i++) {
+				ConsoleSegment segment = (ConsoleSegment) segments.get(i);
+				if (segment.style != runStyle && sb.length() > 0) {
+					insertRun(sb, runStyle);
+				}
+				runStyle = segment.style;
+				sb.append(segment.text, (i == first) ? offset : 0, segment.text.length());
+			}
+			if (sb.length() > 0) insertRun(sb, runStyle);
+			trimScrollback();
+			setCaretPosition(base);
+		}
+	}
+
+/* Private method: drainOutput(segments) */
+/**
+ * Moves the pending output into the list and reduces the count of pending
+ * characters accordingly.
+ */
+	private void drainOutput(ArrayList segments) {
+		ConsoleSegment next;
+		while ((next = (ConsoleSegment) pendingOutput.poll()) != null) {
+			pendingLength.addAndGet(-next.text.length());
+			segments.add(next);
+		}
+	}
+
+/* Private method: discardOutput(segments, first, offset) */
+/**
+ * Removes all output from the document and skips the pending segments up
+ * to the specified position, copying both to the scrollback log.  Any input
+ * line in progress remains in the document.
+ */
+	private void discardOutput(ArrayList segments, int first, int offset) {
+		base = Math.min(base, document.getLength());
+		Writer log = scrollbackLog;
+		if (log != null) {
+			try {
+				log.write(getText(0, base));
+				for (int i = 0; i < first; i++) {
+					log.write(((ConsoleSegment) segments.get(i)).text);
+				}
+				log.write(((ConsoleSegment) segments.get(first)).text, 0, offset);
+				log.flush();
+			} catch (IOException ex) {
+				throw new ErrorException(ex);
+			}
+		}
+		if (base > 0) delete(0, base);
+		base = 0;
+	}
+
+/* Private method: trimScrollback() */
+/**
+ * Removes the oldest lines from the document once it exceeds the scrollback
+ * limit by more than an eighth, copying them to the scrollback log if there
+ * is one.  Text at or after the start of the current input line is never
+ * removed.
+ */
+	private void trimScrollback() {
+		int limit = scrollbackLimit;
+		if (limit <= 0) return;
+		Element root = document.getDefaultRootElement();
+		int nLines = root.getElementCount();
+		if (nLines <= limit + limit / 8) return;
+		int end = Math.min(root.getElement(nLines - limit).getStartOffset(), base);
+		if (end <= 0) return;
+		Writer log = scrollbackLog;
+		if (log != null) {
+			try {
+				log.write(getText(0, end));
+				log.flush();
+			} catch (IOException ex) {
+				throw new ErrorException(ex);
+			}
+		}
+		delete(0, end);
+		base -= end;
+	}
+
+/* Private method: insertRun(sb, style) */
+/**
+ * Inserts the contents of the string builder at the output position and
+ * empties the builder.
+ */
+	private void insertRun(StringBuilder sb, int style) {
+		base = Math.min(base, document.getLength());
+		insert(sb.toString(), base, style);
+		base += sb.length();
+		sb.setLength(0);
+	}
+
 /* Private method: delete(p1, p2) */
 /**
  * Deletes text from the text pane beginning at position <code>p1</code> and
@@ -1550,6 +2145,15 @@ class ConsoleModel implements KeyListener, FocusListener {
 		return textPane.getSelectionEnd();
 	}
 
+/* Private method: moveCaret(dot) */
+/**
+ * Moves the caret to the specified position and clears the selection.
+ */
+	private void moveCaret(int dot) {
+		select(dot, dot);
+		setCaretPosition(dot);
+	}
+
 /* Private method: deleteSelection() */
 /**
  * Deletes the current selection and returns the index of the deletion point.
@@ -1631,13 +2235,44 @@ class ConsoleModel implements KeyListener, FocusListener {
 	private IOConsole console;
 	private Object inputLock;
 	private Object outputLock;
+	private ConcurrentLinkedQueue pendingOutput;
+	private AtomicInteger pendingLength;
+	private AtomicBoolean flushScheduled;
+	private SwingTimer flushTimer;
+	private volatile int scrollbackLimit;
+	private volatile Writer scrollbackLog;
+
+/* Private static variables */
+
+	private static WeakHashMap exitModels = new WeakHashMap();
+	private static Thread exitHook = null;
+
+/* Private constants */
+
+	private static final int FLUSH_INTERVAL = 15;
+	private static final int MAX_PENDING_OUTPUT = 65536;
 }
 
-/* Package class: SystemConsole */
+/* Package class: ConsoleSegment */
 
 /**
- * This class implements a version of <code>IOConsole</code> that responds to
- * the methods of that class but that uses <code>System.in</code> and
+ * This class holds one string of pending console output and its style.
+ */
+class ConsoleSegment {
+	public ConsoleSegment(String str, int style) {
+		this.text = str;
+		this.style = style;
+	}
+
+	String text;
+	int style;
+}
+
+/* Package class: SystemConsole */
+
+/**
+ * This class implements a version of <code>IOConsole</code> that responds to
+ * the methods of that class but that uses <code>System.in</code> and
  * <code>System.out</code> for its input and output.  This class is not
  * instantiated directly; clients gain access to this facility by using the
  * <a href="IOConsole.html#SYSTEM_CONSOLE"><code>SYSTEM_CONSOLE</code></a>
@@ -1693,14 +2328,10 @@ class ConsoleWriter extends Writer {
  */
 	public void write(char[] cbuf, int off, int len) {
 		String str = new String(cbuf, off, len);
-		int start = 0;
-		int eol;
-		while ((eol = str.indexOf(IOConsole.LINE_SEPARATOR, start)) != -1) {
-			consoleModel.print(str.substring(start, eol), ConsoleModel.OUTPUT_STYLE);
-			consoleModel.print("\n", ConsoleModel.OUTPUT_STYLE);
-			start = eol + IOConsole.LINE_SEPARATOR.length();
+		if (!IOConsole.LINE_SEPARATOR.equals("\n")) {
+			str = str.replace(IOConsole.LINE_SEPARATOR, "\n");
 		}
-		consoleModel.print(str.substring(start), ConsoleModel.OUTPUT_STYLE);
+		consoleModel.print(str, ConsoleModel.OUTPUT_STYLE);
 	}
 
 /* Private instance variables */
@@ -1711,17 +2342,35 @@ class ConsoleWriter extends Writer {
 /* Package class: ConsoleReader */
 
 /**
- * This class defines the underlying reader for the console.
+ * This class defines the underlying reader for the console.  Characters are
+ * held in a <code>CharBuffer</code>, which is refilled either with the next
+ * line from the console model or, while an input script is active, with a
+ * large block read directly from the script.  Script text is echoed to the
+ * console as the program consumes it, so that the transcript still shows
+ * the input in the order in which it was read.  The class extends
+ * <code>BufferedReader</code> so that <code>readLine</code> can return lines
+ * without copying them through a second buffer.  While a mark is set, a
+ * refill keeps the characters read since the mark at the front of the buffer
+ * so that <code>reset</code> can return to them; text that is read a second
+ * time in this way is not echoed again.
  */
-class ConsoleReader extends Reader {
+class ConsoleReader extends BufferedReader {
 
 /* Constructor: ConsoleReader(cp) */
 /**
  * Creates the basic reader object for the console.
  */
 	public ConsoleReader(ConsoleModel cp) {
+		super(new StringReader(""), 1);
 		consoleModel = cp;
-		buffer = null;
+		buffer = CharBuffer.allocate(BLOCK_SIZE);
+		buffer.flip();
+		fromScript = false;
+		skipLF = false;
+		echoMark = -1;
+		markPos = -1;
+		echoLimit = 0;
+		token = new char[TOKEN_SIZE];
 	}
 
 /* Method: close() */
@@ -1732,48 +2381,424 @@ class ConsoleReader extends Reader {
 		/* Empty */
 	}
 
+/* Method: read() */
+/**
+ * Reads a single character, or returns -1 at the end of the input.
+ */
+	public int read() {
+		synchronized (lock) {
+			if (!fill()) return -1;
+			int pos = buffer.position();
+			char ch = buffer.get();
+			echo(pos, pos + 1);
+			return ch;
+		}
+	}
+
 /* Method: read(cbuf, off, len) */
 /**
  * Reads characters into <code>cbuf</code> starting at position <code>off</code>
  * up to a maximum of <code>len</code>.
  */
 	public int read(char[] cbuf, int off, int len) {
-		if (len == 0) return 0;
-		if (buffer == null) {
-			buffer = consoleModel.readLine();
-			if (buffer == null) return -1;
-			buffer += "\n";
-		}
-		if (len < buffer.length()) {
-			buffer.getChars(0, len, cbuf, off);
-			buffer = buffer.substring(len);
-		} else {
-			len = buffer.length();
-			buffer.getChars(0, len, cbuf, off);
-			buffer = null;
+		synchronized (lock) {
+			if (len == 0) return 0;
+			if (!fill()) return -1;
+			int pos = buffer.position();
+			len = Math.min(len, buffer.remaining());
+			buffer.get(cbuf, off, len);
+			echo(pos, pos + len);
+			return len;
+		}
+	}
+
+/* Method: readLine() */
+/**
+ * Reads the next line of input.  If the buffer is empty, there is no
+ * input script, and no mark is set, the line comes directly from the
+ * console model.
+ */
+	public String readLine() {
+		synchronized (lock) {
+			flushEcho();
+			skipLineFeed();
+			if (!buffer.hasRemaining() && !fillFromScript()) {
+				if (markPos < 0) return consoleModel.readLine();
+				if (!fill()) return null;
+			}
+			StringBuilder sb = null;
+			while (buffer.hasRemaining() || fromScript && fillFromScript()) {
+				char[] array = buffer.array();
+				int start = buffer.position();
+				int end = buffer.limit();
+				int eol = start;
+				while (eol < end && array[eol] != '\n' && array[eol] != '\r') {
+					eol++;
+				}
+				if (eol < end) {
+					String line;
+					if (sb == null) {
+						line = new String(array, start, eol - start);
+					} else {
+						line = sb.append(array, start, eol - start).toString();
+					}
+					skipLF = array[eol] == '\r';
+					buffer.position(eol + 1);
+					echo(start, eol);
+					if (fromScript && eol >= echoLimit) {
+						consoleModel.print("\n", ConsoleModel.OUTPUT_STYLE);
+					}
+					return line;
+				}
+				if (sb == null) sb = new StringBuilder();
+				sb.append(array, start, end - start);
+				buffer.position(end);
+				echo(start, end);
+			}
+			if (sb == null) return consoleModel.readLine();
+			consoleModel.print("\n", ConsoleModel.OUTPUT_STYLE);
+			return sb.toString();
+		}
+	}
+
+/* Method: readToken() */
+/**
+ * Reads the next whitespace-delimited token into the token array, which is
+ * reused from call to call, and returns its length, or -1 at the end of the
+ * input.  Script text consumed in this way is not echoed until the next
+ * call to <code>flushEcho</code>, so that each block is echoed at once.
+ * A token that runs to the end of the input script ends there and is
+ * never joined with the console input that follows.
+ */
+	public int readToken() {
+		synchronized (lock) {
+			int len = 0;
+			while (true) {
+				if (!buffer.hasRemaining()) {
+					flushEcho();
+					if (len > 0 && fromScript) {
+						if (!fillFromScript()) return len;
+					} else if (!fill()) {
+						return (len == 0) ? -1 : len;
+					}
+				}
+				if (fromScript && echoMark < 0) echoMark = buffer.position();
+				char[] array = buffer.array();
+				int pos = buffer.position();
+				int end = buffer.limit();
+				if (len == 0) {
+					while (pos < end && Character.isWhitespace(array[pos])) {
+						pos++;
+					}
+				}
+				int start = pos;
+				while (pos < end && !Character.isWhitespace(array[pos])) {
+					pos++;
+				}
+				buffer.position(pos);
+				if (pos > start) {
+					if (len + pos - start > token.length) {
+						char[] newToken = new char[2 * (len + pos - start)];
+						System.arraycopy(token, 0, newToken, 0, len);
+						token = newToken;
+					}
+					System.arraycopy(array, start, token, len, pos - start);
+					len += pos - start;
+				}
+				if (pos < end && len > 0) return len;
+			}
+		}
+	}
+
+/* Method: getToken() */
+/**
+ * Returns the array holding the characters of the last token.
+ */
+	public char[] getToken() {
+		return token;
+	}
+
+/* Method: skipLine() */
+/**
+ * Discards the rest of the current line, including its end-of-line characters.
+ */
+	public void skipLine() {
+		synchronized (lock) {
+			while (buffer.hasRemaining() || fillFromScript()) {
+				if (fromScript && echoMark < 0) echoMark = buffer.position();
+				char[] array = buffer.array();
+				int pos = buffer.position();
+				int end = buffer.limit();
+				while (pos < end && array[pos] != '\n' && array[pos] != '\r') {
+					pos++;
+				}
+				if (pos < end) {
+					skipLF = array[pos] == '\r';
+					buffer.position(pos + 1);
+					return;
+				}
+				buffer.position(end);
+				flushEcho();
+			}
+		}
+	}
+
+/* Method: finishLine() */
+/**
+ * Consumes any blanks that remain on the current line after a token,
+ * together with the end of the line, so that a subsequent call to
+ * <code>readLine</code> starts on the next line.  The method never waits
+ * for more input from the user.  Any pending echo is written out.
+ */
+	public void finishLine() {
+		synchronized (lock) {
+			while (buffer.hasRemaining() || fromScript && fillFromScript()) {
+				if (fromScript && echoMark < 0) echoMark = buffer.position();
+				char[] array = buffer.array();
+				int pos = buffer.position();
+				int end = buffer.limit();
+				while (pos < end && (array[pos] == ' ' || array[pos] == '\t')) {
+					pos++;
+				}
+				buffer.position(pos);
+				if (pos < end) {
+					if (array[pos] == '\n' || array[pos] == '\r') {
+						skipLF = array[pos] == '\r';
+						buffer.position(pos + 1);
+					}
+					break;
+				}
+				flushEcho();
+			}
+			flushEcho();
+		}
+	}
+
+/* Method: flushEcho() */
+/**
+ * Echoes the script text consumed by the token methods since the last call.
+ */
+	public void flushEcho() {
+		synchronized (lock) {
+			if (echoMark < 0) return;
+			echo(echoMark, buffer.position());
+			echoMark = -1;
+		}
+	}
+
+/* Method: ready() */
+/**
+ * Returns <code>true</code> if characters are available without blocking.
+ */
+	public boolean ready() {
+		synchronized (lock) {
+			return buffer.hasRemaining();
+		}
+	}
+
+/* Method: skip(n) */
+/**
+ * Skips up to <code>n</code> characters.
+ */
+	public long skip(long n) {
+		synchronized (lock) {
+			long skipped = 0;
+			while (skipped < n && fill()) {
+				int pos = buffer.position();
+				int count = (int) Math.min(n - skipped, buffer.remaining());
+				buffer.position(pos + count);
+				echo(pos, pos + count);
+				skipped += count;
+			}
+			return skipped;
+		}
+	}
+
+/* Method: markSupported() */
+/**
+ * Returns <code>true</code> to indicate that the console reader supports marks.
+ */
+	public boolean markSupported() {
+		return true;
+	}
+
+/* Method: mark(limit) */
+/**
+ * Marks the current position in the input.  A subsequent call to
+ * <code>reset</code> returns to this position, provided that no more than
+ * <code>limit</code> characters have been read in the meantime.
+ */
+	public void mark(int limit) {
+		if (limit < 0) throw new IllegalArgumentException("Read-ahead limit < 0");
+		synchronized (lock) {
+			markPos = buffer.position();
+			markLimit = limit;
+			markFromScript = fromScript;
+			markSkipLF = skipLF;
+		}
+	}
+
+/* Method: reset() */
+/**
+ * Returns to the most recent mark.
+ */
+	public void reset() throws IOException {
+		synchronized (lock) {
+			if (markPos < 0) throw new IOException("Stream not marked");
+			flushEcho();
+			echoLimit = Math.max(echoLimit, buffer.position());
+			buffer.position(markPos);
+			fromScript = markFromScript;
+			skipLF = markSkipLF;
+		}
+	}
+
+/* Private method: fill() */
+/**
+ * Makes sure that the buffer contains at least one character, reading a
+ * block from the input script or, if there is none, a line from the console
+ * model.  The method returns <code>false</code> at the end of the input.
+ */
+	private boolean fill() {
+		flushEcho();
+		skipLineFeed();
+		if (buffer.hasRemaining() || fillFromScript()) return true;
+		String line = consoleModel.readLine();
+		if (line == null) return false;
+		int len = line.length() + 1;
+		int start = reserve(len);
+		line.getChars(0, len - 1, buffer.array(), start);
+		buffer.array()[start + len - 1] = '\n';
+		buffer.limit(start + len);
+		fromScript = false;
+		return true;
+	}
+
+/* Private method: fillFromScript() */
+/**
+ * Refills the empty buffer with the next block of the input script.  The
+ * method returns <code>false</code> if there is no script or if the script
+ * is exhausted, in which case the console model closes it on its next read.
+ */
+	private boolean fillFromScript() {
+		BufferedReader script = consoleModel.getInputScript();
+		if (script == null) return false;
+		int start = reserve(BLOCK_SIZE);
+		int n;
+		try {
+			n = script.read(buffer.array(), start, buffer.capacity() - start);
+		} catch (IOException ex) {
+			throw new ErrorException(ex);
+		}
+		if (n <= 0) return false;
+		buffer.limit(start + n);
+		fromScript = true;
+		return true;
+	}
+
+/* Private method: reserve(n) */
+/**
+ * Prepares the empty buffer to receive at least <code>n</code> more characters
+ * and returns the index at which they go.  If a mark is set and is still
+ * within its limit, the characters read since the mark are moved to the front
+ * of the buffer; otherwise the mark is dropped and the buffer starts over.
+ */
+	private int reserve(int n) {
+		int end = buffer.limit();
+		int keep = 0;
+		if (markPos >= 0) {
+			keep = end - markPos;
+			if (keep > markLimit) {
+				markPos = -1;
+				keep = 0;
+			}
+		}
+		echoLimit = Math.max(0, echoLimit - (end - keep));
+		char[] array = buffer.array();
+		if (keep + n > array.length) {
+			buffer = CharBuffer.allocate(Math.max(keep + n, 2 * array.length));
+		}
+		System.arraycopy(array, end - keep, buffer.array(), 0, keep);
+		if (markPos >= 0) markPos = 0;
+		buffer.clear();
+		buffer.position(keep);
+		buffer.limit(keep);
+		return keep;
+	}
+
+/* Private method: skipLineFeed() */
+/**
+ * Discards the linefeed in a script line ending with a return-linefeed pair.
+ */
+	private void skipLineFeed() {
+		if (!skipLF) return;
+		skipLF = false;
+		if (buffer.hasRemaining() || fromScript && fillFromScript()) {
+			if (buffer.get(buffer.position()) == '\n') buffer.get();
+		}
+	}
+
+/* Private method: echo(start, end) */
+/**
+ * Echoes the script text between the specified buffer indices, skipping any
+ * part of it that was already echoed before a call to <code>reset</code>.
+ */
+	private void echo(int start, int end) {
+		if (!fromScript) return;
+		start = Math.max(start, echoLimit);
+		if (end > start) {
+			consoleModel.print(new String(buffer.array(), start, end - start),
+			                   ConsoleModel.INPUT_STYLE);
 		}
-		return len;
 	}
 
+/* Private constants */
+
+	private static final int BLOCK_SIZE = 8192;
+	private static final int TOKEN_SIZE = 64;
+
 /* Private instance variables */
 
 	private ConsoleModel consoleModel;
-	private String buffer;
+	private CharBuffer buffer;
+	private boolean fromScript;
+	private boolean skipLF;
+	private int echoMark;
+	private int markPos;
+	private int markLimit;
+	private boolean markFromScript;
+	private boolean markSkipLF;
+	private int echoLimit;
+	private char[] token;
 }
 
 /* Package class: SystemConsoleModel */
 
 /**
- * Implements the basic console operations for the system console.
+ * Implements the basic console operations for the system console.  Output
+ * is written to <code>System.out</code> through a buffer that is flushed
+ * before each read, shortly after the last print, and when the program
+ * exits.  Input is read a line at a time through a buffered reader.  The
+ * text of the session is retained in a growable buffer, subject to the
+ * scrollback limit.
  */
 class SystemConsoleModel extends ConsoleModel {
 
-/* Constructor: AWTConsoleModel() */
+/* Constructor: SystemConsoleModel() */
 /**
- * Creates a new <code>AWTConsoleModel</code> object.
+ * Creates a new <code>SystemConsoleModel</code> object.
  */
 	public SystemConsoleModel() {
-		text = "";
+		super(false);
+		text = new StringBuilder();
+		systemLock = new Object();
+		systemFlushTimer = new SwingTimer(SYSTEM_FLUSH_DELAY, new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				flush();
+			}
+		});
+		systemFlushTimer.setRepeats(false);
+		flushOnExit(this);
 	}
 
 /* Method: clear() */
@@ -1789,50 +2814,105 @@ class SystemConsoleModel extends ConsoleModel {
  * Prints the string to the end of the console output.
  */
 	public void print(String str, int style) {
-		System.out.print(str);
-		text += str;
+		synchronized (systemLock) {
+			try {
+				getOutput().write(str);
+			} catch (IOException ex) {
+				throw new ErrorException(ex);
+			}
+			appendText(str);
+			if (!flushPending) {
+				flushPending = true;
+				systemFlushTimer.restart();
+			}
+		}
+	}
+
+/* Method: flush() */
+/**
+ * Writes any buffered output to <code>System.out</code>.
+ */
+	public void flush() {
+		synchronized (systemLock) {
+			flushPending = false;
+			if (output == null) return;
+			try {
+				output.flush();
+			} catch (IOException ex) {
+				/* Empty */
+			}
+		}
 	}
 
 /* Method: readLine() */
 /**
- * Reads and returns the next line of text from the console.
+ * Reads and returns the next line of text from the console, or
+ * <code>null</code> at the end of the standard input stream.
  */
 	public String readLine() {
-		System.out.flush();
-		String line = "";
-		int ch;
+		flush();
+		String line = null;
 		try {
-			while (true) {
-				if (inputScript == null) {
-					ch = System.in.read();
-				} else {
-					ch = inputScript.read();
+			if (inputScript != null) {
+				line = inputScript.readLine();
+				if (line != null) {
+					print(line + "\n", INPUT_STYLE);
+					return line;
 				}
-				if (ch == -1 && line.length() == 0) {
-					try {
-						inputScript.close();
-					} catch (IOException ex) {
-						/* Empty */
-					}
-					inputScript = null;
-				} else {
-					if (ch == -1 || ch == '\n') break;
-					line += (char) ch;
+				try {
+					inputScript.close();
+				} catch (IOException ex) {
+					/* Empty */
 				}
+				inputScript = null;
+			}
+			BufferedReader in = getInput();
+			boolean blocked = !in.ready();
+			if (blocked) JTFTools.setBlocked(true);
+			try {
+				line = in.readLine();
+			} finally {
+				if (blocked) JTFTools.setBlocked(false);
 			}
 		} catch (IOException ex) {
 			/* Empty */
 		}
-		if (inputScript != null) print(line + "\n", INPUT_STYLE);
+		if (line != null) {
+			synchronized (systemLock) {
+				appendText(line);
+				appendText("\n");
+			}
+		}
 		return line;
 	}
 
+/* Method: setScrollbackLimit(lines) */
+/**
+ * Sets the maximum number of lines retained in the session text, or 0 for no limit.
+ */
+	public void setScrollbackLimit(int lines) {
+		synchronized (systemLock) {
+			scrollbackLimit = lines;
+			appendText("");
+		}
+	}
+
+/* Method: getScrollbackLimit() */
+/**
+ * Returns the maximum number of lines retained in the session text.
+ */
+	public int getScrollbackLimit() {
+		return scrollbackLimit;
+	}
+
 /* Method: getText() */
 /**
  * Returns the text stored in the console pane.
  */
 	public String getText() {
-		return text;
+		synchronized (systemLock) {
+			return text.toString();
+		}
 	}
 
 /* Method: getText(start, end) */
@@ -1841,7 +2921,9 @@ class SystemConsoleModel extends ConsoleModel {
  * <code>substring</code> for strings.
  */
 	public String getText(int start, int end) {
-		return text.substring(start, end);
+		synchronized (systemLock) {
+			return text.substring(start, end);
+		}
 	}
 
 /* Method: getLength() */
@@ -1849,15 +2931,17 @@ class SystemConsoleModel extends ConsoleModel {
  * Returns the length of the text.
  */
 	public int getLength() {
-		return text.length();
+		synchronized (systemLock) {
+			return text.length();
+		}
 	}
 
-/* Method: getConsoleModel() */
+/* Method: getConsolePane() */
 /**
  * Returns the top-level component that represents the console.  This is the
  * pane that needs to be added to a parent.
  */
-	public Component getConsoleModel() {
+	public Component getConsolePane() {
 		return null;
 	}
 
@@ -1982,81 +3066,1407 @@ class SystemConsoleModel extends ConsoleModel {
 		return inputScript;
 	}
 
+/* Private method: getInput() */
+/**
+ * Returns the buffered reader for <code>System.in</code>, creating a new one
+ * if <code>System.in</code> has been reassigned.  Any input that the old
+ * reader had buffered belongs to the old stream and is dropped.
+ */
+	private BufferedReader getInput() {
+		if (systemInput == null || inputStream != System.in) {
+			inputStream = System.in;
+			systemInput = new BufferedReader(new InputStreamReader(inputStream), INPUT_BUFFER_SIZE);
+		}
+		return systemInput;
+	}
+
+/* Private method: getOutput() */
+/**
+ * Returns the buffered writer for <code>System.out</code>, creating a new one
+ * if <code>System.out</code> has been reassigned.  The caller must hold the lock.
+ */
+	private Writer getOutput() throws IOException {
+		if (output == null || outputStream != System.out) {
+			if (output != null) output.flush();
+			outputStream = System.out;
+			output = new BufferedWriter(new OutputStreamWriter(outputStream), OUTPUT_BUFFER_SIZE);
+		}
+		return output;
+	}
+
+/* Private method: appendText(str) */
+/**
+ * Adds the string to the retained text and removes the oldest lines once
+ * the text exceeds the scrollback limit by more than an eighth.  The caller
+ * must hold the lock.
+ */
+	private void appendText(String str) {
+		text.append(str);
+		for (int i = str.length() - 1; i >= 0; i--) {
+			if (str.charAt(i) == '\n') retainedLines++;
+		}
+		int limit = scrollbackLimit;
+		if (limit <= 0 || retainedLines <= limit + limit / 8) return;
+		int cut = 0;
+		for (int drop = retainedLines - limit; drop > 0; drop--) {
+			cut = text.indexOf("\n", cut) + 1;
+		}
+		text.delete(0, cut);
+		retainedLines = limit;
+	}
+
+/* Private constants */
+
+	private static final int OUTPUT_BUFFER_SIZE = 8192;
+	private static final int INPUT_BUFFER_SIZE = 8192;
+	private static final int SYSTEM_FLUSH_DELAY = 50;
+
 /* Private instance variables */
 
 	private BufferedReader inputScript;
-	private String text;
+	private BufferedReader systemInput;
+	private InputStream inputStream;
+	private StringBuilder text;
+	private Object systemLock;
+	private Writer output;
+	private PrintStream outputStream;
+	private SwingTimer systemFlushTimer;
+	private boolean flushPending;
+	private int retainedLines;
+	private volatile int scrollbackLimit;
 }
 
-/* Package class: CharacterQueue */
+/* Package class: LineConsoleModel */
+
+/**
+ * This class implements a console model for programs that produce very
+ * large amounts of output.  Instead of a <code>JTextPane</code>, the text
+ * is kept in a single character array together with an index of line
+ * starts and a list of style runs, and a custom component paints only the
+ * lines that are visible.  Printing is therefore an array append, and the
+ * cost of painting does not depend on how much output there is.  The
+ * model supports the same input editing keys, selection, clipboard
+ * operations, and scrollback limit as the standard model.
+ */
+class LineConsoleModel extends ConsoleModel {
+
+/* Constructor: LineConsoleModel() */
+/**
+ * Creates a new empty line console model.
+ */
+	public LineConsoleModel() {
+		super(false);
+		lock = new Object();
+		chars = new char[INITIAL_CAPACITY];
+		lineStarts = new int[INITIAL_LINES];
+		lineCount = 1;
+		runStarts = new int[INITIAL_RUNS];
+		runStyles = new int[INITIAL_RUNS];
+		input = new StringBuilder();
+		keys = new CharacterQueue();
+		attributeStyles = new int[3];
+		attributeColors = new Color[3];
+		attributeStyles[INPUT_STYLE] = Font.BOLD;
+		attributeStyles[ERROR_STYLE] = Font.BOLD;
+		view = new LineConsoleView(this);
+		view.addKeyListener(this);
+		view.addFocusListener(this);
+		lineScrollPane = new JScrollPane(view, JScrollPane.VERTICAL_SCROLLBAR_ALWAYS,
+		                                 JScrollPane.HORIZONTAL_SCROLLBAR_ALWAYS);
+		repaintTimer = new SwingTimer(REPAINT_INTERVAL, new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				updateView();
+			}
+		});
+		repaintTimer.setRepeats(false);
+	}
 
+/* Method: print(str, style) */
 /**
- * This class defines a simple character queue.
+ * Appends the string to the console output.
  */
-class CharacterQueue {
+	public void print(String str, int style) {
+		synchronized (lock) {
+			append(str, style);
+		}
+		scheduleUpdate();
+	}
 
-/* Constructor: CharacterQueue() */
+/* Method: flush() */
 /**
- * Creates an empty character queue.
+ * Does nothing, because output is added to the buffer immediately.
  */
-	public CharacterQueue() {
-		buffer = "";
+	public void flush() {
+		/* Empty */
 	}
 
-/* Method: enqueue(ch) */
+/* Method: readLine() */
 /**
- * Adds a character to the end of the queue.
+ * Reads and returns the next line of text from the console.
  */
-	public void enqueue(char ch) {
-		synchronized (this) {
-			buffer += ch;
-			notifyAll();
+	public String readLine() {
+		if (inputScript != null) {
+			String line = null;
+			try {
+				line = inputScript.readLine();
+			} catch (IOException ex) {
+				throw new ErrorException(ex);
+			}
+			if (line != null) {
+				print(line, INPUT_STYLE);
+				print("\n", OUTPUT_STYLE);
+				return line;
+			}
+			try {
+				inputScript.close();
+			} catch (IOException ex) {
+				/* Empty */
+			}
+			inputScript = null;
+		}
+		synchronized (lock) {
+			input.setLength(0);
+			cursor = 0;
+			reading = true;
+		}
+		scheduleUpdate();
+		char ch;
+		String run;
+		while ((ch = (run = keys.dequeueRun()).charAt(0)) != '\n' && ch != '\r') {
+			if (!dispatchEditingKey(ch)) insertInput(run);
+			scheduleUpdate();
 		}
+		String line;
+		synchronized (lock) {
+			line = input.toString();
+			input.setLength(0);
+			cursor = 0;
+			reading = false;
+			clearSelection();
+			append(line, INPUT_STYLE);
+			append("\n", OUTPUT_STYLE);
+		}
+		scheduleUpdate();
+		return line;
 	}
 
-/* Method: enqueue(str) */
+/* Package method: deleteBackward() */
 /**
- * Adds a string to the end of the queue.
+ * Deletes the selected input, or the character before the cursor.
  */
-	public void enqueue(String str) {
-		synchronized (this) {
-			buffer += str;
-			notifyAll();
+	void deleteBackward() {
+		synchronized (lock) {
+			if (!deleteInputSelection() && cursor > 0) {
+				input.deleteCharAt(--cursor);
+			}
 		}
 	}
 
-/* Method: dequeue() */
+/* Package method: moveCursor(delta) */
 /**
- * Removes and returns the first character in the queue.  If the queue
- * is empty, this method waits for data.
+ * Moves the cursor one character left or right within the input.
  */
-	public char dequeue() {
-		synchronized (this) {
-			while (buffer.length() == 0) {
-				try {
-					isWaiting = true;
-					wait();
-					isWaiting = false;
-				} catch (InterruptedException ex) {
-					/* Empty */
-				}
-			}
-			char ch = buffer.charAt(0);
-			buffer = buffer.substring(1);
-			return ch;
+	void moveCursor(int delta) {
+		synchronized (lock) {
+			cursor = (delta < 0) ? Math.max(cursor - 1, 0) : Math.min(cursor + 1, input.length());
+			clearSelection();
 		}
 	}
 
-/* Method: isWaiting() */
+/* Package method: insertInput(run) */
 /**
- * Returns <code>true</code> if the buffer is in a waiting state.
+ * Replaces the selected input with the typed characters.
  */
-	public boolean isWaiting() {
-		return isWaiting;
+	void insertInput(String run) {
+		synchronized (lock) {
+			deleteInputSelection();
+			input.insert(cursor, run);
+			cursor += run.length();
+		}
 	}
 
+/* Method: setInputScript(rd) */
+/**
+ * Sets a new input script for the console, which will subsequently
+ * take input from the specified reader.
+ */
+	public void setInputScript(BufferedReader rd) {
+		inputScript = rd;
+		if (keys.isWaiting()) {
+			try {
+				String line = inputScript.readLine();
+				if (line != null) keys.enqueue(line + "\n");
+			} catch (IOException ex) {
+				throw new ErrorException(ex);
+			}
+		}
+	}
+
+/* Method: getInputScript() */
+/**
+ * Retrieves the input script.  After the end of the input script has been
+ * reached, this method will return <code>null</code>.
+ */
+	public BufferedReader getInputScript() {
+		return inputScript;
+	}
+
+/* Method: clear() */
+/**
+ * Clears the console output.  Any partially typed input line is kept.
+ */
+	public void clear() {
+		synchronized (lock) {
+			length = 0;
+			lineCount = 1;
+			runCount = 0;
+			maxLineLength = 0;
+			clearSelection();
+		}
+		scheduleUpdate();
+	}
+
+/* Method: getText() */
+/**
+ * Returns the text stored in the console model, including any partially
+ * typed input line.
+ */
+	public String getText() {
+		synchronized (lock) {
+			return new String(chars, 0, length) + input;
+		}
+	}
+
+/* Method: getText(start, end) */
+/**
+ * Returns a substring from the text using endpoints defined as in
+ * <code>substring</code> for strings.
+ */
+	public String getText(int start, int end) {
+		synchronized (lock) {
+			if (start < 0 || end < start || end > length + input.length()) {
+				throw new ErrorException("getText: Illegal range");
+			}
+			StringBuilder sb = new StringBuilder(end - start);
+			if (start < length) sb.append(chars, start, Math.min(end, length) - start);
+			if (end > length) sb.append(input, Math.max(start - length, 0), end - length);
+			return sb.toString();
+		}
+	}
+
+/* Method: getLength() */
+/**
+ * Returns the length of the text stored in the console model.
+ */
+	public int getLength() {
+		synchronized (lock) {
+			return length + input.length();
+		}
+	}
+
+/* Method: getConsolePane() */
+/**
+ * Returns the top-level component that represents the console.
+ */
+	public Component getConsolePane() {
+		return lineScrollPane;
+	}
+
+/* Method: getTextPane() */
+/**
+ * Returns the component that displays the text.
+ */
+	public Component getTextPane() {
+		return view;
+	}
+
+/* Method: cut() */
+/**
+ * Implements the "cut" menu operation.  Only text in the input line can be cut.
+ */
+	public void cut() {
+		copy();
+		synchronized (lock) {
+			deleteInputSelection();
+		}
+		scheduleUpdate();
+	}
+
+/* Method: copy() */
+/**
+ * Implements the "copy" menu operation.
+ */
+	public void copy() {
+		String text;
+		synchronized (lock) {
+			if (selectionStart == selectionEnd) return;
+			text = getText(selectionStart, selectionEnd);
+		}
+		try {
+			StringSelection selection = new StringSelection(text);
+			view.getToolkit().getSystemClipboard().setContents(selection, selection);
+		} catch (Exception ex) {
+			/* No clipboard is available */
+		}
+	}
+
+/* Method: paste() */
+/**
+ * Implements the "paste" menu operation by treating the contents of the
+ * clipboard as typed input.
+ */
+	public void paste() {
+		try {
+			Clipboard clipboard = view.getToolkit().getSystemClipboard();
+			Object data = clipboard.getData(DataFlavor.stringFlavor);
+			if (data != null) {
+				synchronized (lock) {
+					deleteInputSelection();
+				}
+				keys.enqueue(data.toString());
+			}
+		} catch (Exception ex) {
+			/* Nothing to paste */
+		}
+	}
+
+/* Method: selectAll() */
+/**
+ * Implements the "select all" menu operation.
+ */
+	public void selectAll() {
+		synchronized (lock) {
+			selectionStart = 0;
+			selectionEnd = length + input.length();
+		}
+		scheduleUpdate();
+	}
+
+/* Method: isPointSelection() */
+	public boolean isPointSelection() {
+		synchronized (lock) {
+			return selectionStart == selectionEnd;
+		}
+	}
+
+/* Method: print(pj) */
+/**
+ * Prints the entire console using the specified <code>PrintJob</code> object.
+ */
+	public void print(PrintJob pj) {
+		Dimension pageSize = pj.getPageDimension();
+		FontMetrics fm = view.getFontMetrics(view.getFont());
+		int lineHeight = fm.getHeight();
+		int linesPerPage = Math.max(1, pageSize.height / lineHeight);
+		int nLines = getDisplayLineCount();
+		for (int first = 0; first < nLines; first += linesPerPage) {
+			Graphics g = pj.getGraphics();
+			g.setFont(view.getFont());
+			paintLines(g, first, Math.min(first + linesPerPage, nLines) - 1, 0, false);
+			g.dispose();
+		}
+	}
+
+/* Method: setInputStyle(style) */
+/**
+ * Sets the style parameters for console input.
+ */
+	public void setInputStyle(int style) {
+		checkUnused();
+		attributeStyles[INPUT_STYLE] = style;
+	}
+
+/* Method: setInputColor(color) */
+/**
+ * Sets the color used for console input.
+ */
+	public void setInputColor(Color color) {
+		checkUnused();
+		attributeColors[INPUT_STYLE] = color;
+	}
+
+/* Method: setErrorStyle(style) */
+/**
+ * Sets the style parameters for console error messages.
+ */
+	public void setErrorStyle(int style) {
+		checkUnused();
+		attributeStyles[ERROR_STYLE] = style;
+	}
+
+/* Method: setErrorColor(color) */
+/**
+ * Sets the color used for console error messages.
+ */
+	public void setErrorColor(Color color) {
+		checkUnused();
+		attributeColors[ERROR_STYLE] = color;
+	}
+
+/* Method: setScrollbackLimit(lines) */
+/**
+ * Sets the maximum number of lines retained in the buffer, or 0 for no limit.
+ */
+	public void setScrollbackLimit(int lines) {
+		synchronized (lock) {
+			scrollbackLimit = lines;
+			trimScrollback();
+		}
+		scheduleUpdate();
+	}
+
+/* Method: getScrollbackLimit() */
+/**
+ * Returns the maximum number of lines retained in the buffer.
+ */
+	public int getScrollbackLimit() {
+		return scrollbackLimit;
+	}
+
+/* Method: setScrollbackLog(wr) */
+/**
+ * Sets the writer that receives text trimmed from the head of the buffer.
+ */
+	public void setScrollbackLog(Writer wr) {
+		scrollbackLog = wr;
+	}
+
+/* Method: keyTyped(e) */
+/**
+ * Adds a typed character to the input queue.
+ */
+	public void keyTyped(KeyEvent e) {
+		keys.enqueue(e.getKeyChar());
+		e.consume();
+	}
+
+/* Method: keyPressed(e) */
+/**
+ * Translates the arrow keys into cursor-movement characters.
+ */
+	public void keyPressed(KeyEvent e) {
+		switch (e.getKeyCode()) {
+		  case KeyEvent.VK_LEFT:
+			keys.enqueue('\002');
+			break;
+		  case KeyEvent.VK_RIGHT:
+			keys.enqueue('\006');
+			break;
+		}
+		e.consume();
+	}
+
+/* Method: requestFocus() */
+/**
+ * Forwards the request focus to the view.
+ */
+	public void requestFocus() {
+		if (view != null) view.requestFocus();
+	}
+
+/* Package method: getDisplayLineCount() */
+/**
+ * Returns the number of lines the view displays.
+ */
+	int getDisplayLineCount() {
+		synchronized (lock) {
+			return lineCount;
+		}
+	}
+
+/* Package method: getMaxLineLength() */
+/**
+ * Returns the number of characters in the longest line seen so far.
+ */
+	int getMaxLineLength() {
+		synchronized (lock) {
+			return Math.max(maxLineLength, length - lineStarts[lineCount - 1] + input.length());
+		}
+	}
+
+/* Package method: paintLines(g, first, last, y, showCaret) */
+/**
+ * Paints the lines from <code>first</code> through <code>last</code>,
+ * inclusive, with the top of the first line at <code>y</code>.
+ */
+	void paintLines(Graphics g, int first, int last, int y, boolean showCaret) {
+		Font plainFont = g.getFont();
+		Color foreground = g.getColor();
+		FontMetrics fm = g.getFontMetrics(plainFont);
+		int lineHeight = fm.getHeight();
+		int baseline = y + fm.getAscent();
+		synchronized (lock) {
+			last = Math.min(last, lineCount - 1);
+			if (first > last) return;
+			int run = findRun(lineStarts[Math.max(first, 0)]);
+			for (int i = Math.max(first, 0); i <= last; i++) {
+				int start = lineStarts[i];
+				int end = (i + 1 < lineCount) ? lineStarts[i + 1] - 1 : length;
+				int x = LEFT_MARGIN;
+				if (selectionStart != selectionEnd) {
+					paintSelection(g, fm, i, start, end, baseline - fm.getAscent(), lineHeight);
+				}
+				for (int pos = start; pos < end; ) {
+					while (run + 1 < runCount && runStarts[run + 1] <= pos) {
+						run++;
+					}
+					int runEnd = (run + 1 < runCount) ? Math.min(runStarts[run + 1], end) : end;
+					int style = (runCount == 0) ? OUTPUT_STYLE : runStyles[run];
+					setStyle(g, plainFont, foreground, style);
+					g.drawChars(chars, pos, runEnd - pos, x, baseline);
+					x += g.getFontMetrics().charsWidth(chars, pos, runEnd - pos);
+					pos = runEnd;
+				}
+				if (i == lineCount - 1) {
+					setStyle(g, plainFont, foreground, INPUT_STYLE);
+					FontMetrics ifm = g.getFontMetrics();
+					String str = input.toString();
+					g.drawString(str, x, baseline);
+					if (showCaret && reading) {
+						int cx = x + ifm.stringWidth(str.substring(0, cursor));
+						g.setColor(foreground);
+						g.drawLine(cx, baseline - fm.getAscent(), cx, baseline + fm.getDescent() - 1);
+					}
+				}
+				baseline += lineHeight;
+			}
+		}
+		g.setFont(plainFont);
+		g.setColor(foreground);
+	}
+
+/* Package method: getPosition(x, y, fm) */
+/**
+ * Returns the text position closest to the point (<code>x</code>, <code>y</code>)
+ * in the view.
+ */
+	int getPosition(int x, int y, FontMetrics fm) {
+		synchronized (lock) {
+			int line = Math.max(0, Math.min(lineCount - 1, y / fm.getHeight()));
+			int start = lineStarts[line];
+			int end = (line + 1 < lineCount) ? lineStarts[line + 1] - 1 : length;
+			int cx = LEFT_MARGIN;
+			for (int pos = start; pos < end; pos++) {
+				int w = fm.charWidth(chars[pos]);
+				if (x < cx + w / 2) return pos;
+				cx += w;
+			}
+			if (line < lineCount - 1) return end;
+			for (int i = 0; i < input.length(); i++) {
+				int w = fm.charWidth(input.charAt(i));
+				if (x < cx + w / 2) return length + i;
+				cx += w;
+			}
+			return length + input.length();
+		}
+	}
+
+/* Package method: setSelection(start, end) */
+/**
+ * Selects the text between the two positions, in either order.
+ */
+	void setSelection(int start, int end) {
+		synchronized (lock) {
+			selectionStart = Math.min(start, end);
+			selectionEnd = Math.max(start, end);
+			if (reading && selectionStart == selectionEnd && selectionStart >= length) {
+				cursor = selectionStart - length;
+			}
+		}
+		scheduleUpdate();
+	}
+
+/* Private method: append(str, style) */
+/**
+ * Appends a string to the buffer, updating the line index and the style
+ * runs.  The caller must hold the lock.
+ */
+	private void append(String str, int style) {
+		int n = str.length();
+		if (n == 0) return;
+		if (length + n > chars.length) {
+			char[] newChars = new char[Math.max(chars.length * 2, length + n)];
+			System.arraycopy(chars, 0, newChars, 0, length);
+			chars = newChars;
+		}
+		if (runCount == 0 || runStyles[runCount - 1] != style) {
+			if (runCount == runStarts.length) {
+				runStarts = grow(runStarts);
+				runStyles = grow(runStyles);
+			}
+			runStarts[runCount] = length;
+			runStyles[runCount] = style;
+			runCount++;
+		}
+		str.getChars(0, n, chars, length);
+		int end = length + n;
+		for (int i = length; i < end; i++) {
+			if (chars[i] == '\n') {
+				maxLineLength = Math.max(maxLineLength, i - lineStarts[lineCount - 1]);
+				if (lineCount == lineStarts.length) lineStarts = grow(lineStarts);
+				lineStarts[lineCount++] = i + 1;
+			}
+		}
+		length = end;
+		trimScrollback();
+	}
+
+/* Private method: trimScrollback() */
+/**
+ * Removes the oldest lines once the buffer exceeds the scrollback limit by
+ * more than an eighth, copying them to the scrollback log if there is one.
+ * The caller must hold the lock.
+ */
+	private void trimScrollback() {
+		int limit = scrollbackLimit;
+		if (limit <= 0 || lineCount <= limit + limit / 8) return;
+		int drop = lineCount - limit;
+		int cut = lineStarts[drop];
+		Writer log = scrollbackLog;
+		if (log != null) {
+			try {
+				log.write(chars, 0, cut);
+				log.flush();
+			} catch (IOException ex) {
+				throw new ErrorException(ex);
+			}
+		}
+		System.arraycopy(chars, cut, chars, 0, length - cut);
+		length -= cut;
+		for (int i = drop; i < lineCount; i++) {
+			lineStarts[i - drop] = lineStarts[i] - cut;
+		}
+		lineCount -= drop;
+		int firstRun = Math.max(findRun(cut), 0);
+		for (int i = firstRun; i < runCount; i++) {
+			runStarts[i - firstRun] = Math.max(runStarts[i] - cut, 0);
+			runStyles[i - firstRun] = runStyles[i];
+		}
+		runCount -= firstRun;
+		selectionStart = Math.max(selectionStart - cut, 0);
+		selectionEnd = Math.max(selectionEnd - cut, 0);
+		trimmed = true;
+	}
+
+/* Private method: findRun(pos) */
+/**
+ * Returns the index of the style run containing the specified position,
+ * or -1 if there are no runs.  The caller must hold the lock.
+ */
+	private int findRun(int pos) {
+		int lo = 0;
+		int hi = runCount - 1;
+		int result = (runCount == 0) ? -1 : 0;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			if (runStarts[mid] <= pos) {
+				result = mid;
+				lo = mid + 1;
+			} else {
+				hi = mid - 1;
+			}
+		}
+		return result;
+	}
+
+/* Private method: paintSelection(g, fm, line, start, end, top, height) */
+/**
+ * Paints the selection highlight for one line.  The caller must hold the lock.
+ */
+	private void paintSelection(Graphics g, FontMetrics fm, int line, int start, int end, int top, int height) {
+		int lineEnd = (line == lineCount - 1) ? length + input.length() : end + 1;
+		int s = Math.max(selectionStart, start);
+		int e = Math.min(selectionEnd, lineEnd);
+		if (s >= e) return;
+		boolean lastLine = line == lineCount - 1;
+		int x1 = LEFT_MARGIN + textWidth(fm, start, s);
+		int x2 = LEFT_MARGIN + textWidth(fm, start, lastLine ? e : Math.min(e, end));
+		if (e > end && !lastLine) x2 += fm.charWidth(' ');
+		Color color = g.getColor();
+		g.setColor(SELECTION_COLOR);
+		g.fillRect(x1, top, Math.max(x2 - x1, 1), height);
+		g.setColor(color);
+	}
+
+/* Private method: textWidth(fm, start, end) */
+/**
+ * Returns the width of the text between two positions on the same line,
+ * measured in the plain font.  The caller must hold the lock.
+ */
+	private int textWidth(FontMetrics fm, int start, int end) {
+		int width = 0;
+		if (start < length) width += fm.charsWidth(chars, start, Math.min(end, length) - start);
+		for (int i = Math.max(start, length); i < end; i++) {
+			width += fm.charWidth(input.charAt(i - length));
+		}
+		return width;
+	}
+
+/* Private method: setStyle(g, plainFont, foreground, style) */
+/**
+ * Sets the font and color of the graphics context for the specified style.
+ */
+	private void setStyle(Graphics g, Font plainFont, Color foreground, int style) {
+		int fontStyle = (style == OUTPUT_STYLE) ? Font.PLAIN : attributeStyles[style];
+		g.setFont((fontStyle == Font.PLAIN) ? plainFont : plainFont.deriveFont(fontStyle));
+		Color color = attributeColors[style];
+		g.setColor((color == null) ? foreground : color);
+	}
+
+/* Private method: deleteInputSelection() */
+/**
+ * Deletes the part of the selection that lies in the input line and moves
+ * the cursor there.  Returns <code>true</code> if anything was deleted.
+ * The caller must hold the lock.
+ */
+	private boolean deleteInputSelection() {
+		int start = Math.max(selectionStart - length, 0);
+		int end = selectionEnd - length;
+		clearSelection();
+		if (end <= start) return false;
+		input.delete(start, end);
+		cursor = start;
+		return true;
+	}
+
+/* Private method: clearSelection() */
+/**
+ * Removes the selection.  The caller must hold the lock.
+ */
+	private void clearSelection() {
+		selectionStart = selectionEnd = 0;
+	}
+
+/* Private method: checkUnused() */
+/**
+ * Makes sure that no I/O has taken place.
+ */
+	private void checkUnused() {
+		if (getLength() != 0) {
+			throw new ErrorException("Console styles and colors cannot be changed after I/O has started.");
+		}
+	}
+
+/* Private method: scheduleUpdate() */
+/**
+ * Arranges for the view to be updated within the next repaint interval.
+ */
+	private void scheduleUpdate() {
+		if (!updateScheduled) {
+			updateScheduled = true;
+			repaintTimer.restart();
+		}
+	}
+
+/* Private method: updateView() */
+/**
+ * Resizes the view to fit the text, scrolls to the last line, and repaints.
+ * This method runs on the event dispatch thread.
+ */
+	private void updateView() {
+		updateScheduled = false;
+		int nLines = getDisplayLineCount();
+		int maxLength = getMaxLineLength();
+		boolean resized = nLines != displayedLines || maxLength > displayedWidth || trimmed;
+		trimmed = false;
+		if (resized) {
+			displayedLines = nLines;
+			displayedWidth = maxLength;
+			view.revalidate();
+			lineScrollPane.validate();
+			int lineHeight = view.getLineHeight();
+			view.scrollRectToVisible(new Rectangle(0, (nLines - 1) * lineHeight, 1, lineHeight));
+		}
+		view.repaint();
+	}
+
+/* Private method: grow(array) */
+/**
+ * Returns a copy of the array with twice the capacity.
+ */
+	private static int[] grow(int[] array) {
+		int[] result = new int[array.length * 2];
+		System.arraycopy(array, 0, result, 0, array.length);
+		return result;
+	}
+
+/* Private constants */
+
+	private static final int INITIAL_CAPACITY = 4096;
+	private static final int INITIAL_LINES = 256;
+	private static final int INITIAL_RUNS = 16;
+	private static final int REPAINT_INTERVAL = 15;
+	private static final Color SELECTION_COLOR = new Color(0xB8CFE5);
+
+/* Package constants */
+
+	static final int LEFT_MARGIN = 3;
+
+/* Private instance variables */
+
+	private Object lock;
+	private char[] chars;
+	private int length;
+	private int[] lineStarts;
+	private int lineCount;
+	private int[] runStarts;
+	private int[] runStyles;
+	private int runCount;
+	private int maxLineLength;
+	private StringBuilder input;
+	private int cursor;
+	private boolean reading;
+	private int selectionStart;
+	private int selectionEnd;
+	private int[] attributeStyles;
+	private Color[] attributeColors;
+	private CharacterQueue keys;
+	private BufferedReader inputScript;
+	private LineConsoleView view;
+	private JScrollPane lineScrollPane;
+	private SwingTimer repaintTimer;
+	private volatile boolean updateScheduled;
+	private volatile int scrollbackLimit;
+	private volatile Writer scrollbackLog;
+	private volatile boolean trimmed;
+	private int displayedLines;
+	private int displayedWidth;
+}
+
+/* Package class: LineConsoleView */
+
+/**
+ * This class is the component that displays a <code>LineConsoleModel</code>.
+ * It paints only the lines that intersect the clipping rectangle.
+ */
+class LineConsoleView extends JComponent implements Scrollable, MouseListener, MouseMotionListener {
+
+/* Constructor: LineConsoleView(model) */
+/**
+ * Creates a view for the specified model.
+ */
+	public LineConsoleView(LineConsoleModel model) {
+		this.model = model;
+		setOpaque(true);
+		setFocusable(true);
+		setBackground(Color.white);
+		setForeground(Color.black);
+		setCursor(Cursor.getPredefinedCursor(Cursor.TEXT_CURSOR));
+		addMouseListener(this);
+		addMouseMotionListener(this);
+	}
+
+/* Method: getLineHeight() */
+/**
+ * Returns the height of one line in the current font.
+ */
+	public int getLineHeight() {
+		return getFontMetrics(getFont()).getHeight();
+	}
+
+/* Override method: getPreferredSize() */
+/**
+ * Returns a size large enough to hold every line in the model.
+ */
+	public Dimension getPreferredSize() {
+		FontMetrics fm = getFontMetrics(getFont());
+		int width = 2 * LineConsoleModel.LEFT_MARGIN + (model.getMaxLineLength() + 1) * fm.charWidth('m');
+		return new Dimension(width, model.getDisplayLineCount() * fm.getHeight());
+	}
+
+/* Override method: paintComponent(g) */
+/**
+ * Paints the visible lines.
+ */
+	protected void paintComponent(Graphics g) {
+		Rectangle clip = g.getClipBounds();
+		if (clip == null) clip = new Rectangle(0, 0, getWidth(), getHeight());
+		g.setColor(getBackground());
+		g.fillRect(clip.x, clip.y, clip.width, clip.height);
+		g.setFont(getFont());
+		g.setColor(getForeground());
+		int lineHeight = getLineHeight();
+		int first = clip.y / lineHeight;
+		int last = (clip.y + clip.height) / lineHeight;
+		model.paintLines(g, first, last, first * lineHeight, hasFocus());
+	}
+
+/* Scrollable interface */
+
+	public Dimension getPreferredScrollableViewportSize() {
+		return getPreferredSize();
+	}
+
+	public int getScrollableUnitIncrement(Rectangle visible, int orientation, int direction) {
+		return (orientation == SwingConstants.VERTICAL) ? getLineHeight() : getFontMetrics(getFont()).charWidth('m');
+	}
+
+	public int getScrollableBlockIncrement(Rectangle visible, int orientation, int direction) {
+		return (orientation == SwingConstants.VERTICAL) ? visible.height - getLineHeight() : visible.width;
+	}
+
+	public boolean getScrollableTracksViewportWidth() {
+		Container parent = getParent();
+		return parent instanceof JViewport && parent.getWidth() > getPreferredSize().width;
+	}
+
+	public boolean getScrollableTracksViewportHeight() {
+		Container parent = getParent();
+		return parent instanceof JViewport && parent.getHeight() > getPreferredSize().height;
+	}
+
+/* MouseListener interface */
+
+	public void mousePressed(MouseEvent e) {
+		requestFocus();
+		anchor = model.getPosition(e.getX(), e.getY(), getFontMetrics(getFont()));
+		model.setSelection(anchor, anchor);
+	}
+
+	public void mouseDragged(MouseEvent e) {
+		int pos = model.getPosition(e.getX(), e.getY(), getFontMetrics(getFont()));
+		model.setSelection(anchor, pos);
+		scrollRectToVisible(new Rectangle(e.getX(), e.getY(), 1, 1));
+	}
+
+	public void mouseClicked(MouseEvent e) {
+		/* Empty */
+	}
+
+	public void mouseReleased(MouseEvent e) {
+		/* Empty */
+	}
+
+	public void mouseEntered(MouseEvent e) {
+		/* Empty */
+	}
+
+	public void mouseExited(MouseEvent e) {
+		/* Empty */
+	}
+
+	public void mouseMoved(MouseEvent e) {
+		/* Empty */
+	}
+
+/* Private constants */
+
+	private static final long serialVersionUID = 1L;
+
+/* Private instance variables */
+
+	private LineConsoleModel model;
+	private int anchor;
+}
+
+/* Package class: BatchConsoleModel */
+
+/**
+ * This class implements a console model for programs that run in batch
+ * mode.  The model creates no Swing components and does not keep a copy
+ * of the text of the session.  Output goes to a writer through a large
+ * buffer, which is flushed only when the program is about to wait for
+ * input that has not yet arrived and when the program exits, so that
+ * output costs one system call per buffer rather than one per line.
+ */
+class BatchConsoleModel extends ConsoleModel {
+
+/* Constructor: BatchConsoleModel(in, out) */
+/**
+ * Creates a new batch console model that reads from <code>in</code> and
+ * writes to <code>out</code>.
+ */
+	public BatchConsoleModel(Reader in, Writer out) {
+		super(false);
+		input = new BufferedReader(in, BUFFER_SIZE);
+		output = new BufferedWriter(out, BUFFER_SIZE);
+		batchLock = new Object();
+		flushOnExit(this);
+	}
+
+/* Method: print(str, style) */
+/**
+ * Writes the string to the output buffer.
+ */
+	public void print(String str, int style) {
+		synchronized (batchLock) {
+			try {
+				output.write(str);
+			} catch (IOException ex) {
+				throw new ErrorException(ex);
+			}
+		}
+	}
+
+/* Method: flush() */
+/**
+ * Writes any buffered output to the underlying writer.
+ */
+	public void flush() {
+		synchronized (batchLock) {
+			try {
+				output.flush();
+			} catch (IOException ex) {
+				/* Empty */
+			}
+		}
+	}
+
+/* Method: readLine() */
+/**
+ * Reads and returns the next line of input, or <code>null</code> at the end
+ * of the input.  Pending output is flushed first only if the read would
+ * otherwise wait, so that a prompt is visible to an interactive user.
+ */
+	public String readLine() {
+		try {
+			if (inputScript != null) {
+				String line = inputScript.readLine();
+				if (line != null) {
+					print(line + "\n", INPUT_STYLE);
+					return line;
+				}
+				try {
+					inputScript.close();
+				} catch (IOException ex) {
+					/* Empty */
+				}
+				inputScript = null;
+			}
+			if (input.ready()) return input.readLine();
+			flush();
+			JTFTools.setBlocked(true);
+			try {
+				return input.readLine();
+			} finally {
+				JTFTools.setBlocked(false);
+			}
+		} catch (IOException ex) {
+			throw new ErrorException(ex);
+		}
+	}
+
+/* Method: setInputScript(rd) */
+/**
+ * Sets a new input script for the console, which will subsequently
+ * take input from the specified reader.
+ */
+	public void setInputScript(BufferedReader rd) {
+		inputScript = rd;
+	}
+
+/* Method: getInputScript() */
+/**
+ * Retrieves the input script.  After the end of the input script has been
+ * reached, this method will return <code>null</code>.
+ */
+	public BufferedReader getInputScript() {
+		return inputScript;
+	}
+
+/* Method: clear() */
+/**
+ * Clears the console (does nothing in this case).
+ */
+	public void clear() {
+		/* Empty */
+	}
+
+/* Method: getText() */
+/**
+ * Returns the text of the console, which is always empty because a batch
+ * console does not retain its output.
+ */
+	public String getText() {
+		return "";
+	}
+
+/* Method: getText(start, end) */
+/**
+ * Returns a substring of the text of the console, which is always empty.
+ */
+	public String getText(int start, int end) {
+		return "";
+	}
+
+/* Method: getLength() */
+/**
+ * Returns the length of the text, which is always 0.
+ */
+	public int getLength() {
+		return 0;
+	}
+
+/* Method: getConsolePane() */
+/**
+ * Returns <code>null</code>, since a batch console has no display.
+ */
+	public Component getConsolePane() {
+		return null;
+	}
+
+/* Method: getTextPane() */
+/**
+ * Returns <code>null</code>, since a batch console has no display.
+ */
+	public Component getTextPane() {
+		return null;
+	}
+
+/* Method: setInputStyle(style) */
+/**
+ * Sets the style parameters for console input (does nothing in this case).
+ */
+	public void setInputStyle(int style) {
+		/* Empty */
+	}
+
+/* Method: setInputColor(color) */
+/**
+ * Sets the color used for console input (does nothing in this case).
+ */
+	public void setInputColor(Color color) {
+		/* Empty */
+	}
+
+/* Method: setErrorStyle(style) */
+/**
+ * Sets the style parameters for error messages (does nothing in this case).
+ */
+	public void setErrorStyle(int style) {
+		/* Empty */
+	}
+
+/* Method: setErrorColor(color) */
+/**
+ * Sets the color used for error messages (does nothing in this case).
+ */
+	public void setErrorColor(Color color) {
+		/* Empty */
+	}
+
+/* Method: cut() */
+/**
+ * Implements the "cut" menu operation.
+ */
+	public void cut() {
+		/* Empty */
+	}
+
+/* Method: copy() */
+/**
+ * Implements the "copy" menu operation.
+ */
+	public void copy() {
+		/* Empty */
+	}
+
+/* Method: paste() */
+/**
+ * Implements the "paste" menu operation.
+ */
+	public void paste() {
+		/* Empty */
+	}
+
+/* Method: selectAll() */
+/**
+ * Implements the "select all" menu operation.
+ */
+	public void selectAll() {
+		/* Empty */
+	}
+
+/* Method: isPointSelection() */
+	public boolean isPointSelection() {
+		return true;
+	}
+
+/* Method: print(pj) */
+/**
+ * Prints the console using the specified <code>PrintJob</code> object
+ * (does nothing in this case).
+ */
+	public void print(PrintJob pj) {
+		/* Empty */
+	}
+
+/* Private constants */
+
+	private static final int BUFFER_SIZE = 65536;
+
+/* Private instance variables */
+
+	private BufferedReader input;
+	private BufferedWriter output;
+	private BufferedReader inputScript;
+	private Object batchLock;
+}
+
+/* Package class: CharacterQueue */
+
+/**
+ * This class defines a character queue that holds typed or pasted input
+ * until the console reads it.  The characters are stored in a circular
+ * buffer that grows as needed, so that adding or removing characters
+ * takes constant time.
+ */
+class CharacterQueue {
+
+/* Constructor: CharacterQueue() */
+/**
+ * Creates an empty character queue.
+ */
+	public CharacterQueue() {
+		buffer = new char[INITIAL_CAPACITY];
+		head = 0;
+		count = 0;
+	}
+
+/* Method: enqueue(ch) */
+/**
+ * Adds a character to the end of the queue.
+ */
+	public void enqueue(char ch) {
+		synchronized (this) {
+			ensureCapacity(1);
+			buffer[(head + count) % buffer.length] = ch;
+			count++;
+			if (waiters > 0) notifyAll();
+		}
+	}
+
+/* Method: enqueue(str) */
+/**
+ * Adds a sequence of characters to the end of the queue.
+ */
+	public void enqueue(CharSequence str) {
+		int n = str.length();
+		if (n == 0) return;
+		synchronized (this) {
+			ensureCapacity(n);
+			int tail = (head + count) % buffer.length;
+			for (int i = 0; i < n; i++) {
+				buffer[tail] = str.charAt(i);
+				if (++tail == buffer.length) tail = 0;
+			}
+			count += n;
+			if (waiters > 0) notifyAll();
+		}
+	}
+
+/* Method: dequeue() */
+/**
+ * Removes and returns the first character in the queue.  If the queue
+ * is empty, this method waits for data.
+ */
+	public char dequeue() {
+		synchronized (this) {
+			waitForData();
+			char ch = buffer[head];
+			head = (head + 1) % buffer.length;
+			count--;
+			return ch;
+		}
+	}
+
+/* Method: dequeueRun() */
+/**
+ * Removes and returns the next run of characters from the queue.  If the
+ * first character is a control character, such as a line terminator or an
+ * editing key, the run consists of that character alone.  Otherwise, the
+ * run includes all the characters up to the next control character.  This
+ * makes it possible for the console to insert a pasted or scripted line
+ * in a single operation.  If the queue is empty, this method waits for data.
+ */
+	public String dequeueRun() {
+		synchronized (this) {
+			waitForData();
+			int n = 1;
+			if (!isControl(buffer[head])) {
+				while (n < count && !isControl(buffer[(head + n) % buffer.length])) {
+					n++;
+				}
+			}
+			String run;
+			if (head + n <= buffer.length) {
+				run = new String(buffer, head, n);
+			} else {
+				int first = buffer.length - head;
+				run = new StringBuilder(n).append(buffer, head, first).append(buffer, 0, n - first).toString();
+			}
+			head = (head + n) % buffer.length;
+			count -= n;
+			return run;
+		}
+	}
+
+/* Method: isWaiting() */
+/**
+ * Returns <code>true</code> if a thread is waiting for data.
+ */
+	public boolean isWaiting() {
+		synchronized (this) {
+			return waiters > 0;
+		}
+	}
+
+/* Private method: waitForData() */
+/**
+ * Waits until the queue is not empty.  The caller must hold the lock.
+ */
+	private void waitForData() {
+		if (count > 0) return;
+		JTFTools.setBlocked(true);
+		try {
+			while (count == 0) {
+				waiters++;
+				try {
+					wait();
+				} catch (InterruptedException ex) {
+					/* Empty */
+				} finally {
+					waiters--;
+				}
+			}
+		} finally {
+			JTFTools.setBlocked(false);
+		}
+	}
+
+/* Private method: ensureCapacity(n) */
+/**
+ * Makes sure there is room for <code>n</code> more characters, copying the
+ * contents to the start of a larger array if necessary.  The caller must
+ * hold the lock.
+ */
+	private void ensureCapacity(int n) {
+		if (count + n <= buffer.length) return;
+		char[] newBuffer = new char[Math.max(2 * buffer.length, count + n)];
+		int first = Math.min(count, buffer.length - head);
+		System.arraycopy(buffer, head, newBuffer, 0, first);
+		System.arraycopy(buffer, 0, newBuffer, first, count - first);
+		buffer = newBuffer;
+		head = 0;
+	}
+
+/* Private static method: isControl(ch) */
+/**
+ * Returns <code>true</code> if the character is handled individually by the
+ * console rather than inserted as text.
+ */
+	private static boolean isControl(char ch) {
+		return ch < ' ' || ch == '\177';
+	}
+
+/* Private constants */
+
+	private static final int INITIAL_CAPACITY = 64;
+
 /* Private instance variables */
 
-	private String buffer;
-	private boolean isWaiting;
+	private char[] buffer;
+	private int head;
+	private int count;
+	private int waiters;
 }
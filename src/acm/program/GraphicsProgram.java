@@ -25,6 +25,7 @@ import acm.graphics.GDimension;
 import acm.graphics.GObject;
 import acm.graphics.GPoint;
 import acm.util.ErrorException;
+import acm.util.JTFTools;
 
 import java.awt.*;
 import java.awt.event.KeyListener;
@@ -48,6 +49,8 @@ public abstract class GraphicsProgram extends Program {
  * @usage GraphicsProgram program = new GraphicsProgram();
  */
 	protected GraphicsProgram() {
+		displayRate = DEFAULT_DISPLAY_RATE;
+		maxUpdateSteps = DEFAULT_MAX_UPDATE_STEPS;
 		listener = new GProgramListener(this);
 		gc = createGCanvas();
 		gc.addMouseListener(listener);
@@ -322,16 +325,263 @@ public abstract class GraphicsProgram extends Program {
 	public void waitForClick() {
 		synchronized (listener) {
 			listener.resetClickListener();
-			while (!listener.clickOccurred()) {
-				try {
-					listener.wait();
-				} catch (InterruptedException ex) {
-					/* Empty */
+			JTFTools.setBlocked(true);
+			try {
+				while (!listener.clickOccurred()) {
+					try {
+						listener.wait();
+					} catch (InterruptedException ex) {
+						/* Empty */
+					}
+				}
+			} finally {
+				JTFTools.setBlocked(false);
+			}
+		}
+	}
+
+/* Method: runGameLoop(updateRate) */
+/**
+ * Runs a fixed-timestep game loop in the calling thread until
+ * <a href="#stopGameLoop()"><code>stopGameLoop</code></a> is called.  The
+ * loop calls <a href="#step(double)"><code>step</code></a> exactly
+ * <code>updateRate</code> times per second of elapsed time, each time with
+ * the same time step, so that the simulation does not depend on how long it
+ * takes to paint.  After performing the steps that are due, the loop calls
+ * <a href="#render(double)"><code>render</code></a> and presents the
+ * resulting frame on the canvas, waiting until it has been painted, so
+ * that every render that changes the display produces exactly one frame.
+ * The loop runs at most as often as the display rate allows.  If the
+ * program falls so far behind that more than the maximum number of steps
+ * would be needed in one frame, the extra steps are skipped rather than
+ * allowing the loop to fall further behind.
+ *
+ * <p>While the loop runs, the canvas repaints only when the loop presents a
+ * frame.  The previous repaint settings are restored when the loop ends.
+ *
+ * @usage runGameLoop(updateRate);
+ * @param updateRate The number of simulation steps per second
+ */
+	public void runGameLoop(double updateRate) {
+		if (updateRate <= 0) throw new ErrorException("runGameLoop: Update rate must be positive");
+		double oldFrameRate = gc.getFrameRate();
+		gc.setFrameRate(displayRate);
+		gc.setExternalFrameClock(true);
+		long stepNanos = (long) (1.0E9 / updateRate);
+		long frameNanos = (long) (1.0E9 / displayRate);
+		double dt = 1.0 / updateRate;
+		gameLoopRunning = true;
+		resetGameLoopStatistics();
+		try {
+			long previous = JTFTools.getClock();
+			long accumulator = 0;
+			long nextFrame = previous;
+			while (gameLoopRunning) {
+				long now = JTFTools.getClock();
+				long elapsed = now - previous;
+				previous = now;
+				accumulator += elapsed;
+				int steps = 0;
+				while (accumulator >= stepNanos && gameLoopRunning) {
+					if (steps == maxUpdateSteps) {
+						long skipped = accumulator / stepNanos;
+						skippedSteps += skipped;
+						accumulator -= skipped * stepNanos;
+						break;
+					}
+					step(dt);
+					accumulator -= stepNanos;
+					steps++;
+					updateCount++;
+				}
+				render((double) accumulator / stepNanos);
+				gc.flushFrame();
+				renderCount++;
+				long frameTime = JTFTools.getClock() - now;
+				averageFrameNanos = (renderCount == 1) ? frameTime
+				                  : averageFrameNanos + (frameTime - averageFrameNanos) / 16;
+				nextFrame += frameNanos;
+				long wait = nextFrame - JTFTools.getClock();
+				if (wait > 0) {
+					JTFTools.pauseUntil(nextFrame);
+				} else {
+					if (-wait > frameNanos) lateFrames++;
+					nextFrame = JTFTools.getClock();
 				}
 			}
+		} finally {
+			gameLoopRunning = false;
+			gc.setExternalFrameClock(false);
+			gc.setFrameRate(oldFrameRate);
+			gc.repaint();
 		}
 	}
 
+/* Method: stopGameLoop() */
+/**
+ * Causes the game loop started by <a href="#runGameLoop(double)"><code>runGameLoop</code></a>
+ * to return after it finishes the current frame.  This method can be called
+ * from <code>step</code>, <code>render</code>, or any other thread.
+ *
+ * @usage stopGameLoop();
+ */
+	public void stopGameLoop() {
+		gameLoopRunning = false;
+	}
+
+/* Method: isGameLoopRunning() */
+/**
+ * Returns <code>true</code> if the game loop is running.
+ *
+ * @usage if (isGameLoopRunning()) . . .
+ * @return <code>true</code> if the game loop is running
+ */
+	public boolean isGameLoopRunning() {
+		return gameLoopRunning;
+	}
+
+/* Method: step(dt) */
+/**
+ * Advances the simulation by one fixed time step.  Subclasses that use
+ * <a href="#runGameLoop(double)"><code>runGameLoop</code></a> override this
+ * method to update the state of the program.
+ *
+ * @usage step(dt);
+ * @param dt The length of the time step in seconds
+ */
+	protected void step(double dt) {
+		/* Empty */
+	}
+
+/* Method: render(alpha) */
+/**
+ * Updates the display before a frame is presented.  The argument
+ * <code>alpha</code>, which lies between 0 and 1, indicates how far the
+ * current time lies between the last simulation step and the next one.
+ * Programs that want perfectly smooth motion can override this method to
+ * place each object at the corresponding point between its previous and
+ * current positions.  The default implementation does nothing, in which
+ * case objects are drawn where the last step left them.
+ *
+ * @usage render(alpha);
+ * @param alpha The fraction of a time step since the last step
+ */
+	protected void render(double alpha) {
+		/* Empty */
+	}
+
+/* Method: setDisplayRate(fps) */
+/**
+ * Sets the maximum number of frames per second presented by the game loop.
+ * The default is 60.  The new rate takes effect the next time the loop starts.
+ *
+ * @usage setDisplayRate(fps);
+ * @param fps The maximum number of frames per second
+ */
+	public void setDisplayRate(double fps) {
+		if (fps <= 0) throw new ErrorException("setDisplayRate: Rate must be positive");
+		displayRate = fps;
+	}
+
+/* Method: getDisplayRate() */
+/**
+ * Returns the maximum number of frames per second presented by the game loop.
+ *
+ * @usage double fps = getDisplayRate();
+ * @return The maximum number of frames per second
+ */
+	public double getDisplayRate() {
+		return displayRate;
+	}
+
+/* Method: setMaxUpdateSteps(steps) */
+/**
+ * Sets the maximum number of simulation steps the game loop performs
+ * before presenting a frame.  The default is 5.
+ *
+ * @usage setMaxUpdateSteps(steps);
+ * @param steps The maximum number of steps per frame
+ */
+	public void setMaxUpdateSteps(int steps) {
+		if (steps <= 0) throw new ErrorException("setMaxUpdateSteps: Steps must be positive");
+		maxUpdateSteps = steps;
+	}
+
+/* Method: getUpdateCount() */
+/**
+ * Returns the number of simulation steps performed by the game loop.
+ *
+ * @usage long n = getUpdateCount();
+ * @return The number of steps performed
+ */
+	public long getUpdateCount() {
+		return updateCount;
+	}
+
+/* Method: getSkippedUpdateCount() */
+/**
+ * Returns the number of simulation steps the game loop skipped because the
+ * program fell behind by more than the maximum number of steps.
+ *
+ * @usage long n = getSkippedUpdateCount();
+ * @return The number of steps skipped
+ */
+	public long getSkippedUpdateCount() {
+		return skippedSteps;
+	}
+
+/* Method: getRenderCount() */
+/**
+ * Returns the number of frames rendered by the game loop.
+ *
+ * @usage long n = getRenderCount();
+ * @return The number of frames rendered
+ */
+	public long getRenderCount() {
+		return renderCount;
+	}
+
+/* Method: getLateFrameCount() */
+/**
+ * Returns the number of frames for which the game loop missed its deadline
+ * by more than one frame interval.
+ *
+ * @usage long n = getLateFrameCount();
+ * @return The number of late frames
+ */
+	public long getLateFrameCount() {
+		return lateFrames;
+	}
+
+/* Method: getAverageFrameTime() */
+/**
+ * Returns a running average of the time the game loop spends in each frame
+ * doing work, as opposed to waiting, in milliseconds.
+ *
+ * @usage double ms = getAverageFrameTime();
+ * @return The average busy time per frame in milliseconds
+ */
+	public double getAverageFrameTime() {
+		return averageFrameNanos / 1.0E6;
+	}
+
+/* Method: resetGameLoopStatistics() */
+/**
+ * Resets the game loop counters to zero, along with the frame statistics of
+ * the canvas, so that the number of frames painted by the canvas can be
+ * compared with <a href="#getRenderCount()"><code>getRenderCount</code></a>.
+ *
+ * @usage resetGameLoopStatistics();
+ */
+	public void resetGameLoopStatistics() {
+		gc.resetFrameStatistics();
+		updateCount = 0;
+		skippedSteps = 0;
+		renderCount = 0;
+		lateFrames = 0;
+		averageFrameNanos = 0;
+	}
+
 /* Method: repaint() */
 /**
  * Signals a need to repaint this window.
@@ -547,9 +797,19 @@ public abstract class GraphicsProgram extends Program {
 /* Private instance variables */
 
 	private static final int BORDER_PIXELS = 4;
+	private static final double DEFAULT_DISPLAY_RATE = 60;
+	private static final int DEFAULT_MAX_UPDATE_STEPS = 5;
 
 	private GCanvas gc;
 	private GProgramListener listener;
+	private volatile boolean gameLoopRunning;
+	private double displayRate;
+	private int maxUpdateSteps;
+	private volatile long updateCount;
+	private volatile long skippedSteps;
+	private volatile long renderCount;
+	private volatile long lateFrames;
+	private volatile long averageFrameNanos;
 }
 
 /* Package class: GProgramListener */
@@ -44,6 +44,13 @@ import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
 import java.util.List;
 import java.util.zip.ZipEntry;
@@ -90,7 +97,8 @@ public abstract class Program extends JApplet
 	protected Program() {
 		JTFTools.registerApplet(this);
 		shown = false;
-		parameterTable = null;
+		parameterTable = (HashMap) startupParameters.get();
+		batchMode = isBatchParameter(parameterTable);
 		finalizers = new ArrayList();
 		isAppletMode = false;
 		macMenuBarFlag = true;
@@ -98,9 +106,12 @@ public abstract class Program extends JApplet
 		myTitle = myTitle.substring(myTitle.lastIndexOf(".") + 1);
 		appletStub = new ProgramAppletStub(this);
 		setAppletStub(appletStub);
-		Container contentPane = getContentPane();
-		initContentPane(contentPane);
 		setVisible(false);
+		if (batchMode) {
+			setConsole(createBatchConsole());
+			return;
+		}
+		initContentPane(getContentPane());
 		setConsole(createConsole());
 		myDialog = createDialogIO();
 		myDialog.setAssociatedConsole(myConsole);
@@ -558,12 +569,17 @@ public abstract class Program extends JApplet
 
 /* Method: getDialog() */
 /**
- * Returns the dialog used for user interaction.
+ * Returns the dialog used for user interaction.  In batch mode, the dialog
+ * is created only when it is first needed.
  *
  * @usage IODialog dialog = program.getDialog();
  * @return The <code>IODialog</code> object used for this program
  */
 	public IODialog getDialog() {
+		if (myDialog == null) {
+			myDialog = createDialogIO();
+			myDialog.setAssociatedConsole(myConsole);
+		}
 		return myDialog;
 	}
 
@@ -624,6 +640,7 @@ public abstract class Program extends JApplet
  * @noshow
  */
 	public JPanel getRegionPanel(String region) {
+		if (centerPanel == null) return null;
 		if (region.equals(NORTH)) {
 			return northPanel;
 		} else if (region.equals(SOUTH)) {
@@ -652,7 +669,9 @@ public abstract class Program extends JApplet
  * @noshow
  */
 	public void add(Component comp, String region, Object constraints) {
-		if (region.equals(NORTH)) {
+		if (centerPanel == null) {
+			getContentPane().add(comp, region);
+		} else if (region.equals(NORTH)) {
 			northPanel.add(comp, constraints);
 		} else if (region.equals(SOUTH)) {
 			southPanel.add(comp, constraints);
@@ -729,13 +748,40 @@ public abstract class Program extends JApplet
 
 /* Method: start(args) */
 /**
- * Starts the program using the specified argument list.
+ * Starts the program using the specified argument list.  If the argument
+ * list includes <code>time=virtual</code>, the program runs in virtual time,
+ * as described in the documentation for
+ * <a href="../util/JTFTools.html#setVirtualTime(boolean)"><code>JTFTools.setVirtualTime</code></a>.
+ * If it includes <code>mode=batch</code>, the program runs in batch mode,
+ * as described in the documentation for
+ * <a href="#isBatchMode()"><code>isBatchMode</code></a>.
  *
  * @usage program.start(args);
  * @param args An array of strings passed to the program
  */
 	public void start(String[] args) {
 		if (parameterTable == null) parameterTable = createParameterTable(args);
+		if (parameterTable != null && "virtual".equalsIgnoreCase((String) parameterTable.get("time"))) {
+			JTFTools.setVirtualTime(true);
+		}
+		if (!batchMode && isBatchParameter(parameterTable)) {
+			batchMode = true;
+			setConsole(createBatchConsole());
+			if (myDialog != null) myDialog.setAssociatedConsole(myConsole);
+		}
+		if (batchMode) {
+			started = true;
+			try {
+				init();
+				startRun();
+			} catch (Throwable ex) {
+				ex.printStackTrace();
+				exitStatus = 1;
+			} finally {
+				exit();
+			}
+			return;
+		}
 		if (getParent() == null) initApplicationFrame();
 		validate();
 		setVisible(true);
@@ -761,6 +807,36 @@ public abstract class Program extends JApplet
 		startRun();
 	}
 
+/* Method: isBatchMode() */
+/**
+ * Returns <code>true</code> if the program is running in batch mode.  A
+ * program runs in batch mode if the parameter <code>mode=batch</code>
+ * appears on the command line.  In batch mode, the program creates no
+ * window or menu bar and calls <code>run</code> as soon as it starts.  Its
+ * console has no display and is connected to the standard input and output
+ * streams, or to the files named by the <code>input</code> and
+ * <code>output</code> parameters, through large buffers.  Batch mode is
+ * intended for running console programs many times in succession, such as
+ * when testing them automatically.  The mode takes effect when the program
+ * object is created if the program is started by <code>Program.main</code>,
+ * which hands the parameters to the constructor on the thread that creates
+ * the program; otherwise, it takes effect in <code>start</code>.  Batch mode
+ * works when <code>java.awt.headless</code> is set, provided that the
+ * program is started by <code>Program.main</code>.  Because
+ * <code>Applet</code> refuses to be created in a headless environment,
+ * <code>main</code> reports the environment as not headless while it
+ * creates the program.  On Java 9 and later, this requires the option
+ * <code>--add-opens&nbsp;java.desktop/java.awt=ALL-UNNAMED</code>.  If
+ * <code>run</code> throws an exception in batch mode, the exception is
+ * reported and the program still exits, with a status of 1.
+ *
+ * @usage if (program.isBatchMode()) . . .
+ * @return <code>true</code> if the program is running in batch mode
+ */
+	public boolean isBatchMode() {
+		return batchMode;
+	}
+
 /* Method: exit() */
 /**
  * Exits from the program.  Subclasses should override this method if they need
@@ -785,7 +861,8 @@ public abstract class Program extends JApplet
 			}
 		}
 		JTFTools.terminateAppletThreads(this);
-		if (!isAppletMode) System.exit(0);
+		JTFTools.unregisterApplet(this);
+		if (!isAppletMode) System.exit(exitStatus);
 	}
 
 /* Method: addExitHook(obj) */
@@ -926,6 +1003,41 @@ public abstract class Program extends JApplet
 		return IOConsole.SYSTEM_CONSOLE;
 	}
 
+/* Factory method: createBatchConsole() */
+/**
+ * Creates the console used in batch mode.  If the <code>input</code> or
+ * <code>output</code> parameter is set, the console reads from or writes
+ * to the named file; otherwise, it uses <code>System.in</code> or
+ * <code>System.out</code>.  Both sides go through NIO channels, with
+ * the console model providing the buffering.
+ *
+ * @usage IOConsole console = program.createBatchConsole();
+ * @return The console to be used by the program in batch mode
+ */
+	protected IOConsole createBatchConsole() {
+		String inputName = getParameter("input");
+		String outputName = getParameter("output");
+		String csName = Charset.defaultCharset().name();
+		try {
+			ReadableByteChannel in;
+			if (inputName == null) {
+				in = Channels.newChannel(System.in);
+			} else {
+				in = FileChannel.open(Paths.get(inputName), StandardOpenOption.READ);
+			}
+			WritableByteChannel out;
+			if (outputName == null) {
+				out = Channels.newChannel(System.out);
+			} else {
+				out = FileChannel.open(Paths.get(outputName), StandardOpenOption.CREATE,
+				                       StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+			}
+			return new IOConsole(Channels.newReader(in, csName), Channels.newWriter(out, csName));
+		} catch (IOException ex) {
+			throw new ErrorException(ex);
+		}
+	}
+
 /* Factory method: createDialogIO() */
 /**
  * Creates the dialog used for interaction (primarily by the <code>DialogProgram</code>
@@ -1018,7 +1130,7 @@ public abstract class Program extends JApplet
  * @noshow
  */
 	public void setLayout(LayoutManager layout) {
-		if (isRootPaneCheckingEnabled()) {
+		if (isRootPaneCheckingEnabled() && centerPanel != null) {
 			centerPanel.setLayout(layout);
 		} else {
 			super.setLayout(layout);
@@ -1034,7 +1146,7 @@ public abstract class Program extends JApplet
  * @noshow
  */
 	public LayoutManager getLayout() {
-		if (isRootPaneCheckingEnabled()) {
+		if (isRootPaneCheckingEnabled() && centerPanel != null) {
 			return centerPanel.getLayout();
 		} else {
 			return super.getLayout();
@@ -1050,7 +1162,7 @@ public abstract class Program extends JApplet
  * @noshow
  */
 	public void setBackground(Color color) {
-		if (isRootPaneCheckingEnabled()) {
+		if (isRootPaneCheckingEnabled() && centerPanel != null) {
 			centerPanel.setBackground(color);
 		}
 		super.setBackground(color);
@@ -1061,7 +1173,7 @@ public abstract class Program extends JApplet
  * Adds the specified component to the content pane using the specified constraints and index.
  */
 	protected void addImpl(Component comp, Object constraints, int index) {
-		if (isRootPaneCheckingEnabled()) {
+		if (isRootPaneCheckingEnabled() && centerPanel != null) {
 			if (constraints == null) {
 				centerPanel.add(comp, index);
 			} else if (constraints.equals(NORTH)) {
@@ -1095,7 +1207,7 @@ public abstract class Program extends JApplet
  * @noshow
  */
 	public void remove(int index) {
-		if (isRootPaneCheckingEnabled()) {
+		if (isRootPaneCheckingEnabled() && centerPanel != null) {
 			centerPanel.remove(index);
 		} else {
 			super.remove(index);
@@ -1111,7 +1223,7 @@ public abstract class Program extends JApplet
  * @noshow
  */
 	public void remove(Component comp) {
-		if (isRootPaneCheckingEnabled()) {
+		if (isRootPaneCheckingEnabled() && centerPanel != null) {
 			centerPanel.remove(comp);
 		} else {
 			super.remove(comp);
@@ -1126,7 +1238,7 @@ public abstract class Program extends JApplet
  * @noshow
  */
 	public void removeAll() {
-		if (isRootPaneCheckingEnabled()) {
+		if (isRootPaneCheckingEnabled() && centerPanel != null) {
 			centerPanel.removeAll();
 		} else {
 			super.removeAll();
@@ -1167,6 +1279,10 @@ public abstract class Program extends JApplet
  * @noshow
  */
 	public final void start() {
+		if (batchMode) {
+			start(null);
+			return;
+		}
 	    Dimension size = Toolkit.getDefaultToolkit().getScreenSize();
 	    double width = 0.8 * Math.min(size.width, size.height * 4 / 3);
 	    resize((int) Math.rint(width), (int) Math.rint(width * 3 / 4));
@@ -1206,6 +1322,7 @@ public abstract class Program extends JApplet
 				/* Empty */
 			}
 		}
+		JTFTools.unregisterApplet(this);
 	}
 
 /* Static method: main(args) */
@@ -1267,8 +1384,10 @@ public abstract class Program extends JApplet
 			}
 		}
 		if (mainClass != null) {
+			boolean batch = isBatchParameter(ht);
+			if (batch) startupParameters.set(ht);
 			try {
-				Object obj = mainClass.newInstance();
+				Object obj = newInstance(mainClass, batch);
 				if (obj instanceof Program) {
 					program = (Program) obj;
 					program.setStartupObject(null);
@@ -1277,7 +1396,7 @@ public abstract class Program extends JApplet
 					if (className == null) {
 						throw new ErrorException("Main class does not specify a program");
 					}
-					program = (Program) Class.forName(className).newInstance();
+					program = (Program) newInstance(Class.forName(className), batch);
 					program.setStartupObject(obj);
 				}
 			} catch (IllegalAccessException ex) {
@@ -1286,6 +1405,8 @@ public abstract class Program extends JApplet
 				/* Empty */
 			} catch (ClassNotFoundException ex) {
 				/* Empty */
+			} finally {
+				startupParameters.remove();
 			}
 
 		}
@@ -1876,6 +1997,46 @@ public abstract class Program extends JApplet
 		frame.validate();
 	}
 
+/* Private static method: newInstance(c, batch) */
+/**
+ * Creates an instance of the class.  A batch program may run in a headless
+ * environment, but the <code>Applet</code> constructor throws an exception
+ * whenever <code>GraphicsEnvironment.isHeadless</code> returns
+ * <code>true</code>.  In that case, this method initializes the Swing look
+ * and feel while the environment is still headless and then reports the
+ * environment as not headless for as long as the constructor runs.
+ */
+	private static Object newInstance(Class c, boolean batch)
+	  throws InstantiationException, IllegalAccessException {
+		if (!batch || !GraphicsEnvironment.isHeadless()) return c.newInstance();
+		Field headless;
+		try {
+			headless = GraphicsEnvironment.class.getDeclaredField("headless");
+			headless.setAccessible(true);
+		} catch (Exception ex) {
+			throw new ErrorException("Batch mode cannot create a program in a headless environment " +
+			                         "unless java.awt is open to it (use --add-opens " +
+			                         "java.desktop/java.awt=ALL-UNNAMED)");
+		}
+		new JRootPane();
+		synchronized (GraphicsEnvironment.class) {
+			headless.set(null, Boolean.FALSE);
+			try {
+				return c.newInstance();
+			} finally {
+				headless.set(null, Boolean.TRUE);
+			}
+		}
+	}
+
+/* Private static method: isBatchParameter(ht) */
+/**
+ * Returns <code>true</code> if the parameter table selects batch mode.
+ */
+	private static boolean isBatchParameter(HashMap ht) {
+		return ht != null && "batch".equalsIgnoreCase((String) ht.get("mode"));
+	}
+
 /* Private static method: readMainClassFromManifest(jarName) */
 /**
  * Attempts to read the name of the main class from the manifest of
@@ -1965,6 +2126,12 @@ public abstract class Program extends JApplet
 	private boolean initFinished;
 	private boolean isAppletMode;
 	private boolean macMenuBarFlag;
+	private boolean batchMode;
+	private int exitStatus;
+
+/* Static variables */
+
+	private static ThreadLocal startupParameters = new ThreadLocal();
 
 }
 
@@ -28,6 +28,10 @@ import java.awt.event.AdjustmentEvent;
 import java.awt.event.AdjustmentListener;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.locks.LockSupport;
 
 /* Class: Animator */
 
@@ -39,6 +43,27 @@ import java.lang.reflect.Method;
  * next opportunity.  It also includes hooks to support a start/stop/single-step
  * model for algorithm animation although the user-interface code is not implemented
  * here.
+ *
+ * <p>By default, each animator runs in its own thread, as its superclass
+ * implies.  Programs that create large numbers of animators can instead
+ * select <a href="#SHARED_MODE"><code>SHARED_MODE</code></a>, in which the
+ * <code>run</code> method executes on a thread supplied by a shared
+ * scheduler.  If the Java runtime supports virtual threads, the scheduler
+ * gives each animator a virtual thread, so that tens of thousands of
+ * animators can be paused or stopped at once.  Otherwise, animators run on a
+ * shared pool of daemon threads that are reused as animators finish.  Only
+ * the virtual-thread scheduler scales to large numbers of animators: an
+ * animator holds its pooled thread for as long as its <code>run</code>
+ * method executes, including the time it spends paused, so on older
+ * runtimes every running animator still needs a platform thread, just as
+ * in thread mode.  A pool with a fixed number of threads is not an option,
+ * because an animator that is waiting for a free thread never starts and
+ * could block the animators that it is waiting for.  The
+ * states and the behavior of <code>delay</code>, <code>trace</code>, and
+ * <code>breakpoint</code> are the same in both modes, but in shared mode the
+ * methods that <code>Animator</code> inherits from <code>Thread</code>, such
+ * as <code>join</code> and <code>isAlive</code>, do not describe the thread
+ * that is running the animator.
  */
 public class Animator extends Thread {
 
@@ -74,6 +99,17 @@ public class Animator extends Thread {
 /** Constant indicating that the animator has been asked to terminate. */
 	public final static int TERMINATING = 7;
 
+/* Constant: THREAD_MODE */
+/** Execution mode in which each animator runs in its own thread. */
+	public final static int THREAD_MODE = 0;
+
+/* Constant: SHARED_MODE */
+/**
+ * Execution mode in which animators run on threads from a shared scheduler.
+ * This mode saves threads only on runtimes that provide virtual threads.
+ */
+	public final static int SHARED_MODE = 1;
+
 /* Constructor: Animator() */
 /**
  * Creates a new <code>Animator</code> object.
@@ -126,6 +162,55 @@ public class Animator extends Thread {
 		initAnimator();
 	}
 
+/* Static method: setDefaultExecutionMode(mode) */
+/**
+ * Sets the execution mode used by animators created after this call, which
+ * must be <a href="#THREAD_MODE"><code>THREAD_MODE</code></a> or
+ * <a href="#SHARED_MODE"><code>SHARED_MODE</code></a>.
+ *
+ * @usage Animator.setDefaultExecutionMode(mode);
+ * @param mode The default execution mode
+ */
+	public static void setDefaultExecutionMode(int mode) {
+		checkExecutionMode(mode);
+		defaultExecutionMode = mode;
+	}
+
+/* Static method: getDefaultExecutionMode() */
+/**
+ * Returns the execution mode used by newly created animators.
+ *
+ * @usage int mode = Animator.getDefaultExecutionMode();
+ * @return The default execution mode
+ */
+	public static int getDefaultExecutionMode() {
+		return defaultExecutionMode;
+	}
+
+/* Method: setExecutionMode(mode) */
+/**
+ * Sets the execution mode of this animator, which takes effect the next
+ * time the animator is started.
+ *
+ * @usage animator.setExecutionMode(mode);
+ * @param mode <code>THREAD_MODE</code> or <code>SHARED_MODE</code>
+ */
+	public void setExecutionMode(int mode) {
+		checkExecutionMode(mode);
+		executionMode = mode;
+	}
+
+/* Method: getExecutionMode() */
+/**
+ * Returns the execution mode of this animator.
+ *
+ * @usage int mode = animator.getExecutionMode();
+ * @return The execution mode
+ */
+	public int getExecutionMode() {
+		return executionMode;
+	}
+
 /* Method: run() */
 /**
  * Specifies the code for the animator.  Subclasses should override this
@@ -291,7 +376,7 @@ public class Animator extends Thread {
  * @param depth The current call stack depth.
  */
 	public void trace(int depth) {
-		if (Thread.currentThread() != this) {
+		if (!isAnimatorThread()) {
 			throw new ErrorException("trace() can be called only by the animator thread itself");
 		}
 		currentDepth = depth;
@@ -322,7 +407,7 @@ public class Animator extends Thread {
  * @usage animator.breakpoint();
  */
 	public void breakpoint() {
-		if (Thread.currentThread() != this) {
+		if (!isAnimatorThread()) {
 			throw new ErrorException("breakpoint() can be called only by the animator thread itself");
 		}
 		animatorState = STOPPED;
@@ -501,8 +586,9 @@ public class Animator extends Thread {
  * Makes sure that this thread inherits the applet identity of its creator, if any.
  */
 	private void initAnimator() {
-		Applet applet = JTFTools.getApplet();
-		if (applet != null) JTFTools.registerApplet(applet, this);
+		executionMode = defaultExecutionMode;
+		animatorApplet = JTFTools.getApplet();
+		if (animatorApplet != null) JTFTools.registerApplet(animatorApplet, this);
 	}
 
 /* Private method: start(state) */
@@ -515,7 +601,12 @@ public class Animator extends Thread {
 			animatorState = state;
 			resumeHook();
 			controllerHook();
-			super.start();
+			VirtualClock.reserve(this);
+			if (executionMode == SHARED_MODE) {
+				AnimatorScheduler.execute(this);
+			} else {
+				super.start();
+			}
 			break;
 		  case STOPPED:
 			animatorState = state;
@@ -533,16 +624,13 @@ public class Animator extends Thread {
  * Suspends the animator thread pending a later restart.
  */
 	private void suspendAnimator() {
-		synchronized (this) {
-			resumed = false;
-			while (!resumed) {
-				try {
-					wait();
-				} catch (InterruptedException e) {
-					/* Empty */
-				}
-			}
+		suspendedThread = Thread.currentThread();
+		resumed = false;
+		while (!resumed) {
+			LockSupport.park(this);
+			Thread.interrupted();
 		}
+		suspendedThread = null;
 	}
 
 /* Private method: resumeAnimator() */
@@ -550,10 +638,9 @@ public class Animator extends Thread {
  * Resumes the animator where it left off.
  */
 	private void resumeAnimator() {
-		synchronized (this) {
-			resumed = true;
-			notifyAll();
-		}
+		resumed = true;
+		Thread thread = suspendedThread;
+		if (thread != null) LockSupport.unpark(thread);
 	}
 
 /* Private method: terminate() */
@@ -561,13 +648,54 @@ public class Animator extends Thread {
  * Terminates the animator by throwing a <code>ThreadDeath</code> exception.
  */
 	private void terminate() {
-		if (Thread.currentThread() == this) {
+		if (isAnimatorThread()) {
 			throw new ThreadDeath();
 		} else {
 			throw new ErrorException("Illegal call to terminate");
 		}
 	}
 
+/* Package method: runShared() */
+/**
+ * Executes the <code>run</code> method on a thread supplied by the shared
+ * scheduler and marks the animator as finished when it returns.
+ */
+	void runShared() {
+		executingThread = Thread.currentThread();
+		if (animatorApplet != null) JTFTools.registerApplet(animatorApplet, executingThread);
+		VirtualClock.attach(this);
+		try {
+			run();
+		} catch (ThreadDeath ex) {
+			/* Terminated by requestTermination */
+		} finally {
+			VirtualClock.release();
+			if (animatorApplet != null) JTFTools.unregisterThread();
+			executingThread = null;
+			animatorState = FINISHED;
+			controllerHook();
+		}
+	}
+
+/* Private method: isAnimatorThread() */
+/**
+ * Returns <code>true</code> if the caller is the thread executing this animator.
+ */
+	private boolean isAnimatorThread() {
+		Thread current = Thread.currentThread();
+		return current == this || current == executingThread;
+	}
+
+/* Private static method: checkExecutionMode(mode) */
+/**
+ * Checks that the execution mode is legal.
+ */
+	private static void checkExecutionMode(int mode) {
+		if (mode != THREAD_MODE && mode != SHARED_MODE) {
+			throw new ErrorException("Illegal execution mode");
+		}
+	}
+
 /* Private constants */
 
 	private static final double SLOW_DELAY = 1000.0;
@@ -581,8 +709,105 @@ public class Animator extends Thread {
 	private int callDepth = 0;
 	private int delayCount = 0;
 	private double animatorSpeed = 0.5;
-	private boolean resumed;
+	private volatile boolean resumed;
+	private volatile Thread suspendedThread;
+	private volatile Thread executingThread;
+	private int executionMode;
+	private Applet animatorApplet;
+
+	private static int defaultExecutionMode = THREAD_MODE;
+
+}
+
+/* Package class: AnimatorScheduler */
+
+/**
+ * This class supplies the threads on which animators in shared mode run.
+ * When the runtime provides virtual threads, which are located by
+ * reflection so that the package still compiles for older versions of
+ * Java, each animator gets a new virtual thread.  Otherwise the animators
+ * share a cached pool of daemon threads, which reuses threads but still
+ * needs one platform thread for every animator that is running at once.
+ */
+class AnimatorScheduler implements Runnable, ThreadFactory {
+
+/* Static method: execute(animator) */
+/**
+ * Runs the animator on a thread from the shared scheduler.
+ */
+	public static void execute(Animator animator) {
+		AnimatorScheduler task = new AnimatorScheduler(animator);
+		ThreadFactory factory = getVirtualThreadFactory();
+		if (factory != null) {
+			factory.newThread(task).start();
+		} else {
+			getPool().execute(task);
+		}
+	}
 
+/* Constructor: AnimatorScheduler(animator) */
+/**
+ * Creates a task that runs the specified animator.
+ */
+	public AnimatorScheduler(Animator animator) {
+		this.animator = animator;
+	}
+
+/* Runnable interface */
+
+	public void run() {
+		animator.runShared();
+	}
+
+/* ThreadFactory interface */
+
+	public Thread newThread(Runnable runnable) {
+		int id;
+		synchronized (AnimatorScheduler.class) {
+			id = ++threadCount;
+		}
+		Thread thread = new Thread(runnable, "Animator-" + id);
+		thread.setDaemon(true);
+		return thread;
+	}
+
+/* Private static method: getVirtualThreadFactory() */
+/**
+ * Returns a factory for virtual threads, or <code>null</code> if the runtime
+ * does not support them.
+ */
+	private static synchronized ThreadFactory getVirtualThreadFactory() {
+		if (!virtualChecked) {
+			virtualChecked = true;
+			try {
+				Object builder = Thread.class.getMethod("ofVirtual", new Class[0]).invoke(null, new Object[0]);
+				Class builderClass = Class.forName("java.lang.Thread$Builder");
+				Method factory = builderClass.getMethod("factory", new Class[0]);
+				virtualFactory = (ThreadFactory) factory.invoke(builder, new Object[0]);
+			} catch (Exception ex) {
+				virtualFactory = null;
+			}
+		}
+		return virtualFactory;
+	}
+
+/* Private static method: getPool() */
+/**
+ * Returns the shared pool of platform threads, creating it if necessary.
+ */
+	private static synchronized ExecutorService getPool() {
+		if (pool == null) pool = Executors.newCachedThreadPool(new AnimatorScheduler(null));
+		return pool;
+	}
+
+/* Private state */
+
+	private static boolean virtualChecked;
+	private static ThreadFactory virtualFactory;
+	private static ExecutorService pool;
+	private static int threadCount;
+
+	private Animator animator;
 }
 
 /* Private class: SpeedBarListener */
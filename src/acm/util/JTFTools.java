@@ -22,9 +22,12 @@ package acm.util;
 
 import java.applet.Applet;
 import java.awt.*;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
-import java.util.Enumeration;
-import java.util.Hashtable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.LockSupport;
+import java.util.*;
+import javax.swing.SwingUtilities;
 
 /* Class: JTFTools */
 
@@ -223,7 +226,8 @@ public class JTFTools {
 
 /* Static method: registerApplet(applet) */
 /**
- * Adds this applet to a table indexed by the current thread.
+ * Associates this applet with the current thread.  Threads that have no
+ * association of their own use the most recently registered applet.
  *
  * @usage JTFTools.registerApplet(applet);
  * @param applet The applet being registered
@@ -235,16 +239,33 @@ public class JTFTools {
 
 /* Static method: registerApplet(applet, thread) */
 /**
- * Adds this applet to a table indexed by the specified thread.
+ * Associates this applet with the specified thread.  Entries for threads
+ * that have died are removed whenever a thread is registered, so that the
+ * registry does not keep old threads alive.
  *
  * @usage JTFTools.registerApplet(applet);
  * @param applet The applet being registered
  * @param thread The thread used as the key
  */
 	public static void registerApplet(Applet applet, Thread thread) {
+		pruneAppletTable();
 		appletTable.put(thread, applet);
 	}
 
+/* Static method: unregisterApplet(applet) */
+/**
+ * Removes every association with the specified applet.  This method is
+ * called when a program exits, so that the registry does not keep the
+ * program or its threads alive.
+ *
+ * @usage JTFTools.unregisterApplet(applet);
+ * @param applet The applet being removed
+ */
+	public static void unregisterApplet(Applet applet) {
+		appletTable.values().removeAll(Collections.singleton(applet));
+		if (mostRecentApplet == applet) mostRecentApplet = null;
+	}
+
 /* Static method: getApplet() */
 /**
  * Returns the current applet.  This implementation may fail in
@@ -258,31 +279,184 @@ public class JTFTools {
  */
 	public static Applet getApplet() {
 		Applet applet = (Applet) appletTable.get(Thread.currentThread());
-		if (applet == null) applet = mostRecentApplet;
-		return applet;
+		return (applet == null) ? mostRecentApplet : applet;
+	}
+
+/* Package method: unregisterThread() */
+/**
+ * Removes the association between the current thread and its applet.  This
+ * method is called when a pooled thread finishes a task.
+ */
+	static void unregisterThread() {
+		appletTable.remove(Thread.currentThread());
 	}
 
 /* Static method: pause(milliseconds) */
 /**
  * Delays the calling thread for the specified time, which is expressed in
  * milliseconds.  Unlike <code>Thread.sleep</code>, this method never throws an
- * exception.
+ * exception.  The delay is measured against an absolute deadline, which
+ * makes it considerably more accurate than <code>Thread.sleep</code> for
+ * short pauses.  If the thread is interrupted, the pause ends early.
  *
  * @usage JTFTools.pause(milliseconds);
  * @param milliseconds The sleep time in milliseconds
  */
 	public static void pause(double milliseconds) {
-		Applet applet = (Applet) appletTable.get(Thread.currentThread());
-		if (applet == null) {
-			applet = mostRecentApplet;
-			appletTable.put(Thread.currentThread(), applet);
+		PauseState state = getPauseState();
+		long now = getClock();
+		state.lastDeadline = now + toNanos(milliseconds);
+		if (milliseconds > 0) pauseUntil(state.lastDeadline);
+	}
+
+/* Static method: pace(milliseconds) */
+/**
+ * Delays the calling thread until the specified number of milliseconds has
+ * passed since the end of the previous call to <code>pace</code> in this
+ * thread.  Unlike <code>pause</code>, the time spent between calls counts
+ * toward the delay, which makes it possible to write loops that run at a
+ * steady rate without accumulating drift.  If the thread falls more than
+ * one period behind, the schedule starts again from the current time
+ * rather than trying to catch up.
+ *
+ * @usage JTFTools.pace(milliseconds);
+ * @param milliseconds The period of the loop in milliseconds
+ */
+	public static void pace(double milliseconds) {
+		PauseState state = getPauseState();
+		long period = toNanos(milliseconds);
+		long now = getClock();
+		long deadline = state.lastDeadline + period;
+		if (state.lastDeadline == 0 || now - deadline > period) deadline = now + period;
+		state.lastDeadline = deadline;
+		if (deadline > now) pauseUntil(deadline);
+	}
+
+/* Static method: pauseUntil(deadline) */
+/**
+ * Delays the calling thread until the clock returned by
+ * <a href="#getClock()"><code>getClock</code></a> reaches the specified
+ * deadline.  The thread parks until shortly before the deadline, leaving a
+ * margin that adapts to how late the operating system wakes that thread,
+ * and then yields for at most a few microseconds so that it wakes up close
+ * to the deadline instead of oversleeping.  Virtual threads never spin,
+ * since spinning would hold on to a carrier thread.  If the thread is
+ * interrupted, the pause ends early and the interrupt is cleared, just as
+ * for <code>Thread.sleep</code>.
+ *
+ * @usage JTFTools.pauseUntil(deadline);
+ * @param deadline The time in nanoseconds at which the pause ends
+ */
+	public static void pauseUntil(long deadline) {
+		if (VirtualClock.isEnabled()) {
+			VirtualClock.sleepUntil(deadline);
+			return;
+		}
+		PauseState state = getPauseState();
+		while (true) {
+			long now = System.nanoTime();
+			long remaining = deadline - now;
+			if (remaining <= 0 || Thread.interrupted()) return;
+			if (remaining <= MAX_SPIN_NANOS && !state.virtual) {
+				Thread.yield();
+			} else {
+				long request = remaining - state.parkSlack;
+				if (state.virtual || request <= 0) request = remaining - MAX_SPIN_NANOS;
+				if (request <= 0) request = remaining;
+				LockSupport.parkNanos(request);
+				long overshoot = System.nanoTime() - now - request;
+				if (overshoot >= 0) {
+					long slack = state.parkSlack + (2 * overshoot - state.parkSlack) / 8;
+					state.parkSlack = Math.max(MIN_SLACK_NANOS, Math.min(MAX_SLACK_NANOS, slack));
+				}
+			}
+		}
+	}
+
+/* Static method: getClock() */
+/**
+ * Returns the current time of the clock used by <code>pause</code> and
+ * <code>pace</code>, measured in nanoseconds from an arbitrary origin.  The
+ * value is suitable only for measuring elapsed time.  If virtual time is
+ * enabled, this method returns the simulated time.
+ *
+ * @usage long now = JTFTools.getClock();
+ * @return The current clock time in nanoseconds
+ */
+	public static long getClock() {
+		return VirtualClock.isEnabled() ? VirtualClock.getTime() : System.nanoTime();
+	}
+
+/* Static method: setVirtualTime(flag) */
+/**
+ * Enables or disables virtual time.  In virtual time, the clock returned by
+ * <code>getClock</code> is simulated.  A call to <code>pause</code>,
+ * <code>pace</code>, or <code>pauseUntil</code> does not wait in real time
+ * but instead advances the simulated clock as soon as every other thread
+ * that uses the clock is also paused.  Threads are then resumed one at a
+ * time in order of their wake-up times, so that a program runs as fast as
+ * the processor allows and produces the same results on every run.  Virtual
+ * time is intended for testing and grading and should be enabled before the
+ * program starts its threads.
+ *
+ * @usage JTFTools.setVirtualTime(flag);
+ * @param flag <code>true</code> to enable virtual time
+ */
+	public static void setVirtualTime(boolean flag) {
+		VirtualClock.setEnabled(flag);
+	}
+
+/* Static method: isVirtualTime() */
+/**
+ * Returns <code>true</code> if virtual time is enabled.
+ *
+ * @usage if (JTFTools.isVirtualTime()) . . .
+ * @return <code>true</code> if virtual time is enabled
+ */
+	public static boolean isVirtualTime() {
+		return VirtualClock.isEnabled();
+	}
+
+/* Static method: setBlocked(flag) */
+/**
+ * Marks the calling thread as waiting for an event from outside the program,
+ * such as a mouse click or a line of input.  In virtual time, the clock does
+ * not advance while any thread that uses it is running, so a method that
+ * waits for the user must call <code>setBlocked(true)</code> before it waits
+ * and <code>setBlocked(false)</code> afterwards.  Calls may nest.  The method
+ * has no effect unless virtual time is enabled.
+ *
+ * @usage JTFTools.setBlocked(flag);
+ * @param flag <code>true</code> before the wait begins, <code>false</code> after it ends
+ */
+	public static void setBlocked(boolean flag) {
+		VirtualClock.setBlocked(flag);
+	}
+
+/* Static method: runOnEventThread(runnable) */
+/**
+ * Runs the <code>Runnable</code> on the event dispatch thread and waits
+ * until it finishes.  If the caller is the event dispatch thread, the
+ * <code>Runnable</code> simply runs.  While the caller waits, virtual time
+ * treats it as running, so the clock does not advance in the meantime.  If
+ * the caller is interrupted, the <code>Runnable</code> still runs later on
+ * the event dispatch thread, and the interrupt status is kept.
+ *
+ * @usage JTFTools.runOnEventThread(runnable);
+ * @param runnable The code to run on the event dispatch thread
+ */
+	public static void runOnEventThread(Runnable runnable) {
+		if (SwingUtilities.isEventDispatchThread()) {
+			runnable.run();
+			return;
 		}
 		try {
-			int millis = (int) milliseconds;
-			int nanos = (int) Math.round((milliseconds - millis) * 1000000);
-			Thread.sleep(millis, nanos);
+			SwingUtilities.invokeAndWait(runnable);
 		} catch (InterruptedException ex) {
-			/* Empty */
+			SwingUtilities.invokeLater(runnable);
+			Thread.currentThread().interrupt();
+		} catch (InvocationTargetException ex) {
+			throw new ErrorException(ex);
 		}
 	}
 
@@ -328,6 +502,44 @@ public class JTFTools {
 		return true;
 	}
 
+/* Private method: getPauseState() */
+/**
+ * Returns the pacing state of the current thread.  The first time a thread
+ * pauses after an applet has been registered, the thread is added to the
+ * applet table so that <code>terminateAppletThreads</code> can find it.  All
+ * later calls use only the thread-local state.
+ */
+	private static PauseState getPauseState() {
+		PauseState state = (PauseState) pauseState.get();
+		if (!state.registered && mostRecentApplet != null) {
+			Applet applet = getApplet();
+			if (applet != null && !appletTable.containsKey(Thread.currentThread())) {
+				registerApplet(applet, Thread.currentThread());
+			}
+			state.registered = true;
+		}
+		return state;
+	}
+
+/* Private method: pruneAppletTable() */
+/**
+ * Removes the entries for threads that have died from the applet table.
+ */
+	private static void pruneAppletTable() {
+		Iterator it = appletTable.keySet().iterator();
+		while (it.hasNext()) {
+			if (!((Thread) it.next()).isAlive()) it.remove();
+		}
+	}
+
+/* Private method: toNanos(milliseconds) */
+/**
+ * Converts a time in milliseconds to nanoseconds, treating negative values as zero.
+ */
+	private static long toNanos(double milliseconds) {
+		return (milliseconds <= 0) ? 0 : Math.round(milliseconds * 1.0E6);
+	}
+
 /* Private method: initFontFamilyTable() */
 /**
  * Initializes the list of font families.
@@ -380,8 +592,19 @@ public class JTFTools {
 
 	private static boolean fontFamilyTableInitialized = false;
 	private static Hashtable fontFamilyTable = null;
-	private static Hashtable appletTable = new Hashtable();
-	private static Applet mostRecentApplet = null;
+	private static ConcurrentHashMap appletTable = new ConcurrentHashMap();
+	private static volatile Applet mostRecentApplet = null;
+	private static ThreadLocal pauseState = new ThreadLocal() {
+		protected Object initialValue() {
+			return new PauseState();
+		}
+	};
+
+/* Pacing constants */
+
+	private static final long MAX_SPIN_NANOS = 50000L;
+	private static final long MIN_SLACK_NANOS = 50000L;
+	private static final long MAX_SLACK_NANOS = 2000000L;
 
 /* Font substitutions */
 
@@ -412,3 +635,38 @@ class EmptyContainer extends Container {
 		paint(g);
 	}
 }
+
+/* Package class: PauseState */
+/**
+ * This class holds the pacing state of one thread for <code>JTFTools.pause</code>
+ * and <code>JTFTools.pace</code>.  The <code>parkSlack</code> field records
+ * how early the thread asks to be woken, which depends on how late the
+ * operating system has woken that particular thread in the past.
+ */
+class PauseState {
+
+	public PauseState() {
+		parkSlack = 100000L;
+		virtual = isVirtualThread(Thread.currentThread());
+	}
+
+/* Private static method: isVirtualThread(thread) */
+/**
+ * Returns <code>true</code> if the thread is a virtual thread.  The test
+ * uses reflection, since <code>Thread.isVirtual</code> exists only in
+ * newer runtimes.
+ */
+	private static boolean isVirtualThread(Thread thread) {
+		try {
+			Method isVirtual = Thread.class.getMethod("isVirtual", new Class[0]);
+			return ((Boolean) isVirtual.invoke(thread, new Object[0])).booleanValue();
+		} catch (Exception ex) {
+			return false;
+		}
+	}
+
+	boolean registered;
+	boolean virtual;
+	long lastDeadline;
+	long parkSlack;
+}
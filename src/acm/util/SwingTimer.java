@@ -21,6 +21,7 @@
 package acm.util;
 
 import javax.swing.*;
+import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 
 /* Class: SwingTimer */
@@ -29,6 +30,14 @@ import java.awt.event.ActionListener;
  * This class is equivalent to <code>javax.swing.Timer</code> and
  * exists only to avoid the ambiguity that arises because there is
  * also a <code>Timer</code> class in <code>java.util</code>.
+ *
+ * <p>The one difference is that a timer started while virtual time is
+ * enabled (see <a href="JTFTools.html#setVirtualTime(boolean)"><code>JTFTools.setVirtualTime</code></a>)
+ * measures its delays on the virtual clock.  Such a timer waits in a thread
+ * of its own that takes part in virtual time, and each tick is delivered to
+ * the listeners on the event dispatch thread as usual.  The thread is
+ * created the first time the timer starts and is reused when the timer is
+ * restarted, which simply moves its wake-up time on the virtual clock.
  */
 
 public class SwingTimer extends Timer {
@@ -46,4 +55,98 @@ public class SwingTimer extends Timer {
 		super(rate, listener);
 	}
 
+/* Method: start() */
+/**
+ * Starts the timer, using the virtual clock if virtual time is enabled.
+ *
+ * @usage timer.start();
+ */
+	public void start() {
+		if (!JTFTools.isVirtualTime()) {
+			super.start();
+			return;
+		}
+		synchronized (this) {
+			deadline = JTFTools.getClock() + getInitialDelay() * 1000000L;
+			active = true;
+			if (virtualThread == null) {
+				virtualThread = new Thread("SwingTimer") {
+					public void run() {
+						runVirtual();
+					}
+				};
+				virtualThread.setDaemon(true);
+				VirtualClock.reserve(virtualThread);
+				virtualThread.start();
+			} else {
+				VirtualClock.reschedule(virtualThread, deadline);
+			}
+		}
+	}
+
+/* Method: stop() */
+/**
+ * Stops the timer.
+ *
+ * @usage timer.stop();
+ */
+	public void stop() {
+		synchronized (this) {
+			active = false;
+			if (virtualThread != null) VirtualClock.reschedule(virtualThread, Long.MAX_VALUE);
+		}
+		super.stop();
+	}
+
+/* Method: isRunning() */
+/**
+ * Returns <code>true</code> if the timer is running.
+ *
+ * @usage if (timer.isRunning()) . . .
+ * @return <code>true</code> if the timer is running
+ */
+	public boolean isRunning() {
+		synchronized (this) {
+			if (active) return true;
+		}
+		return super.isRunning();
+	}
+
+/* Private method: runVirtual() */
+/**
+ * Delivers the ticks of a timer that runs on the virtual clock.  While the
+ * timer is stopped, the thread waits on the clock without a deadline, so it
+ * never holds the clock back.  Starting or stopping the timer reschedules
+ * the waiting thread.
+ */
+	private void runVirtual() {
+		while (true) {
+			long target;
+			synchronized (this) {
+				target = (active) ? deadline : Long.MAX_VALUE;
+			}
+			JTFTools.pauseUntil(target);
+			synchronized (this) {
+				if (!active || JTFTools.getClock() < deadline) continue;
+				if (isRepeats()) {
+					deadline = Math.max(deadline + getDelay() * 1000000L, JTFTools.getClock());
+				} else {
+					active = false;
+				}
+			}
+			final ActionEvent e = new ActionEvent(this, ActionEvent.ACTION_PERFORMED,
+			                                      getActionCommand(), System.currentTimeMillis(), 0);
+			JTFTools.runOnEventThread(new Runnable() {
+				public void run() {
+					fireActionPerformed(e);
+				}
+			});
+		}
+	}
+
+/* Private instance variables */
+
+	private transient Thread virtualThread;
+	private transient long deadline;
+	private transient boolean active;
 }
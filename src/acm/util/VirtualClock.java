@@ -0,0 +1,293 @@
+/*
+ * @(#)VirtualClock.java   1.0 06/08/25
+ */
+
+// ************************************************************************
+// * Copyright (c) 2006 by the Association for Computing Machinery        *
+// *                                                                      *
+// * The Java Task Force seeks to impose few restrictions on the use of   *
+// * these packages so that users have as much freedom as possible to     *
+// * use this software in constructive ways and can make the benefits of  *
+// * that work available to others.  In view of the legal complexities    *
+// * of software development, however, it is essential for the ACM to     *
+// * maintain its copyright to guard against attempts by others to        *
+// * claim ownership rights.  The full text of the JTF Software License   *
+// * is available at the following URL:                                   *
+// *                                                                      *
+// *          http://www.acm.org/jtf/jtf-software-license.pdf             *
+// *                                                                      *
+// ************************************************************************
+
+package acm.util;
+
+import java.util.*;
+
+/* Package class: VirtualClock */
+
+/**
+ * This class implements the simulated clock used by <code>JTFTools</code>
+ * when virtual time is enabled.  Every thread that pauses becomes a
+ * <i>participant</i>.  A pausing participant records the time at which it
+ * wants to wake up and blocks.  When no participant is running, the clock
+ * jumps to the earliest requested wake-up time and exactly one participant
+ * is released, breaking ties in favor of the participant that joined
+ * first.  Because only one participant runs at a time, a program whose
+ * threads interact only between pauses behaves identically from run to
+ * run, however fast the computer is.
+ *
+ * <p>A participant that waits somewhere other than in a pause, such as a
+ * thread waiting for a mouse click or a line of input, would otherwise stop
+ * the clock forever.  Each such waiting point therefore marks the thread as
+ * <i>blocked</i>, which takes it out of the set of running participants
+ * until the wait ends.  Because the wait ends when the user acts, a thread
+ * that leaves a blocked state resumes at once rather than waiting for its
+ * turn.  A participant that waits anywhere else, even for the event
+ * dispatch thread, still counts as running, so the clock never moves at a
+ * point that depends on how fast the computer is.
+ */
+class VirtualClock {
+
+/* Static method: setEnabled(flag) */
+/**
+ * Enables or disables virtual time.  Disabling it releases every thread
+ * that is waiting on the virtual clock.
+ */
+	static void setEnabled(boolean flag) {
+		synchronized (lock) {
+			if (flag && !enabled) currentTime = Math.max(currentTime, System.nanoTime());
+			enabled = flag;
+			lock.notifyAll();
+		}
+	}
+
+/* Static method: isEnabled() */
+/**
+ * Returns <code>true</code> if virtual time is enabled.
+ */
+	static boolean isEnabled() {
+		return enabled;
+	}
+
+/* Static method: getTime() */
+/**
+ * Returns the current virtual time in nanoseconds.  When virtual time is
+ * enabled, the clock starts from the current value of
+ * <code>System.nanoTime</code>, so that it never runs backward.
+ */
+	static long getTime() {
+		synchronized (lock) {
+			return currentTime;
+		}
+	}
+
+/* Static method: reserve(key) */
+/**
+ * Reserves a participant for a thread that is about to start, so that the
+ * clock does not advance before the thread reaches its first pause.  The
+ * key is the <code>Thread</code> that will run, or an object that the
+ * thread later passes to <code>attach</code>.
+ */
+	static void reserve(Object key) {
+		synchronized (lock) {
+			if (!enabled || reservations.containsKey(key)) return;
+			Participant p = new Participant();
+			if (key instanceof Thread) p.thread = (Thread) key;
+			participants.add(p);
+			reservations.put(key, p);
+			running++;
+		}
+	}
+
+/* Static method: attach(key) */
+/**
+ * Binds the participant reserved under the specified key to the current thread.
+ */
+	static void attach(Object key) {
+		synchronized (lock) {
+			Participant p = (Participant) reservations.remove(key);
+			if (p == null) return;
+			p.thread = Thread.currentThread();
+			current.set(p);
+		}
+	}
+
+/* Static method: release() */
+/**
+ * Removes the current thread from the set of participants.  This method is
+ * called when a pooled thread finishes a task, since its death cannot be
+ * observed directly.
+ */
+	static void release() {
+		synchronized (lock) {
+			Participant p = (Participant) current.get();
+			if (p == null) return;
+			current.remove();
+			removeParticipant(p);
+			lock.notifyAll();
+		}
+	}
+
+/* Static method: sleepUntil(deadline) */
+/**
+ * Blocks the current thread until the virtual clock reaches the specified
+ * time and the thread is chosen to run.  The method returns early if the
+ * thread is interrupted or if virtual time is disabled.
+ */
+	static void sleepUntil(long deadline) {
+		synchronized (lock) {
+			Participant p = getParticipant();
+			p.wakeTime = Math.max(deadline, currentTime);
+			p.waiting = true;
+			running--;
+			try {
+				while (true) {
+					dispatch();
+					if (!p.waiting) return;
+					if (!enabled) break;
+					try {
+						lock.wait(POLL_INTERVAL);
+					} catch (InterruptedException ex) {
+						break;
+					}
+				}
+				p.waiting = false;
+				running++;
+			} finally {
+				lock.notifyAll();
+			}
+		}
+	}
+
+/* Static method: setBlocked(flag) */
+/**
+ * Marks the current thread as blocked while it waits for an event from
+ * outside the program, such as user input, so that the clock can advance
+ * in the meantime.  Calls may nest, and the thread runs again as soon as
+ * the outermost call passes <code>false</code>.
+ */
+	static void setBlocked(boolean flag) {
+		synchronized (lock) {
+			if (!enabled) return;
+			Participant p = (Participant) current.get();
+			if (p == null && reservations.containsKey(Thread.currentThread())) p = getParticipant();
+			if (p == null || !participants.contains(p)) return;
+			if (flag) {
+				if (p.blocked++ == 0) {
+					running--;
+					dispatch();
+				}
+			} else if (p.blocked > 0 && --p.blocked == 0) {
+				running++;
+			}
+		}
+	}
+
+/* Static method: reschedule(thread, deadline) */
+/**
+ * Changes the wake-up time of a thread that is waiting on the virtual clock.
+ * A deadline of <code>Long.MAX_VALUE</code> means that the thread waits
+ * until it is rescheduled again.  The method does nothing if the thread is
+ * not waiting.
+ */
+	static void reschedule(Thread thread, long deadline) {
+		synchronized (lock) {
+			for (int i = 0; i < participants.size(); i++) {
+				Participant p = (Participant) participants.get(i);
+				if (p.thread == thread && p.waiting) {
+					p.wakeTime = Math.max(deadline, currentTime);
+					dispatch();
+					return;
+				}
+			}
+		}
+	}
+
+/* Private static method: getParticipant() */
+/**
+ * Returns the participant for the current thread, creating one if necessary.
+ * The caller must hold the lock.
+ */
+	private static Participant getParticipant() {
+		Participant p = (Participant) current.get();
+		if (p != null && participants.contains(p)) return p;
+		Thread thread = Thread.currentThread();
+		p = (Participant) reservations.remove(thread);
+		if (p == null) {
+			p = new Participant();
+			participants.add(p);
+			running++;
+		}
+		p.thread = thread;
+		current.set(p);
+		return p;
+	}
+
+/* Private static method: dispatch() */
+/**
+ * Advances the clock and releases the next participant if no participant is
+ * running.  The caller must hold the lock.
+ */
+	private static void dispatch() {
+		pruneParticipants();
+		if (running > 0) return;
+		Participant next = null;
+		for (int i = 0; i < participants.size(); i++) {
+			Participant p = (Participant) participants.get(i);
+			if (p.waiting && p.wakeTime != Long.MAX_VALUE
+			              && (next == null || p.wakeTime < next.wakeTime)) next = p;
+		}
+		if (next == null) return;
+		currentTime = Math.max(currentTime, next.wakeTime);
+		next.waiting = false;
+		running++;
+		lock.notifyAll();
+	}
+
+/* Private static method: pruneParticipants() */
+/**
+ * Removes participants whose threads have died.  The caller must hold the lock.
+ */
+	private static void pruneParticipants() {
+		for (int i = participants.size() - 1; i >= 0; i--) {
+			Participant p = (Participant) participants.get(i);
+			if (!p.waiting && p.thread != null && p.thread.getState() == Thread.State.TERMINATED) {
+				removeParticipant(p);
+				reservations.values().remove(p);
+			}
+		}
+	}
+
+/* Private static method: removeParticipant(p) */
+/**
+ * Removes a participant and adjusts the running count.  The caller must
+ * hold the lock.
+ */
+	private static void removeParticipant(Participant p) {
+		if (participants.remove(p) && !p.waiting && p.blocked == 0) running--;
+	}
+
+/* Constants */
+
+	private static final long POLL_INTERVAL = 10;
+
+/* Private state */
+
+	private static Object lock = new Object();
+	private static volatile boolean enabled = false;
+	private static long currentTime = 0;
+	private static int running = 0;
+	private static ArrayList participants = new ArrayList();
+	private static HashMap reservations = new HashMap();
+	private static ThreadLocal current = new ThreadLocal();
+}
+
+/* Package class: Participant */
+/**
+ * This class records the state of one thread that takes part in virtual time.
+ */
+class Participant {
+	Thread thread;
+	boolean waiting;
+	int blocked;
+	long wakeTime;
+}
@@ -0,0 +1,94 @@
+/*
+ * @(#)GTweenTest.java   1.0 06/08/25
+ */
+
+// ************************************************************************
+// * Copyright (c) 2006 by the Association for Computing Machinery        *
+// *                                                                      *
+// * The Java Task Force seeks to impose few restrictions on the use of   *
+// * these packages so that users have as much freedom as possible to     *
+// * use this software in constructive ways and can make the benefits of  *
+// * that work available to others.  In view of the legal complexities    *
+// * of software development, however, it is essential for the ACM to     *
+// * maintain its copyright to guard against attempts by others to        *
+// * claim ownership rights.  The full text of the JTF Software License   *
+// * is available at the following URL:                                   *
+// *                                                                      *
+// *          http://www.acm.org/jtf/jtf-software-license.pdf             *
+// *                                                                      *
+// ************************************************************************
+
+package acm.graphics;
+
+import acm.util.ErrorException;
+
+/* Class: GTweenTest */
+
+/**
+ * This class checks that tweens repaint the canvas on which their objects
+ * appear.  Run it with the library on the class path; it prints a line for
+ * each check and throws an <code>ErrorException</code> if a check fails.
+ */
+public class GTweenTest {
+
+/* Main program */
+
+	public static void main(String[] args) throws InterruptedException {
+		testRotationRepaints();
+		System.out.println("All tests passed");
+		System.exit(0);
+	}
+
+/* Test: testRotationRepaints() */
+/**
+ * Checks that a tween that changes only the rotation of an object causes
+ * the canvas to be repainted.
+ */
+	public static void testRotationRepaints() throws InterruptedException {
+		CountingCanvas gc = new CountingCanvas();
+		gc.setSize(100, 100);
+		GRect rect = new GRect(10, 10, 20, 20);
+		gc.add(rect);
+		gc.repaints = 0;
+		GTween tween = GTween.rotateTo(rect, 90, 100).start();
+		long deadline = System.currentTimeMillis() + 5000;
+		while (!tween.isFinished() && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		check(tween.isFinished(), "rotation tween finishes");
+		check(Math.abs(rect.getRotation() - Math.PI / 2) < 1.0E-9, "object is rotated by 90 degrees");
+		check(gc.repaints > 0, "rotation tween repaints the canvas");
+		System.out.println("testRotationRepaints passed");
+	}
+
+/* Private static method: check(condition, msg) */
+/**
+ * Throws an <code>ErrorException</code> if the condition does not hold.
+ */
+	private static void check(boolean condition, String msg) {
+		if (!condition) throw new ErrorException("Test failed: " + msg);
+	}
+}
+
+/* Package class: CountingCanvas */
+
+/**
+ * This class is a <code>GCanvas</code> that counts the repaint requests it
+ * receives.
+ */
+class CountingCanvas extends GCanvas {
+
+	public void repaint() {
+		repaints++;
+		super.repaint();
+	}
+
+	public void repaint(int x, int y, int width, int height) {
+		repaints++;
+		super.repaint(x, y, width, height);
+	}
+
+/* Package instance variables */
+
+	volatile int repaints;
+}
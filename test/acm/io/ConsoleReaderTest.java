@@ -0,0 +1,105 @@
+/*
+ * @(#)ConsoleReaderTest.java   1.0 06/08/25
+ */
+
+// ************************************************************************
+// * Copyright (c) 2006 by the Association for Computing Machinery        *
+// *                                                                      *
+// * The Java Task Force seeks to impose few restrictions on the use of   *
+// * these packages so that users have as much freedom as possible to     *
+// * use this software in constructive ways and can make the benefits of  *
+// * that work available to others.  In view of the legal complexities    *
+// * of software development, however, it is essential for the ACM to     *
+// * maintain its copyright to guard against attempts by others to        *
+// * claim ownership rights.  The full text of the JTF Software License   *
+// * is available at the following URL:                                   *
+// *                                                                      *
+// *          http://www.acm.org/jtf/jtf-software-license.pdf             *
+// *                                                                      *
+// ************************************************************************
+
+package acm.io;
+
+import acm.util.ErrorException;
+
+import java.io.*;
+
+/* Class: ConsoleReaderTest */
+
+/**
+ * This class checks the token reader behind <code>IOConsole.readInts</code>
+ * where an input script meets its block boundaries and its end.  Run it with
+ * the library on the class path; it prints a line for each check and throws
+ * an <code>ErrorException</code> if a check fails.
+ */
+public class ConsoleReaderTest {
+
+/* Main program */
+
+	public static void main(String[] args) {
+		testScriptEndsToken();
+		testTokenAcrossBlock();
+		System.out.println("All tests passed");
+	}
+
+/* Test: testScriptEndsToken() */
+/**
+ * Checks that the last token of a script that has no final newline is not
+ * joined with the console input that follows the script.
+ */
+	public static void testScriptEndsToken() {
+		IOConsole console = createConsole("1 2 3", "45 abc\n");
+		int[] values = new int[3];
+		check(console.readInts(values) == 3, "three values read from the script");
+		check(values[0] == 1 && values[1] == 2 && values[2] == 3, "script values are 1 2 3");
+		check("45 abc".equals(console.readLine()), "console line follows the script");
+		System.out.println("testScriptEndsToken passed");
+	}
+
+/* Test: testTokenAcrossBlock() */
+/**
+ * Checks that a token divided between two blocks of the script is read
+ * as a single value.
+ */
+	public static void testTokenAcrossBlock() {
+		StringBuilder sb = new StringBuilder();
+		while (sb.length() < BLOCK_SIZE - 3) {
+			sb.append("7 ");
+		}
+		int crossing = sb.length();
+		sb.append("123456 8\n");
+		check(crossing < BLOCK_SIZE && crossing + 6 > BLOCK_SIZE, "token crosses the block boundary");
+		int count = crossing / 2 + 2;
+		IOConsole console = createConsole(sb.toString(), "");
+		int[] values = new int[count];
+		check(console.readInts(values) == count, "all values read from the script");
+		for (int i = 0; i < count - 2; i++) {
+			check(values[i] == 7, "value " + i + " is 7");
+		}
+		check(values[count - 2] == 123456, "crossing token is 123456");
+		check(values[count - 1] == 8, "last value is 8");
+		System.out.println("testTokenAcrossBlock passed");
+	}
+
+/* Private static method: createConsole(script, input) */
+/**
+ * Creates a console that reads the script first and then the input.
+ */
+	private static IOConsole createConsole(String script, String input) {
+		IOConsole console = new IOConsole(new StringReader(input), new StringWriter());
+		console.setInputScript(new BufferedReader(new StringReader(script)));
+		return console;
+	}
+
+/* Private static method: check(condition, msg) */
+/**
+ * Throws an <code>ErrorException</code> if the condition does not hold.
+ */
+	private static void check(boolean condition, String msg) {
+		if (!condition) throw new ErrorException("Test failed: " + msg);
+	}
+
+/* Private constants */
+
+	private static final int BLOCK_SIZE = 8192;
+}